@@ -0,0 +1,137 @@
+import benchmarks.SchedulerHarness;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static java.time.temporal.TemporalAdjusters.firstDayOfYear;
+
+// A scheduler backed by its own data base (-Ddb.url, default jdbc:sqlite:jmh.db), emptied and booked anew
+// for every trial. The bookings fill four weeks of working hours (8:00 to 18:00, five days a week):
+// every hour has about density of the fleet booked, every seventh hour the whole fleet, and recurringShare of
+// the bookings of an hour are weekly recurring bookings for all four weeks instead of one time bookings.
+// Prepared requests are handed out round robin.
+public class BookedFleetHarness implements SchedulerHarness {
+    private static final int WEEKS = 4;
+    private static final int WORKING_DAYS = 5;
+    private static final int FIRST_HOUR = 8;
+    private static final int LAST_HOUR = 18;
+    private static final int FULL_HOUR_EVERY = 7;
+    private static final int REQUESTS = 1024;
+
+    private ProjectorScheduler scheduler;
+    private int projectors;
+    // one hour requests at an hour with a free projector, and at an hour with none
+    private TimeSlot[] acceptedRequests;
+    private TimeSlot[] rejectedRequests;
+    // weekly requests for all four weeks, half of them at an hour with no free projector
+    private TimeSlot[] recurringRequests;
+    private int next = 0;
+
+    @Override
+    public void setUp(int projectors, double density, double recurringShare) throws Exception {
+        if (System.getProperty("db.url") == null) System.setProperty("db.url", "jdbc:sqlite:jmh.db");
+        DataBase.getInstance().createSchema();
+        String[] clearDB = {
+                "DELETE FROM allocations;",
+                "DELETE FROM time_slots;",
+                "DELETE FROM projectors;",
+        };
+        DataBase.getInstance().update(clearDB);
+        ProjectorScheduler.seedProjectors(projectors);
+        this.projectors = projectors;
+        scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, projectors, true);
+
+        Instant startOfYear = LocalDate.now().with(firstDayOfYear()).atStartOfDay(ZoneId.systemDefault()).toInstant();
+        // a week into the year, bookings need to start after the start of the year
+        Instant firstDay = startOfYear.plus(Duration.ofDays(7));
+        Random random = new Random(projectors);
+        List<TimeSlot> bookings = new ArrayList<>();
+        // every hour of the first week, followed by the same hour in the weeks after it
+        List<Instant> freeHours = new ArrayList<>();
+        List<Instant> fullHours = new ArrayList<>();
+        int hourOfWeek = 0;
+        for (int day = 0; day < WORKING_DAYS; day++) {
+            for (int hour = FIRST_HOUR; hour < LAST_HOUR; hour++, hourOfWeek++) {
+                Instant start = firstDay.plus(Duration.ofDays(day)).plus(Duration.ofHours(hour));
+                boolean full = hourOfWeek % FULL_HOUR_EVERY == 0;
+                int booked = full ? projectors : Math.min(projectors - 1, (int) Math.round(density * projectors));
+                for (int i = 0; i < booked; i++) {
+                    if (random.nextDouble() < recurringShare) {
+                        bookings.add(weekly(start));
+                    } else {
+                        for (int week = 0; week < WEEKS; week++) bookings.add(oneHour(start.plus(Duration.ofDays(7 * week))));
+                    }
+                }
+                for (int week = 0; week < WEEKS; week++) {
+                    (full ? fullHours : freeHours).add(start.plus(Duration.ofDays(7 * week)));
+                }
+            }
+        }
+        scheduler.requestProjectors(bookings, false);
+
+        acceptedRequests = new TimeSlot[REQUESTS];
+        rejectedRequests = new TimeSlot[REQUESTS];
+        recurringRequests = new TimeSlot[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            acceptedRequests[i] = oneHour(freeHours.get(random.nextInt(freeHours.size())));
+            rejectedRequests[i] = oneHour(fullHours.get(random.nextInt(fullHours.size())));
+            List<Instant> hours = random.nextBoolean() ? freeHours : fullHours;
+            recurringRequests[i] = weekly(hours.get(random.nextInt(hours.size() / WEEKS) * WEEKS));
+        }
+    }
+
+    @Override
+    public long requestAccepted() throws Exception {
+        AllocatedTimeSlot allocated = scheduler.requestProjector(acceptedRequests[next()]);
+        return allocated == null ? -1 : allocated.getAllocatedID();
+    }
+
+    @Override
+    public void delete(long allocationID) throws Exception {
+        scheduler.deleteProjector(allocationID);
+    }
+
+    @Override
+    public Object requestRejected() throws Exception {
+        return scheduler.requestProjector(rejectedRequests[next()]);
+    }
+
+    @Override
+    public int recurringSearch() {
+        return scheduler.getAvailableProjectorIDForRecurringMeeting(recurringRequests[next()]);
+    }
+
+    @Override
+    public Object nextAvailableTimeSlot() {
+        return scheduler.getNextAvailableTimeSlot(rejectedRequests[next()]);
+    }
+
+    @Override
+    public Object projectorSchedule() {
+        return scheduler.getProjectorSchedule(next() % projectors);
+    }
+
+    @Override
+    public void loadData() {
+        scheduler.reloadData();
+    }
+
+    private int next() {
+        next = (next + 1) % REQUESTS;
+        return next;
+    }
+
+    private static TimeSlot oneHour(Instant start) {
+        return new TimeSlot(start, Duration.ofHours(1), Duration.ZERO, start, 1);
+    }
+
+    private static TimeSlot weekly(Instant start) {
+        Duration week = Duration.ofDays(7);
+        return new TimeSlot(start, Duration.ofHours(1), week, start.plus(week.multipliedBy(WEEKS - 1)).plusSeconds(60), 1);
+    }
+}
@@ -0,0 +1,96 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// JMH benchmarks of the scheduler's hot paths on a booked fleet, see BookedFleetHarness.
+// Build and run from the repository root with:
+// mvn install -DskipTests && mvn -f benchmarks/pom.xml package && java -jar benchmarks/target/benchmarks.jar -prof gc
+// -prof gc adds the allocation rate (gc.alloc.rate.norm is bytes per operation).
+// Parameters are narrowed with -p, e.g. -p projectors=300 -p density=0.9, benchmarks are picked by name,
+// e.g. java -jar benchmarks/target/benchmarks.jar SchedulerBenchmark.recurringSearch -prof gc
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class SchedulerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Fleet {
+        @Param({"3", "30", "300"})
+        public int projectors;
+
+        @Param({"0.5", "0.9"})
+        public double density;
+
+        @Param({"0", "0.3"})
+        public double recurringShare;
+
+        SchedulerHarness harness;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            harness = SchedulerHarness.create();
+            harness.setUp(projectors, density, recurringShare);
+        }
+    }
+
+    // Bookings made by requestAccepted, deleted again after every invocation so the fleet stays as booked.
+    // The delete is a data base write of its own, the per invocation tear down keeps it out of the measurement.
+    @State(Scope.Thread)
+    public static class Booking {
+        long allocationID = -1;
+
+        @TearDown(Level.Invocation)
+        public void delete(Fleet fleet) throws Exception {
+            if (allocationID != -1) fleet.harness.delete(allocationID);
+            allocationID = -1;
+        }
+    }
+
+    @Benchmark
+    public long requestAccepted(Fleet fleet, Booking booking) throws Exception {
+        booking.allocationID = fleet.harness.requestAccepted();
+        return booking.allocationID;
+    }
+
+    @Benchmark
+    public Object requestRejected(Fleet fleet) throws Exception {
+        return fleet.harness.requestRejected();
+    }
+
+    @Benchmark
+    public int recurringSearch(Fleet fleet) {
+        return fleet.harness.recurringSearch();
+    }
+
+    @Benchmark
+    public Object nextAvailableTimeSlot(Fleet fleet) {
+        return fleet.harness.nextAvailableTimeSlot();
+    }
+
+    @Benchmark
+    public Object projectorSchedule(Fleet fleet) {
+        return fleet.harness.projectorSchedule();
+    }
+
+    @Benchmark
+    @Measurement(iterations = 5, time = 5)
+    public void loadData(Fleet fleet) {
+        fleet.harness.loadData();
+    }
+}
@@ -0,0 +1,58 @@
+package benchmarks;
+
+// The scheduler lives in the default package, which classes in a package can't refer to, and JMH only runs
+// benchmarks from a package. The benchmarks go through this interface, implemented in the default package
+// by BookedFleetHarness, so only creating the harness needs reflection.
+public interface SchedulerHarness {
+
+    /**
+     * Function to empty the data base and book the fleet for a trial
+     * @param projectors : size of the fleet
+     * @param density : share of the fleet booked in a working hour
+     * @param recurringShare : share of the bookings that are weekly recurring ones
+     */
+    void setUp(int projectors, double density, double recurringShare) throws Exception;
+
+    /**
+     * @return allocation id of a one hour booking at an hour with a free projector
+     */
+    long requestAccepted() throws Exception;
+
+    /**
+     * @param allocationID : booking made by requestAccepted
+     */
+    void delete(long allocationID) throws Exception;
+
+    /**
+     * @return result of a one hour request at an hour with no free projector, the next available time slot
+     */
+    Object requestRejected() throws Exception;
+
+    /**
+     * @return projector id found for a weekly request
+     */
+    int recurringSearch();
+
+    /**
+     * @return next available time slot after an hour with no free projector
+     */
+    Object nextAvailableTimeSlot();
+
+    /**
+     * @return schedule of the next projector
+     */
+    Object projectorSchedule();
+
+    /**
+     * Function to clear the in-memory schedule and load it from the data base again
+     */
+    void loadData();
+
+    static SchedulerHarness create() {
+        try {
+            return (SchedulerHarness) Class.forName("BookedFleetHarness").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Scheduler harness not found", e);
+        }
+    }
+}
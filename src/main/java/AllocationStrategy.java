@@ -0,0 +1,73 @@
+// An AllocationStrategy decides which of the projectors that are free for a booking gets it.
+// The scheduler finds the free projectors, the strategy scores them and the lowest score wins,
+// ties go to the lowest projector id.
+public interface AllocationStrategy {
+
+    /**
+     * Available strategies, selectable with -Dscheduler.allocation=<name>
+     */
+    enum Type {
+        FIRST_FIT,      // lowest free projector id, the original behaviour
+        BEST_FIT,       // the projector whose free gap around the booking is the tightest
+        LOAD_BALANCED;  // the projector with the fewest booked minutes
+
+        static Type fromProperty(String value, Type defaultType) {
+            if (value == null || value.isEmpty()) return defaultType;
+            return Type.valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    /**
+     * What a strategy can ask about a projector, one time and recurring bookings together.
+     * Only valid while the scheduler holds the projector's lock, i.e. during score.
+     */
+    interface ProjectorView {
+        /**
+         * @return the first booked minute >= from, Integer.MAX_VALUE if there is none
+         */
+        int nextBookedStart(int from);
+
+        /**
+         * @return the end of the last booking that starts before to, cut to to, Integer.MIN_VALUE if there is none
+         */
+        int previousBookedEnd(int to);
+
+        /**
+         * @return number of booked minutes of the projector in the current year
+         */
+        long bookedMinutes();
+    }
+
+    /**
+     * @return true if the lowest free projector id can be taken without scoring the others
+     */
+    boolean takesFirstFree();
+
+    /**
+     * Function to score a projector that is free for [start, end)
+     * @param projector
+     * @param start : interval start (inclusive)
+     * @param end : interval end (exclusive)
+     * @param axisLength : number of minutes on the time-axis, gaps end at its ends
+     * @return score, lower is better
+     */
+    long score(ProjectorView projector, int start, int end, int axisLength);
+
+    /**
+     * Function to create a strategy
+     * @param type
+     * @return new strategy
+     */
+    static AllocationStrategy create(Type type) {
+        switch (type) {
+            case FIRST_FIT:
+                return new FirstFitStrategy();
+            case BEST_FIT:
+                return new BestFitStrategy();
+            case LOAD_BALANCED:
+                return new LoadBalancedStrategy();
+            default:
+                throw new IllegalArgumentException("Unknown allocation strategy " + type);
+        }
+    }
+}
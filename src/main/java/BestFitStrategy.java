@@ -0,0 +1,17 @@
+// AllocationStrategy giving every booking to the projector whose free gap around it is the tightest.
+// The time left over on both sides of the booking is the score, so bookings go where they leave the smallest
+// slivers behind and long free gaps are kept for long and recurring bookings.
+public class BestFitStrategy implements AllocationStrategy {
+
+    @Override
+    public boolean takesFirstFree() {
+        return false;
+    }
+
+    @Override
+    public long score(ProjectorView projector, int start, int end, int axisLength) {
+        int gapStart = Math.max(0, projector.previousBookedEnd(start));
+        int gapEnd = Math.min(axisLength, projector.nextBookedStart(end));
+        return (long) Math.max(0, start - gapStart) + Math.max(0, gapEnd - end);
+    }
+}
@@ -0,0 +1,267 @@
+import java.util.BitSet;
+import java.util.List;
+
+// IntervalIndex backed by an occupancy bitmap with one bit per minute of the time-axis.
+// The whole year (525600 minutes) takes about 64 KB per projector, and overlap checks, inserts and removes
+// work on 64 minutes at a time, so their cost depends on the length of the interval in words, not on the
+// number of bookings.
+// Parts of an interval outside [0, axisLength) (bookings before or after the current year) go to a
+// SortedArrayIntervalIndex on the side, which is empty and costs nothing as long as every booking is in the year.
+public class BitmapIntervalIndex implements IntervalIndex {
+    private static final long ALL_ONES = -1L;
+
+    private final int axisLength;
+    private final long[] words;
+    // Booked minutes before 0 and from axisLength on
+    private final SortedArrayIntervalIndex outside = new SortedArrayIntervalIndex();
+
+    public BitmapIntervalIndex(int axisLength) {
+        this.axisLength = axisLength;
+        this.words = new long[(axisLength + 63) >>> 6];
+    }
+
+    private static long firstWordMask(int start) {
+        return ALL_ONES << (start & 63);
+    }
+
+    private static long lastWordMask(int end) {
+        // end is exclusive, so keep the bits up to and including end - 1
+        return ALL_ONES >>> (63 - ((end - 1) & 63));
+    }
+
+    private static void checkInterval(int start, int end) {
+        if (start > end) throw new IllegalArgumentException("Invalid interval [" + start + ", " + end + ")");
+    }
+
+    /**
+     * Utility function to check if [start, end) reaches outside the axis
+     */
+    private boolean leavesAxis(int start, int end) {
+        return start < end && (start < 0 || end > axisLength);
+    }
+
+    @Override
+    public boolean intersects(int start, int end) {
+        checkInterval(start, end);
+        if (leavesAxis(start, end) && outside.intersects(start, end)) return true;
+        start = Math.max(start, 0);
+        end = Math.min(end, axisLength);
+        if (start >= end) return false;
+        int firstWord = start >>> 6;
+        int lastWord = (end - 1) >>> 6;
+        if (firstWord == lastWord) {
+            return (words[firstWord] & firstWordMask(start) & lastWordMask(end)) != 0;
+        }
+        if ((words[firstWord] & firstWordMask(start)) != 0) return true;
+        for (int i = firstWord + 1; i < lastWord; i++) {
+            if (words[i] != 0) return true;
+        }
+        return (words[lastWord] & lastWordMask(end)) != 0;
+    }
+
+    /**
+     * Utility function to set or clear the bits of [start, end)
+     */
+    private void fill(int start, int end, boolean booked) {
+        start = Math.max(start, 0);
+        end = Math.min(end, axisLength);
+        if (start >= end) return;
+        int firstWord = start >>> 6;
+        int lastWord = (end - 1) >>> 6;
+        for (int i = firstWord; i <= lastWord; i++) {
+            long mask = ALL_ONES;
+            if (i == firstWord) mask &= firstWordMask(start);
+            if (i == lastWord) mask &= lastWordMask(end);
+            if (booked) words[i] |= mask;
+            else words[i] &= ~mask;
+        }
+    }
+
+    /**
+     * Utility function to book or free the parts of [start, end) outside the axis
+     */
+    private void fillOutside(int start, int end, boolean booked) {
+        if (start < 0) {
+            if (booked) outside.add(start, Math.min(end, 0));
+            else outside.remove(start, Math.min(end, 0));
+        }
+        if (end > axisLength) {
+            if (booked) outside.add(Math.max(start, axisLength), end);
+            else outside.remove(Math.max(start, axisLength), end);
+        }
+    }
+
+    @Override
+    public void add(int start, int end) {
+        checkInterval(start, end);
+        if (leavesAxis(start, end)) fillOutside(start, end, true);
+        fill(start, end, true);
+    }
+
+    @Override
+    public void remove(int start, int end) {
+        checkInterval(start, end);
+        if (leavesAxis(start, end)) fillOutside(start, end, false);
+        fill(start, end, false);
+    }
+
+    /**
+     * Utility function to find the next booked minute
+     * @return the first booked minute >= from, axisLength if there is none
+     */
+    private int nextBooked(int from) {
+        if (from >= axisLength) return axisLength;
+        int i = from >>> 6;
+        long word = words[i] & firstWordMask(from);
+        while (word == 0) {
+            if (++i == words.length) return axisLength;
+            word = words[i];
+        }
+        return Math.min(axisLength, (i << 6) + Long.numberOfTrailingZeros(word));
+    }
+
+    /**
+     * Utility function to find the next free minute
+     * @return the first free minute >= from, axisLength if there is none
+     */
+    private int nextFree(int from) {
+        if (from >= axisLength) return axisLength;
+        int i = from >>> 6;
+        long word = ~words[i] & firstWordMask(from);
+        while (word == 0) {
+            if (++i == words.length) return axisLength;
+            word = ~words[i];
+        }
+        return Math.min(axisLength, (i << 6) + Long.numberOfTrailingZeros(word));
+    }
+
+    /**
+     * Utility function to find the next free minute, on or off the axis
+     * @return the first free minute >= from
+     */
+    private int nextFreeMinute(int from) {
+        if (from < 0) {
+            int free = outside.nextFreeStart(from, 1);
+            if (free < 0) return free;
+            from = 0;
+        }
+        if (from < axisLength) {
+            int free = nextFree(from);
+            if (free < axisLength) return free;
+            from = axisLength;
+        }
+        return outside.nextFreeStart(from, 1);
+    }
+
+    @Override
+    public int nextFreeStart(int from, int length) {
+        if (length <= 0 || !intersects(from, from + length)) return from;
+        int start = nextFreeMinute(from);
+        while (true) {
+            int end = nextBookedStart(start);
+            if ((long) end - start >= length) return start;
+            start = nextFreeMinute(end);
+        }
+    }
+
+    @Override
+    public int nextBookedStart(int from) {
+        if (from < 0) {
+            int booked = outside.nextBookedStart(from);
+            if (booked < 0) return booked;
+            from = 0;
+        }
+        if (from < axisLength) {
+            int booked = nextBooked(from);
+            if (booked < axisLength) return booked;
+            from = axisLength;
+        }
+        return outside.nextBookedStart(from);
+    }
+
+    @Override
+    public int previousBookedEnd(int to) {
+        if (to > axisLength) {
+            int end = outside.previousBookedEnd(to);
+            if (end > axisLength) return end;
+        }
+        int last = Math.min(to, axisLength) - 1;
+        if (last < 0) return outside.previousBookedEnd(to);
+        int i = last >>> 6;
+        long word = words[i] & lastWordMask(last + 1);
+        while (word == 0) {
+            if (--i < 0) return outside.previousBookedEnd(0);
+            word = words[i];
+        }
+        return (i << 6) + 64 - Long.numberOfLeadingZeros(word);
+    }
+
+    /**
+     * Utility function to check a single minute of the axis
+     */
+    private boolean isBooked(int minute) {
+        return (words[minute >>> 6] & (1L << (minute & 63))) != 0;
+    }
+
+    @Override
+    public int rangeCount() {
+        int count = outside.rangeCount();
+        long previousTopBit = 0;
+        for (long word : words) {
+            // a range starts wherever a booked bit follows a free one
+            long starts = word & ~((word << 1) | previousTopBit);
+            count += Long.bitCount(starts);
+            previousTopBit = word >>> 63;
+        }
+        if (count == 0 || axisLength == 0) return count;
+        // ranges running over either end of the axis were counted on both sides
+        if (isBooked(0) && outside.intersects(-1, 0)) count--;
+        if (isBooked(axisLength - 1) && outside.intersects(axisLength, axisLength + 1)) count--;
+        return count;
+    }
+
+    @Override
+    public void forEachRange(RangeConsumer consumer) {
+        int start = nextBookedStart(Integer.MIN_VALUE);
+        while (start != Integer.MAX_VALUE) {
+            int end = nextFreeMinute(start);
+            consumer.accept(start, end);
+            start = nextBookedStart(end);
+        }
+    }
+
+    /**
+     * Function to clear the projectors that have a booking in [start, end) from the given candidate set.
+     * The candidates are checked together one 64-minute word at a time, so a fully booked fleet is detected
+     * after looking at the first few words instead of probing every projector for the whole interval.
+     * @param indexes : bitmap index of every projector, indexed by projector id
+     * @param start : interval start (inclusive)
+     * @param end : interval end (exclusive)
+     * @param candidates : projector ids to check, the busy ones get cleared
+     */
+    static void clearBusy(List<? extends IntervalIndex> indexes, int start, int end, BitSet candidates) {
+        checkInterval(start, end);
+        if (indexes.isEmpty()) return;
+        int axisLength = ((BitmapIntervalIndex) indexes.get(0)).axisLength;
+        if (start < end && (start < 0 || end > axisLength)) {
+            for (int p = candidates.nextSetBit(0); p >= 0; p = candidates.nextSetBit(p + 1)) {
+                if (((BitmapIntervalIndex) indexes.get(p)).outside.intersects(start, end)) candidates.clear(p);
+            }
+        }
+        start = Math.max(start, 0);
+        end = Math.min(end, axisLength);
+        if (start >= end) return;
+        int firstWord = start >>> 6;
+        int lastWord = (end - 1) >>> 6;
+        for (int i = firstWord; i <= lastWord && !candidates.isEmpty(); i++) {
+            long mask = ALL_ONES;
+            if (i == firstWord) mask &= firstWordMask(start);
+            if (i == lastWord) mask &= lastWordMask(end);
+            for (int p = candidates.nextSetBit(0); p >= 0; p = candidates.nextSetBit(p + 1)) {
+                if ((((BitmapIntervalIndex) indexes.get(p)).words[i] & mask) != 0) {
+                    candidates.clear(p);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+// Number of projectors booked at every minute of the time-axis, for the whole fleet.
+// Kept in a segment tree over the minutes with range add and range max, so booking or freeing an interval and
+// asking for the peak usage of an interval both take O(log n), whatever their length.
+// If the peak of [start, end) equals the size of the fleet, some minute of it has every projector booked and no
+// projector can take the interval. A lower peak doesn't promise a free projector, a different one may be free
+// at every minute, so it only rules requests out.
+// The tree is laid out bottom-up without padding: leaves at [n, 2n), node i covers its children 2i and 2i + 1.
+// An add to a whole node is kept in pending[node] and never pushed down,
+// booked[node] is the max over the node's minutes including every pending add at or below it.
+// Queries only read, adding up the pending adds above the nodes they use, so they don't need to exclude each
+// other: they run on an optimistic read of a StampedLock and only take its read lock if an add came in between.
+// Adds and resets take the write lock.
+public class CapacityIndex {
+    private final int axisLength;
+    private final int[] booked;
+    private final int[] pending;
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * @param axisLength : number of minutes on the time-axis, [0, axisLength)
+     */
+    public CapacityIndex(int axisLength) {
+        this.axisLength = axisLength;
+        this.booked = new int[2 * axisLength];
+        this.pending = new int[axisLength];
+    }
+
+    /**
+     * Function to add to the number of booked projectors of every minute in [start, end), cut to the time-axis
+     * @param start : interval start (inclusive)
+     * @param end : interval end (exclusive)
+     * @param delta : +1 when a projector is booked, -1 when it is freed
+     */
+    public void add(int start, int end, int delta) {
+        int left = Math.max(0, start) + axisLength;
+        int right = Math.min(axisLength, end) + axisLength;
+        if (left >= right) return;
+        int firstLeaf = left;
+        int lastLeaf = right - 1;
+        long stamp = lock.writeLock();
+        try {
+            for (; left < right; left >>= 1, right >>= 1) {
+                if ((left & 1) == 1) apply(left++, delta);
+                if ((right & 1) == 1) apply(--right, delta);
+            }
+            pullUp(firstLeaf);
+            pullUp(lastLeaf);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Function to find the peak usage of an interval
+     * @param start : interval start (inclusive)
+     * @param end : interval end (exclusive)
+     * @return the highest number of projectors booked at the same minute of [start, end), cut to the time-axis,
+     * 0 if nothing of it is on the time-axis
+     */
+    public int maxBooked(int start, int end) {
+        int left = Math.max(0, start) + axisLength;
+        int right = Math.min(axisLength, end) + axisLength;
+        if (left >= right) return 0;
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            int max = query(left, right);
+            if (lock.validate(stamp)) return max;
+        }
+        stamp = lock.readLock();
+        try {
+            return query(left, right);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Function to find the max over the leaves [left, right) without changing the tree
+     * The nodes taken on the left so far all lie within the node just left of the next left bound, and the ones
+     * taken on the right within the node at the next right bound, so one pending add per level and side
+     * brings them up to that level. Above the last level both sides go on to the root.
+     */
+    private int query(int left, int right) {
+        int leftMax = Integer.MIN_VALUE;
+        int rightMax = Integer.MIN_VALUE;
+        for (; left < right; left >>= 1, right >>= 1) {
+            if ((left & 1) == 1) leftMax = Math.max(leftMax, booked[left++]);
+            if ((right & 1) == 1) rightMax = Math.max(rightMax, booked[--right]);
+            if (leftMax != Integer.MIN_VALUE) leftMax += pendingAt((left >> 1) - 1);
+            if (rightMax != Integer.MIN_VALUE) rightMax += pendingAt(right >> 1);
+        }
+        for (int node = (left - 1) >> 1; node >= 1 && leftMax != Integer.MIN_VALUE; node >>= 1) {
+            leftMax += pendingAt(node);
+        }
+        for (int node = right >> 1; node >= 1 && rightMax != Integer.MIN_VALUE; node >>= 1) {
+            rightMax += pendingAt(node);
+        }
+        return Math.max(leftMax, rightMax);
+    }
+
+    /**
+     * Function to replace every count, used after the schedule was loaded in bulk
+     * @param bookedPerMinute : number of projectors booked at every minute, axisLength values
+     */
+    public void reset(int[] bookedPerMinute) {
+        long stamp = lock.writeLock();
+        try {
+            System.arraycopy(bookedPerMinute, 0, booked, axisLength, axisLength);
+            Arrays.fill(pending, 0);
+            for (int node = axisLength - 1; node >= 1; node--) {
+                booked[node] = Math.max(booked[2 * node], booked[2 * node + 1]);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void apply(int node, int delta) {
+        booked[node] += delta;
+        if (node < axisLength) pending[node] += delta;
+    }
+
+    /**
+     * Function to recompute the nodes above a leaf after adds below them
+     */
+    private void pullUp(int node) {
+        while (node > 1) {
+            node >>= 1;
+            booked[node] = Math.max(booked[2 * node], booked[2 * node + 1]) + pending[node];
+        }
+    }
+
+    private int pendingAt(int node) {
+        return node >= 1 && node < axisLength ? pending[node] : 0;
+    }
+}
@@ -1,8 +1,16 @@
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,54 +22,183 @@ public class DataBase {
 
     // JDBC driver name and database URL
     static final String JDBC_DRIVER = "org.sqlite.JDBC";
-    static final String DB_URL = "jdbc:sqlite:test.db";
+    static final String DB_URL = System.getProperty("db.url", "jdbc:sqlite:test.db");
+    // Number of connections kept open, every connection serves one thread at a time
+    private static final int POOL_SIZE = Integer.getInteger("db.poolSize", 4);
+    // Prepared statements cached per connection, the least recently used one is closed beyond this
+    private static final int STATEMENT_CACHE_SIZE = 64;
+    private static final int BORROW_TIMEOUT_SECONDS = 30;
+    private static final int BUSY_TIMEOUT_MILLIS = 30000;
+    private static final String SYNCHRONOUS = System.getProperty("db.synchronous", "NORMAL").trim().toUpperCase();
+    // Time spent in every kind of call, waiting for a connection included, see MetricsRegistry
+    private static final MetricsRegistry.Timer QUERY_TIMER = callTimer("query");
+    private static final MetricsRegistry.Timer UPDATE_TIMER = callTimer("update");
+    private static final MetricsRegistry.Timer INSERT_TIMER = callTimer("insert");
+    private static final MetricsRegistry.Timer EXECUTE_TIMER = callTimer("execute");
+    private static final MetricsRegistry.Timer COMMIT_TIMER = callTimer("commit");
 
     // Database credentials
     // static final String USER = "username";
     // static final String PASS = "password";
 
-    private Connection conn = null;
+    /**
+     * Callback for reading the rows of a query, the result set is closed once the handler returns
+     */
+    public interface ResultSetHandler<T> {
+        T handle(ResultSet resultSet) throws SQLException;
+    }
+
+    /**
+     * Work done inside a transaction, see inTransaction
+     */
+    public interface TransactionBody<T> {
+        T run() throws SQLException;
+    }
+
+    // A pooled connection together with its prepared statements, keyed by SQL text
+    private static class PooledConnection {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements =
+                new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                        if (size() <= STATEMENT_CACHE_SIZE) return false;
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                };
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        PreparedStatement prepare(String sql, Object... params) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                statement.setQueryTimeout(30);
+                statements.put(sql, statement);
+            }
+            statement.clearParameters();
+            for (int i = 0; i < params.length; i++) {
+                statement.setObject(i + 1, params[i]);
+            }
+            return statement;
+        }
+
+        void close() {
+            for (PreparedStatement statement : statements.values()) closeQuietly(statement);
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+            }
+        }
+
+        private static void closeQuietly(Statement statement) {
+            try {
+                statement.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    // Connections are opened lazily up to POOL_SIZE, a thread that finds the pool empty waits for one to come back.
+    private final BlockingQueue<PooledConnection> idleConnections = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final List<PooledConnection> allConnections = new ArrayList<>();
+    // Connection of the transaction the current thread has open, if any
+    private final ThreadLocal<PooledConnection> transactionConnection = new ThreadLocal<>();
 
      /**
      * Connect to the database.
      */
-    // TODO: Because app is hosted locally we may get away with opening a connection on for every request.
-    // But definately need to add connection pooling to make it prod ready.
-    // http://www.mchange.com/projects/c3p0/#prerequisites
-    public void connect() throws ClassNotFoundException {
-        Class.forName(JDBC_DRIVER);
+    private PooledConnection connect() throws SQLException {
         try {
-            this.conn = DriverManager.getConnection(DB_URL);
-            this.conn.setAutoCommit(true);
-            appLogger.info("Connection to SQLite has been established.");
-            
-        } catch (SQLException e) {
-            appLogger.info("SQL Exception " + e.getMessage());
+            Class.forName(JDBC_DRIVER);
+        } catch (ClassNotFoundException cnfe) {
+            appLogger.error("Class Not Found Exception. Possibly, the SQLite jdbc drive jar could not be loaded. Check dependencies/Classpath");
+            throw new SQLException("SQLite JDBC driver could not be loaded", cnfe);
         }
+        Connection conn = DriverManager.getConnection(DB_URL);
+        conn.setAutoCommit(true);
+        try (Statement statement = conn.createStatement()) {
+            // several connections share the file, wait for locks instead of failing right away
+            statement.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MILLIS);
+            // with the write-ahead log readers on the other pooled connections don't block the writer
+            statement.execute("PRAGMA journal_mode = WAL");
+            // in WAL mode NORMAL only syncs at checkpoints, a power loss may drop the last commits but can't
+            // corrupt the file. -Ddb.synchronous=FULL syncs every commit.
+            statement.execute("PRAGMA synchronous = " + SYNCHRONOUS);
+        }
+        appLogger.info("Connection to SQLite has been established.");
+        return new PooledConnection(conn);
     }
 
-    public void close() {
-        try {
-            if (this.conn != null) {
-                this.conn.close();
+    /**
+     * Function to get a connection for the calling thread, the thread's open transaction is used if there is one
+     * @return connection, to be handed back with release
+     */
+    private PooledConnection borrow() throws SQLException {
+        PooledConnection pooledConnection = transactionConnection.get();
+        if (pooledConnection != null) return pooledConnection;
+        pooledConnection = idleConnections.poll();
+        if (pooledConnection != null) return pooledConnection;
+        synchronized (allConnections) {
+            if (allConnections.size() < POOL_SIZE) {
+                pooledConnection = connect();
+                allConnections.add(pooledConnection);
+                return pooledConnection;
             }
-        } catch (SQLException e) {
-            appLogger.error("SQL Exception " + e.getMessage());
+        }
+        try {
+            pooledConnection = idleConnections.poll(BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a data base connection", ie);
+        }
+        if (pooledConnection == null) throw new SQLException("No data base connection available");
+        return pooledConnection;
+    }
+
+    private void release(PooledConnection pooledConnection) {
+        if (pooledConnection != transactionConnection.get()) idleConnections.offer(pooledConnection);
+    }
+
+    /**
+     * Function to close a connection left in an unknown state instead of handing it back,
+     * a replacement is opened the next time the pool runs short
+     * @param pooledConnection : connection to drop
+     */
+    private void discard(PooledConnection pooledConnection) {
+        synchronized (allConnections) {
+            allConnections.remove(pooledConnection);
+        }
+        pooledConnection.close();
+        appLogger.warn("Data base connection dropped, its transaction could not be ended");
+    }
+
+    public void close() {
+        synchronized (allConnections) {
+            for (PooledConnection pooledConnection : allConnections) pooledConnection.close();
+            allConnections.clear();
+            idleConnections.clear();
         }
     }
 
     public void update (String[] updateSqls) throws ClassNotFoundException{
-        if(this.conn == null) this.connect();
         try {
-            Statement statement = this.conn.createStatement();
-            statement.setQueryTimeout(30);
+            PooledConnection pooledConnection = borrow();
+            try (Statement statement = pooledConnection.connection.createStatement()) {
+                statement.setQueryTimeout(30);
 
-            int i = updateSqls.length;
-            while(i > 0) {
-                i--;
-                statement.executeUpdate(updateSqls[i]);
+                int i = updateSqls.length;
+                while(i > 0) {
+                    i--;
+                    statement.executeUpdate(updateSqls[i]);
+                }
+            } finally {
+                release(pooledConnection);
             }
-
         } catch(SQLException e) {
             // if the error message is "out of memory",
             // it probably means no database file is found
@@ -69,97 +206,221 @@ public class DataBase {
         }
     }
 
-    public ResultSet query(String sql){
+    /**
+     * Function to run a query through the connection's prepared statement cache
+     * @param sql : query, with ? for every parameter
+     * @param handler : reads the rows, the result set is closed after it returns
+     * @param params : query parameters
+     * @return whatever the handler returned
+     */
+    public <T> T query(String sql, ResultSetHandler<T> handler, Object... params) throws SQLException {
+        long startNanos = System.nanoTime();
+        SchedulerEvents.DataBaseCall event = new SchedulerEvents.DataBaseCall();
+        event.begin();
+        PooledConnection pooledConnection = borrow();
         try {
-            if (this.conn == null) this.connect();
-            Statement statement = this.conn.createStatement();
+            PreparedStatement statement = pooledConnection.prepare(sql, params);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return handler.handle(resultSet);
+            }
+        } finally {
+            release(pooledConnection);
+            QUERY_TIMER.record(System.nanoTime() - startNanos);
+            commitCallEvent(event, "query", sql, -1);
+        }
+    }
+
+    /**
+     * Function to run an INSERT, UPDATE or DELETE through the connection's prepared statement cache
+     * @param sql : statement, with ? for every parameter
+     * @param params : statement parameters
+     * @return number of rows changed
+     */
+    public int update(String sql, Object... params) throws SQLException {
+        long startNanos = System.nanoTime();
+        SchedulerEvents.DataBaseCall event = new SchedulerEvents.DataBaseCall();
+        event.begin();
+        int rows = -1;
+        PooledConnection pooledConnection = borrow();
+        try {
+            rows = pooledConnection.prepare(sql, params).executeUpdate();
+            return rows;
+        } finally {
+            release(pooledConnection);
+            UPDATE_TIMER.record(System.nanoTime() - startNanos);
+            commitCallEvent(event, "update", sql, rows);
+        }
+    }
+
+    /**
+     * Function to run an INSERT through the connection's prepared statement cache
+     * @param sql : statement, with ? for every parameter
+     * @param params : statement parameters
+     * @return id generated for the inserted row
+     */
+    public long insert(String sql, Object... params) throws SQLException {
+        long startNanos = System.nanoTime();
+        SchedulerEvents.DataBaseCall event = new SchedulerEvents.DataBaseCall();
+        event.begin();
+        PooledConnection pooledConnection = borrow();
+        try {
+            PreparedStatement statement = pooledConnection.prepare(sql, params);
+            statement.executeUpdate();
+            try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                if (!generatedKeys.next()) throw new SQLException("No id generated for " + sql);
+                return generatedKeys.getLong(1);
+            }
+        } finally {
+            release(pooledConnection);
+            INSERT_TIMER.record(System.nanoTime() - startNanos);
+            commitCallEvent(event, "insert", sql, 1);
+        }
+    }
+
+    /**
+     * Function to run several statements as one transaction, on the calling thread's connection
+     * If the thread already has a transaction open the work simply becomes part of it,
+     * and the outer transaction decides whether it is committed.
+     * @param body : the statements to run, throwing rolls the transaction back
+     * @return whatever the body returned
+     */
+    public <T> T inTransaction(TransactionBody<T> body) throws SQLException {
+        if (transactionConnection.get() != null) return body.run();
+        beginTransaction();
+        try {
+            T result = body.run();
+            commitTransaction();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            if (transactionConnection.get() != null) {
+                try {
+                    rollbackTransaction();
+                } catch (SQLException rollbackException) {
+                    appLogger.error("Rollback failed: " + rollbackException.getMessage());
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Execute a statement that doesn't return rows, failures are reported to the caller
+     * @param sql
+     */
+    public void execute(String sql) throws SQLException {
+        long startNanos = System.nanoTime();
+        SchedulerEvents.DataBaseCall event = new SchedulerEvents.DataBaseCall();
+        event.begin();
+        PooledConnection pooledConnection = borrow();
+        try (Statement statement = pooledConnection.connection.createStatement()) {
             statement.setQueryTimeout(30);
-            ResultSet rs = statement.executeQuery(sql);
-            return rs;
-        } catch(SQLException e) {
-            // if the error message is "out of memory",
-            // it probably means no database file is found
-            appLogger.info("SQL Exception " + e.getMessage());
-        } catch (ClassNotFoundException cnfe){
-            appLogger.error("Class Not Found Exception. Possibly, the SQLite jdbc drive jar could not be loaded. Check dependencies/Classpath");
+            statement.execute(sql);
+        } finally {
+            release(pooledConnection);
+            EXECUTE_TIMER.record(System.nanoTime() - startNanos);
+            commitCallEvent(event, "execute", sql, -1);
         }
-        return null;
     }
 
-    private void fillUpProjectors(){
-         String[] queries = {
-                 "INSERT INTO projectors VALUES (1, \"Projector 1\");",
-                 "INSERT INTO projectors VALUES (2, \"Projector 2\");",
-                 "INSERT INTO projectors VALUES (3, \"Projector 3\");",
-         };
+    /**
+     * Start a transaction, every statement the calling thread runs until commitTransaction or
+     * rollbackTransaction goes through the same connection and is applied together
+     */
+    public void beginTransaction() throws SQLException {
+        if (transactionConnection.get() != null) throw new SQLException("Transaction already open");
+        PooledConnection pooledConnection = borrow();
         try {
-            this.update(queries);
-        } catch (ClassNotFoundException cnfe){
-            appLogger.error("Class Not Found Exception. Possibly, the SQLite jdbc drive jar could not be loaded. Check dependencies/Classpath");
+            pooledConnection.connection.setAutoCommit(false);
+        } catch (SQLException sqle) {
+            release(pooledConnection);
+            throw sqle;
         }
+        transactionConnection.set(pooledConnection);
     }
 
-    private void fillUpTeams(){
-        String[] queries = {
-                "INSERT INTO teams VALUES (1, \"Team 1\");",
-                "INSERT INTO teams VALUES (2, \"Team 2\");",
-                "INSERT INTO teams VALUES (3, \"Team 3\");",
-                "INSERT INTO teams VALUES (4, \"Team 4\");",
-                "INSERT INTO teams VALUES (5, \"Team 5\");",
-        };
+    public void commitTransaction() throws SQLException {
+        long startNanos = System.nanoTime();
+        SchedulerEvents.DataBaseCall event = new SchedulerEvents.DataBaseCall();
+        event.begin();
         try {
-            this.update(queries);
-        } catch (ClassNotFoundException cnfe){
-            appLogger.error("Class Not Found Exception. Possibly, the SQLite jdbc drive jar could not be loaded. Check dependencies/Classpath");
+            endTransaction(true);
+        } finally {
+            COMMIT_TIMER.record(System.nanoTime() - startNanos);
+            commitCallEvent(event, "commit", null, -1);
         }
     }
 
+    public void rollbackTransaction() throws SQLException {
+        endTransaction(false);
+    }
+
+    private void endTransaction(boolean commit) throws SQLException {
+        PooledConnection pooledConnection = transactionConnection.get();
+        if (pooledConnection == null) throw new SQLException("No transaction open");
+        transactionConnection.remove();
+        boolean reusable = false;
+        try {
+            try {
+                if (commit) pooledConnection.connection.commit();
+                else pooledConnection.connection.rollback();
+            } catch (SQLException sqle) {
+                // a failed commit leaves the transaction open, and sqlite-jdbc's setAutoCommit(true) would
+                // try to commit it again, so roll it back first. If that fails too the connection is dropped.
+                if (commit) {
+                    try {
+                        pooledConnection.connection.rollback();
+                        pooledConnection.connection.setAutoCommit(true);
+                        reusable = true;
+                    } catch (SQLException rollbackException) {
+                        sqle.addSuppressed(rollbackException);
+                    }
+                }
+                throw sqle;
+            }
+            pooledConnection.connection.setAutoCommit(true);
+            reusable = true;
+        } finally {
+            if (reusable) release(pooledConnection);
+            else discard(pooledConnection);
+        }
+    }
+
+    /**
+     * Function to bring the schema up to date, see SchemaMigrations
+     */
     public void createSchema() {
-        // TODO: Handle migrations properly
-        String createProjectorsTable = "CREATE TABLE IF NOT EXISTS projectors " +
-                    "(id INTEGER not NULL, " +
-                    " name VARCHAR(255), " +
-                    " PRIMARY KEY ( id ))";
-
-        String timeSlotsTable = "CREATE TABLE IF NOT EXISTS time_slots " +
-                    "(id INTEGER not NULL, " +
-                    " start INTEGER, " +
-                    " duration INTEGER, " +
-                    " recur_every INTEGER, " +
-                    " end INTEGER, " +
-                    " PRIMARY KEY ( id ))";
-
-        String createTeamsTable = "CREATE TABLE IF NOT EXISTS teams " +
-                "(id INTEGER not NULL, " +
-                " name VARCHAR(255), " +
-                " PRIMARY KEY ( id ))";
-
-        String createAllocationsTable = "CREATE TABLE IF NOT EXISTS allocations " +
-                    "(id INTEGER not NULL, " +
-                    " projector_id INTEGER not NULL, " +
-                    " time_slot_id INTEGER not NULL, " +
-                    " team_id INTEGER not NULL, " +
-                    " PRIMARY KEY ( id ))";
-
-        String[] prepareSchemaStatements = {
-            createProjectorsTable,
-            timeSlotsTable,
-            createTeamsTable,
-            createAllocationsTable
-        };
         try {
-            this.update(prepareSchemaStatements);
-            fillUpProjectors();
-            fillUpTeams();
-        } catch (ClassNotFoundException cnfe){
-            appLogger.error("Class Not Found Exception. Possibly, the SQLite jdbc drive jar could not be loaded. Check dependencies/Classpath");
+            int applied = SchemaMigrations.migrate();
+            appLogger.info("Schema at version " + SchemaMigrations.latestVersion() + ", " + applied + " migration(s) applied");
+        } catch (SQLException sqle) {
+            appLogger.error("Schema migration failed: " + sqle.getMessage());
         }
         //this.close();
     }
 
+    /**
+     * Function to fill in and commit a data base call event, if a recording wants it
+     * @param event
+     * @param call : query, update, insert, execute or commit
+     * @param sql : statement run, null for a commit
+     * @param rows : rows changed, -1 if not known
+     */
+    private static void commitCallEvent(SchedulerEvents.DataBaseCall event, String call, String sql, long rows) {
+        if (!event.shouldCommit()) return;
+        event.call = call;
+        event.sql = sql;
+        event.rows = rows;
+        event.commit();
+    }
+
+    private static MetricsRegistry.Timer callTimer(String call) {
+        return MetricsRegistry.getInstance().timer("db_call_duration_seconds",
+                "Time spent in DataBase calls, waiting for a connection included", "call=\"" + call + "\"");
+    }
+
     private static DataBase instance = null;
     private DataBase() {}
-    public static DataBase getInstance() {
+    public static synchronized DataBase getInstance() {
         if(instance == null) {
             instance = new DataBase();
         }
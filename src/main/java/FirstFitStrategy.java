@@ -0,0 +1,14 @@
+// AllocationStrategy giving every booking to the lowest free projector id.
+// Cheapest to decide, the search stops at the first free projector, but the low ids fill up with short gaps.
+public class FirstFitStrategy implements AllocationStrategy {
+
+    @Override
+    public boolean takesFirstFree() {
+        return true;
+    }
+
+    @Override
+    public long score(ProjectorView projector, int start, int end, int axisLength) {
+        return 0;
+    }
+}
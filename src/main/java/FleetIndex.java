@@ -0,0 +1,196 @@
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// A tree over the projectors of the fleet, used to find a free projector without probing every one of them.
+// The leaves are the projectors' own interval indexes (one time bookings only), every inner node keeps the
+// minutes at which all the projectors below it are booked, i.e. the intersection of its children.
+// If an interval overlaps a node's intersection, every projector below the node is booked at some minute of it,
+// so the whole subtree is skipped. Recurring bookings are not in the tree, they are checked at the leaves.
+// The tree only rules projectors out, a projector it hands out still has to be checked by the caller.
+// Every node and every leaf has its own lock, so changes to different projectors only meet on the shared nodes
+// above them, one node at a time. A node is only locked while it is changed, together with read locks on its
+// children: a free range reaches a node after its child (remove goes bottom-up), and a booked range read from a
+// child is in the node before that child's remove gets there, so a node never keeps minutes its children freed.
+public class FleetIndex {
+    private final List<IntervalIndex> leaves;
+    private final int projectorCount;
+    // number of leaf slots, a power of two, slots from projectorCount on are padding
+    private final int size;
+    // inner nodes, nodes[1] is the root and the children of node i are 2i and 2i+1, leaf slot j is node size + j
+    private final IntervalIndex[] nodes;
+    // nodeLocks[i] guards nodes[i], leafLocks[j] guards the changes the tree makes to leaf j
+    private final ReentrantReadWriteLock[] nodeLocks;
+    private final ReentrantReadWriteLock[] leafLocks;
+
+    /**
+     * @param leaves : interval index of every projector, indexed by projector id. The list is read on every
+     *               access, so replacing an index in it is fine as long as rebuild is called afterwards.
+     */
+    public FleetIndex(List<IntervalIndex> leaves) {
+        this.leaves = leaves;
+        this.projectorCount = leaves.size();
+        int slots = 1;
+        while (slots < projectorCount) slots <<= 1;
+        this.size = slots;
+        this.nodes = new IntervalIndex[size];
+        this.nodeLocks = new ReentrantReadWriteLock[size];
+        for (int node = 1; node < size; node++) nodeLocks[node] = new ReentrantReadWriteLock();
+        this.leafLocks = new ReentrantReadWriteLock[projectorCount];
+        for (int projectorID = 0; projectorID < projectorCount; projectorID++) leafLocks[projectorID] = new ReentrantReadWriteLock();
+        rebuild();
+    }
+
+    /**
+     * Function to recompute every inner node from the leaves, after the leaves were filled or replaced directly
+     */
+    public void rebuild() {
+        for (int node = size - 1; node >= 1; node--) {
+            nodeLocks[node].writeLock().lock();
+            try {
+                nodes[node] = hasProjectors(node) ? new SortedArrayIntervalIndex() : null;
+                if (nodes[node] != null) addIntersection(node, 0, Integer.MAX_VALUE);
+            } finally {
+                nodeLocks[node].writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Function to book [start, end) on a projector and update the nodes above it
+     * @param projectorID
+     * @param start : interval start (inclusive)
+     * @param end : interval end (exclusive)
+     */
+    public void add(int projectorID, int start, int end) {
+        leafLocks[projectorID].writeLock().lock();
+        try {
+            leaves.get(projectorID).add(start, end);
+        } finally {
+            leafLocks[projectorID].writeLock().unlock();
+        }
+        // the intersections can only grow, and only inside [start, end)
+        for (int node = (size + projectorID) >>> 1; node >= 1; node >>>= 1) {
+            nodeLocks[node].writeLock().lock();
+            try {
+                addIntersection(node, start, end);
+            } finally {
+                nodeLocks[node].writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Function to free [start, end) on a projector and update the nodes above it
+     * @param projectorID
+     * @param start : interval start (inclusive)
+     * @param end : interval end (exclusive)
+     */
+    public void remove(int projectorID, int start, int end) {
+        leafLocks[projectorID].writeLock().lock();
+        try {
+            leaves.get(projectorID).remove(start, end);
+        } finally {
+            leafLocks[projectorID].writeLock().unlock();
+        }
+        // the projector is free in [start, end) now, so nothing above it is booked by everyone there
+        for (int node = (size + projectorID) >>> 1; node >= 1; node >>>= 1) {
+            nodeLocks[node].writeLock().lock();
+            try {
+                nodes[node].remove(start, end);
+            } finally {
+                nodeLocks[node].writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Function to find the lowest projector id, at or above fromProjectorID, that has no one time booking
+     * in [start, end) and isn't ruled out by a node above it
+     * @param fromProjectorID : lowest id to consider
+     * @param start : interval start (inclusive)
+     * @param end : interval end (exclusive)
+     * @return projector id, -1 if there is none
+     */
+    public int nextCandidate(int fromProjectorID, int start, int end) {
+        if (fromProjectorID >= projectorCount) return -1;
+        return nextCandidate(1, 0, size, fromProjectorID, start, end);
+    }
+
+    private int nextCandidate(int node, int firstSlot, int endSlot, int fromProjectorID, int start, int end) {
+        if (endSlot <= fromProjectorID || firstSlot >= projectorCount) return -1;
+        if (intersects(node, start, end)) return -1;
+        if (node >= size) return firstSlot;
+        int middleSlot = (firstSlot + endSlot) >>> 1;
+        int candidate = nextCandidate(2 * node, firstSlot, middleSlot, fromProjectorID, start, end);
+        if (candidate != -1) return candidate;
+        return nextCandidate(2 * node + 1, middleSlot, endSlot, fromProjectorID, start, end);
+    }
+
+    /**
+     * @return true if the node, or the leaf, has a booked minute in [start, end)
+     */
+    private boolean intersects(int node, int start, int end) {
+        Lock readLock = lock(node).readLock();
+        readLock.lock();
+        try {
+            return bookedMinutes(node).intersects(start, end);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private ReentrantReadWriteLock lock(int node) {
+        return node < size ? nodeLocks[node] : leafLocks[node - size];
+    }
+
+    /**
+     * @return true if some real projector is below the node
+     */
+    private boolean hasProjectors(int node) {
+        int firstSlot = node;
+        while (firstSlot < size) firstSlot <<= 1;
+        return firstSlot - size < projectorCount;
+    }
+
+    /**
+     * @return the booked minutes of a node, null if it only covers padding (booked everywhere as far as
+     * the intersection is concerned)
+     */
+    private IntervalIndex bookedMinutes(int node) {
+        if (node < size) return nodes[node];
+        int projectorID = node - size;
+        return projectorID < projectorCount ? leaves.get(projectorID) : null;
+    }
+
+    /**
+     * Function to add the intersection of a node's children within [from, to) to the node
+     * Must be called while holding the node's write lock, the children are read under their read locks.
+     */
+    private void addIntersection(int node, int from, int to) {
+        IntervalIndex target = nodes[node];
+        int left = 2 * node;
+        int right = left + 1;
+        // padding only ever comes after the projectors, so the left child always has some
+        Lock leftLock = lock(left).readLock();
+        leftLock.lock();
+        try {
+            if (!hasProjectors(right)) {
+                // a padding child doesn't narrow anything, the node is the same as its other child
+                bookedMinutes(left).forEachRange(from, to, target::add);
+                return;
+            }
+            Lock rightLock = lock(right).readLock();
+            rightLock.lock();
+            try {
+                IntervalIndex rightMinutes = bookedMinutes(right);
+                bookedMinutes(left).forEachRange(from, to,
+                        (leftStart, leftEnd) -> rightMinutes.forEachRange(leftStart, leftEnd, target::add));
+            } finally {
+                rightLock.unlock();
+            }
+        } finally {
+            leftLock.unlock();
+        }
+    }
+}
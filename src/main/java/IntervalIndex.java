@@ -0,0 +1,135 @@
+// An IntervalIndex keeps track of the booked minutes of a single projector on the time-axis.
+// Intervals are half open [start, end) in minutes of the year, connected intervals are coalesced,
+// so the index behaves like a set of booked minutes (the same semantics as a RangeSet<Integer> of closedOpen ranges).
+public interface IntervalIndex {
+
+    /**
+     * Available index implementations, selectable with -Dscheduler.index=<name>
+     */
+    enum Type {
+        RANGE_SET,      // Guava TreeRangeSet, boxes every endpoint
+        SORTED_ARRAY,   // Sorted primitive start/end arrays, no allocation on lookups
+        BITMAP;         // One bit per minute, overlap checks 64 minutes at a time
+
+        static Type fromProperty(String value, Type defaultType) {
+            if (value == null || value.isEmpty()) return defaultType;
+            return Type.valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    /**
+     * Callback used to walk the booked intervals without materializing them
+     */
+    interface RangeConsumer {
+        void accept(int start, int end);
+    }
+
+    /**
+     * Function to check if any booked minute falls in [start, end)
+     * @param start : interval start (inclusive)
+     * @param end : interval end (exclusive)
+     * @return true if the interval overlaps a booked interval
+     */
+    boolean intersects(int start, int end);
+
+    /**
+     * Function to mark [start, end) as booked
+     * @param start : interval start (inclusive)
+     * @param end : interval end (exclusive)
+     */
+    void add(int start, int end);
+
+    /**
+     * Function to mark [start, end) as free
+     * @param start : interval start (inclusive)
+     * @param end : interval end (exclusive)
+     */
+    void remove(int start, int end);
+
+    /**
+     * Function to jump to the earliest free gap that can hold an interval of the given length
+     * @param from : earliest acceptable start
+     * @param length : length of the interval in minutes
+     * @return the smallest start >= from such that [start, start + length) is free
+     */
+    int nextFreeStart(int from, int length);
+
+    /**
+     * Function to find where the free gap containing the given minute ends
+     * @param from : minute to look from
+     * @return the first booked minute >= from, Integer.MAX_VALUE if nothing is booked after from
+     */
+    int nextBookedStart(int from);
+
+    /**
+     * Function to find where the free gap containing the minute before the given one starts
+     * @param to : minute to look back from (exclusive)
+     * @return the end of the last booked interval, cut to to, that starts before to,
+     * Integer.MIN_VALUE if nothing is booked before to
+     */
+    int previousBookedEnd(int to);
+
+    /**
+     * @return number of disjoint booked intervals
+     */
+    int rangeCount();
+
+    /**
+     * Function to walk all booked intervals in ascending order
+     * @param consumer : receives start and end of every booked interval
+     */
+    void forEachRange(RangeConsumer consumer);
+
+    /**
+     * Function to walk the booked intervals that overlap [from, to) in ascending order, cut to [from, to)
+     * @param from : start of the range (inclusive)
+     * @param to : end of the range (exclusive)
+     * @param consumer : receives start and end of every booked interval
+     */
+    default void forEachRange(int from, int to, RangeConsumer consumer) {
+        int position = from;
+        while (position < to) {
+            int start = nextBookedStart(position);
+            if (start >= to) return;
+            int end = Math.min(nextFreeStart(start, 1), to);
+            consumer.accept(start, end);
+            position = end;
+        }
+    }
+
+    /**
+     * Function to walk the free intervals within [from, to) in ascending order
+     * @param from : start of the range (inclusive)
+     * @param to : end of the range (exclusive)
+     * @param consumer : receives start and end of every free interval
+     */
+    default void forEachFreeRange(int from, int to, RangeConsumer consumer) {
+        int position = from;
+        while (position < to) {
+            int start = nextFreeStart(position, 1);
+            if (start >= to) return;
+            int end = Math.min(nextBookedStart(start), to);
+            consumer.accept(start, end);
+            position = end;
+        }
+    }
+
+    /**
+     * Function to create an empty index
+     * @param type : index implementation
+     * @param axisLength : number of minutes on the time-axis, [0, axisLength)
+     * @return new index
+     */
+    static IntervalIndex create(Type type, int axisLength) {
+        switch (type) {
+            case RANGE_SET:
+                return new RangeSetIntervalIndex();
+            case SORTED_ARRAY:
+                return new SortedArrayIntervalIndex();
+            case BITMAP:
+                return new BitmapIntervalIndex(axisLength);
+            default:
+                throw new IllegalArgumentException("Unknown interval index type " + type);
+        }
+    }
+}
@@ -0,0 +1,679 @@
+import org.json.JSONException;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+// Streaming JSON reading and writing for the fixed request and response shapes of the REST API, used by
+// ProjectorController instead of org.json, which boxes every value into a HashMap and builds the response as
+// a String. Request bodies are read from their bytes: the reader only remembers where the value of every
+// known field starts, and a value is parsed when it is asked for, straight into a long or an Instant.
+// Like org.json, a field that is missing or has the wrong type only fails when it is read, and failures are
+// JSONExceptions (or DateTimeParseExceptions for bad dates), so the routes answer 400 as before.
+// Responses are written into a per-thread byte buffer that is reused from one request to the next.
+// Instants in the usual yyyy-MM-ddTHH:mm:ss[.fraction]Z form are parsed and written without going through
+// java.time's formatters, anything else falls back to Instant.parse and Instant.toString.
+// See JsonCodecBenchmark for what it saves.
+final class JsonCodec {
+    private static final long SECONDS_PER_DAY = 86400;
+    // days from 0000-03-01 to 1970-01-01, see epochDay
+    private static final int DAYS_0000_TO_1970 = 719468;
+    private static final int DAYS_PER_ERA = 146097;
+    // dates that Instant.toString writes with a four digit year and no sign
+    private static final long MIN_FOUR_DIGIT_DAY = epochDay(0, 1, 1);
+    private static final long MAX_FOUR_DIGIT_DAY = epochDay(9999, 12, 31);
+
+    private JsonCodec() {}
+
+    /**
+     * Function to encode the names of the fields a route reads, once
+     * @param names
+     * @return the names to create Fields with
+     */
+    static byte[][] fieldNames(String... names) {
+        byte[][] encoded = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) encoded[i] = names[i].getBytes(StandardCharsets.UTF_8);
+        return encoded;
+    }
+
+    /**
+     * Fields of one JSON object, the ones the route is interested in
+     */
+    static final class Fields {
+        private final byte[][] names;
+        private final int[] valueStarts;
+        private byte[] json;
+
+        /**
+         * @param names : names of the fields to remember, see fieldNames, a field is then given by its index in names
+         */
+        Fields(byte[][] names) {
+            this.names = names;
+            this.valueStarts = new int[names.length];
+        }
+
+        /**
+         * @param field : index of the field
+         * @return true if the object has the field, null or not
+         */
+        boolean has(int field) {
+            return valueStarts[field] != -1;
+        }
+
+        /**
+         * Function to read a number field, like JSONObject.getLong: fractions are cut, numbers in strings accepted
+         * @param field : index of the field
+         * @return the value
+         * @throws JSONException if the field is missing or isn't a number
+         */
+        long getLong(int field) {
+            int start = valueStart(field);
+            byte first = json[start];
+            if (first == '"') return parseLongText(field, Reader.readString(json, start));
+            if (first != '-' && (first < '0' || first > '9')) throw notA(field, "a number");
+            int position = first == '-' ? start + 1 : start;
+            long value = 0;
+            int digits = 0;
+            while (position < json.length && json[position] >= '0' && json[position] <= '9') {
+                value = value * 10 + (json[position++] - '0');
+                digits++;
+            }
+            // the digits have to be the whole literal, 12abc or 1-2 aren't 12 and 1
+            boolean plain = digits > 0 && digits <= 18 && (position == json.length || !Reader.isLiteral(json[position]));
+            if (plain) return first == '-' ? -value : value;
+            // fractions, exponents and numbers too long for the loop, skipValue rejects anything else
+            return parseLongText(field, new String(json, start, Reader.skipValue(json, start) - start, StandardCharsets.US_ASCII));
+        }
+
+        /**
+         * @param field : index of the field
+         * @param defaultValue : returned if the field is missing, or isn't a number (like JSONObject.optLong)
+         * @return the value
+         */
+        long optLong(int field, long defaultValue) {
+            if (!has(field)) return defaultValue;
+            try {
+                return getLong(field);
+            } catch (JSONException je) {
+                return defaultValue;
+            }
+        }
+
+        /**
+         * Function to read a date field, an ISO-8601 instant in a string
+         * @param field : index of the field
+         * @return the instant
+         * @throws JSONException if the field is missing or isn't a string
+         * @throws java.time.format.DateTimeParseException if the string isn't an instant
+         */
+        Instant getInstant(int field) {
+            int start = valueStart(field);
+            if (json[start] != '"') throw notA(field, "a string");
+            Instant instant = parseInstant(json, start + 1);
+            return instant != null ? instant : Instant.parse(Reader.readString(json, start));
+        }
+
+        private int valueStart(int field) {
+            int start = valueStarts[field];
+            if (start == -1) throw new JSONException("JSONObject[\"" + name(field) + "\"] not found.");
+            return start;
+        }
+
+        private long parseLongText(int field, String text) {
+            try {
+                return new BigDecimal(text.trim()).longValue();
+            } catch (NumberFormatException nfe) {
+                throw notA(field, "a number");
+            }
+        }
+
+        private JSONException notA(int field, String type) {
+            return new JSONException("JSONObject[\"" + name(field) + "\"] is not " + type + ".");
+        }
+
+        private String name(int field) {
+            return new String(names[field], StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Reader walking a request body, objects are read into Fields
+     */
+    static final class Reader {
+        private final byte[] json;
+        private int position;
+        // no element of the current array was read yet
+        private boolean firstElement;
+        // start and end of the names of the unknown fields of the current object, reused from one object to the next
+        private int[] otherNames = new int[8];
+        private int otherNameCount;
+
+        Reader(byte[] json) {
+            this.json = json;
+        }
+
+        /**
+         * Function to read the next object of the body
+         * @param fields : receives where the values of its known fields start, unknown ones are skipped
+         * @return fields
+         */
+        Fields readObject(Fields fields) {
+            Arrays.fill(fields.valueStarts, -1);
+            fields.json = json;
+            otherNameCount = 0;
+            expect('{');
+            if (peek() == '}') {
+                position++;
+                return fields;
+            }
+            while (true) {
+                if (peek() != '"') throw syntaxError("Expected a field name");
+                int nameStart = position + 1;
+                position = skipValue(json, position);
+                int nameEnd = position - 1;
+                expect(':');
+                skipWhitespace();
+                int field = fieldIndex(fields, nameStart, nameEnd);
+                // like org.json, a field given twice is an error rather than the last one winning
+                if (field != -1 ? fields.has(field) : !rememberOtherName(nameStart, nameEnd)) {
+                    throw syntaxError("Duplicate key \"" + new String(json, nameStart, nameEnd - nameStart, StandardCharsets.UTF_8) + "\"");
+                }
+                if (field != -1) fields.valueStarts[field] = position;
+                position = skipValue(json, position);
+                byte next = peek();
+                position++;
+                if (next == '}') return fields;
+                if (next != ',') throw syntaxError("Expected , or }");
+                skipWhitespace();
+            }
+        }
+
+        /**
+         * Function to start reading an array, its elements are then read while hasNextElement is true
+         */
+        void beginArray() {
+            expect('[');
+            firstElement = true;
+        }
+
+        /**
+         * @return true if the array has another element, the reader is then positioned on it
+         */
+        boolean hasNextElement() {
+            if (peek() == ']') {
+                position++;
+                return false;
+            }
+            if (!firstElement) expect(',');
+            firstElement = false;
+            return true;
+        }
+
+        /**
+         * Function to check nothing but whitespace follows what was read
+         */
+        void end() {
+            skipWhitespace();
+            if (position != json.length) throw syntaxError("Unexpected content after the JSON value");
+        }
+
+        private static int fieldIndex(Fields fields, int nameStart, int nameEnd) {
+            int length = nameEnd - nameStart;
+            for (int field = 0; field < fields.names.length; field++) {
+                byte[] name = fields.names[field];
+                if (name.length != length) continue;
+                int i = 0;
+                while (i < length && name[i] == fields.json[nameStart + i]) i++;
+                if (i == length) return field;
+            }
+            return -1;
+        }
+
+        /**
+         * Utility function to remember the name of an unknown field of the current object
+         * @return false if the object already had a field of that name
+         */
+        private boolean rememberOtherName(int nameStart, int nameEnd) {
+            int length = nameEnd - nameStart;
+            for (int i = 0; i < otherNameCount; i += 2) {
+                int otherStart = otherNames[i];
+                if (otherNames[i + 1] - otherStart != length) continue;
+                int j = 0;
+                while (j < length && json[otherStart + j] == json[nameStart + j]) j++;
+                if (j == length) return false;
+            }
+            if (otherNameCount == otherNames.length) otherNames = Arrays.copyOf(otherNames, 2 * otherNameCount);
+            otherNames[otherNameCount++] = nameStart;
+            otherNames[otherNameCount++] = nameEnd;
+            return true;
+        }
+
+        private void expect(char expected) {
+            if (peek() != expected) throw syntaxError("Expected " + expected);
+            position++;
+        }
+
+        /**
+         * @return the next byte that isn't whitespace, the reader is positioned on it
+         */
+        private byte peek() {
+            skipWhitespace();
+            if (position >= json.length) throw syntaxError("Unexpected end of input");
+            return json[position];
+        }
+
+        private void skipWhitespace() {
+            while (position < json.length && isWhitespace(json[position])) position++;
+        }
+
+        private JSONException syntaxError(String message) {
+            return new JSONException(message + " at character " + position);
+        }
+
+        private static boolean isWhitespace(byte b) {
+            return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+        }
+
+        /**
+         * Function to jump over a value, nested objects and arrays included, without recursion
+         * @param json
+         * @param start : first byte of the value
+         * @return index right after the value
+         * @throws JSONException if the value is cut short or isn't JSON
+         */
+        static int skipValue(byte[] json, int start) {
+            int position = start;
+            int depth = 0;
+            do {
+                while (position < json.length && isWhitespace(json[position])) position++;
+                if (position >= json.length) throw new JSONException("Unexpected end of input at character " + position);
+                byte b = json[position];
+                if (b == '"') {
+                    position++;
+                    while (position < json.length && json[position] != '"') {
+                        position += json[position] == '\\' ? 2 : 1;
+                    }
+                    if (position >= json.length) throw new JSONException("Unterminated string at character " + start);
+                    position++;
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                    position++;
+                    continue;
+                } else if (b == '}' || b == ']') {
+                    if (depth == 0) throw new JSONException("Unexpected " + (char) b + " at character " + position);
+                    depth--;
+                    position++;
+                } else if (b == ',' || b == ':') {
+                    if (depth == 0) throw new JSONException("Expected a value at character " + position);
+                    position++;
+                    continue;
+                } else {
+                    int literalStart = position;
+                    while (position < json.length && isLiteral(json[position])) position++;
+                    if (position == literalStart || !isLiteralValue(json, literalStart, position)) {
+                        throw new JSONException("Expected a value at character " + literalStart);
+                    }
+                }
+            } while (depth > 0);
+            return position;
+        }
+
+        private static boolean isLiteral(byte b) {
+            return (b >= '0' && b <= '9') || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b == '-' || b == '+' || b == '.';
+        }
+
+        private static boolean isLiteralValue(byte[] json, int start, int end) {
+            byte first = json[start];
+            if (first == '-' || isDigit(first)) return isNumber(json, start, end);
+            return matches(json, start, end, "true") || matches(json, start, end, "false") || matches(json, start, end, "null");
+        }
+
+        /**
+         * Function to check a literal against the JSON number grammar: -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?
+         */
+        private static boolean isNumber(byte[] json, int start, int end) {
+            int position = start;
+            if (json[position] == '-') position++;
+            if (position == end || !isDigit(json[position])) return false;
+            if (json[position++] != '0') {
+                while (position < end && isDigit(json[position])) position++;
+            }
+            if (position < end && json[position] == '.') {
+                int fractionStart = ++position;
+                while (position < end && isDigit(json[position])) position++;
+                if (position == fractionStart) return false;
+            }
+            if (position < end && (json[position] == 'e' || json[position] == 'E')) {
+                position++;
+                if (position < end && (json[position] == '+' || json[position] == '-')) position++;
+                int exponentStart = position;
+                while (position < end && isDigit(json[position])) position++;
+                if (position == exponentStart) return false;
+            }
+            return position == end;
+        }
+
+        private static boolean isDigit(byte b) {
+            return b >= '0' && b <= '9';
+        }
+
+        private static boolean matches(byte[] json, int start, int end, String literal) {
+            if (end - start != literal.length()) return false;
+            for (int i = 0; i < literal.length(); i++) {
+                if (json[start + i] != literal.charAt(i)) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Function to decode a string value, escapes included
+         * @param json
+         * @param start : index of the opening quote
+         * @return the string
+         */
+        static String readString(byte[] json, int start) {
+            int end = skipValue(json, start) - 1;
+            String raw = new String(json, start + 1, end - start - 1, StandardCharsets.UTF_8);
+            if (raw.indexOf('\\') == -1) return raw;
+            StringBuilder decoded = new StringBuilder(raw.length());
+            for (int i = 0; i < raw.length(); i++) {
+                char c = raw.charAt(i);
+                if (c != '\\') {
+                    decoded.append(c);
+                    continue;
+                }
+                char escaped = raw.charAt(++i);
+                switch (escaped) {
+                    case 'b': decoded.append('\b'); break;
+                    case 'f': decoded.append('\f'); break;
+                    case 'n': decoded.append('\n'); break;
+                    case 'r': decoded.append('\r'); break;
+                    case 't': decoded.append('\t'); break;
+                    case 'u':
+                        if (i + 4 >= raw.length()) throw new JSONException("Illegal escape at character " + (start + i));
+                        try {
+                            decoded.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+                        } catch (NumberFormatException nfe) {
+                            throw new JSONException("Illegal escape at character " + (start + i));
+                        }
+                        i += 4;
+                        break;
+                    default: decoded.append(escaped);
+                }
+            }
+            return decoded.toString();
+        }
+    }
+
+    /**
+     * Response body, built in a reused per-thread buffer
+     */
+    static final class Writer {
+        // buffers that grew above this (big batches) aren't kept for the next request
+        private static final int MAX_RETAINED_BYTES = 64 * 1024;
+        private static final int INITIAL_BYTES = 256;
+        private static final ThreadLocal<Writer> WRITERS = ThreadLocal.withInitial(Writer::new);
+
+        private byte[] buffer = new byte[INITIAL_BYTES];
+        private int size;
+        // a value was just written, the next name or array element needs a comma before it
+        private boolean needsComma;
+
+        /**
+         * @return the calling thread's writer, emptied
+         */
+        static Writer get() {
+            Writer writer = WRITERS.get();
+            writer.size = 0;
+            writer.needsComma = false;
+            return writer;
+        }
+
+        Writer beginObject() {
+            separate();
+            append('{');
+            needsComma = false;
+            return this;
+        }
+
+        Writer endObject() {
+            append('}');
+            needsComma = true;
+            return this;
+        }
+
+        Writer beginArray() {
+            separate();
+            append('[');
+            needsComma = false;
+            return this;
+        }
+
+        Writer endArray() {
+            append(']');
+            needsComma = true;
+            return this;
+        }
+
+        /**
+         * @param name : field name, plain ASCII, it isn't escaped
+         */
+        Writer name(String name) {
+            separate();
+            ensureCapacity(name.length() + 3);
+            buffer[size++] = '"';
+            for (int i = 0; i < name.length(); i++) buffer[size++] = (byte) name.charAt(i);
+            buffer[size++] = '"';
+            buffer[size++] = ':';
+            needsComma = false;
+            return this;
+        }
+
+        Writer value(long value) {
+            separate();
+            ensureCapacity(20);
+            if (value == Long.MIN_VALUE) {
+                appendAscii(Long.toString(value));
+            } else {
+                if (value < 0) {
+                    buffer[size++] = '-';
+                    value = -value;
+                }
+                int digits = 1;
+                for (long rest = value / 10; rest > 0; rest /= 10) digits++;
+                for (int i = size + digits - 1; i >= size; i--) {
+                    buffer[i] = (byte) ('0' + value % 10);
+                    value /= 10;
+                }
+                size += digits;
+            }
+            needsComma = true;
+            return this;
+        }
+
+        /**
+         * @param instant : written as a string, the way Instant.toString does
+         */
+        Writer value(Instant instant) {
+            separate();
+            ensureCapacity(32);
+            long epochDay = Math.floorDiv(instant.getEpochSecond(), SECONDS_PER_DAY);
+            int secondOfDay = (int) Math.floorMod(instant.getEpochSecond(), SECONDS_PER_DAY);
+            if (epochDay < MIN_FOUR_DIGIT_DAY || epochDay > MAX_FOUR_DIGIT_DAY) {
+                appendAscii('"' + instant.toString() + '"');
+            } else {
+                buffer[size++] = '"';
+                appendDate(epochDay);
+                buffer[size++] = 'T';
+                appendDigits(secondOfDay / 3600, 2);
+                buffer[size++] = ':';
+                appendDigits(secondOfDay / 60 % 60, 2);
+                buffer[size++] = ':';
+                appendDigits(secondOfDay % 60, 2);
+                int nano = instant.getNano();
+                if (nano != 0) {
+                    buffer[size++] = '.';
+                    if (nano % 1000000 == 0) appendDigits(nano / 1000000, 3);
+                    else if (nano % 1000 == 0) appendDigits(nano / 1000, 6);
+                    else appendDigits(nano, 9);
+                }
+                buffer[size++] = 'Z';
+                buffer[size++] = '"';
+            }
+            needsComma = true;
+            return this;
+        }
+
+        /**
+         * Function to send the body, with status and headers already set on the response
+         * @param response : the response is committed afterwards
+         */
+        void writeTo(HttpServletResponse response) throws IOException {
+            response.setContentType("application/json");
+            response.setContentLength(size);
+            response.getOutputStream().write(buffer, 0, size);
+            if (buffer.length > MAX_RETAINED_BYTES) buffer = new byte[INITIAL_BYTES];
+        }
+
+        /**
+         * @return number of bytes written so far
+         */
+        int size() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return new String(buffer, 0, size, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Function to write a date as yyyy-MM-dd, the inverse of epochDay
+         * @param epochDay : days from 1970-01-01, within years 0000 to 9999
+         */
+        private void appendDate(long epochDay) {
+            long days = epochDay + DAYS_0000_TO_1970;
+            long era = Math.floorDiv(days, DAYS_PER_ERA);
+            long dayOfEra = days - era * DAYS_PER_ERA;
+            long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+            long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            long shiftedMonth = (5 * dayOfYear + 2) / 153;
+            long day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+            long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+            long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+            appendDigits(year, 4);
+            buffer[size++] = '-';
+            appendDigits(month, 2);
+            buffer[size++] = '-';
+            appendDigits(day, 2);
+        }
+
+        private void separate() {
+            if (needsComma) append(',');
+        }
+
+        private void append(char c) {
+            ensureCapacity(1);
+            buffer[size++] = (byte) c;
+        }
+
+        private void appendAscii(String text) {
+            ensureCapacity(text.length());
+            for (int i = 0; i < text.length(); i++) buffer[size++] = (byte) text.charAt(i);
+        }
+
+        private void appendDigits(long value, int digits) {
+            for (int i = size + digits - 1; i >= size; i--) {
+                buffer[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            size += digits;
+        }
+
+        private void ensureCapacity(int more) {
+            if (size + more > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + more));
+            }
+        }
+    }
+
+    /**
+     * Function to parse yyyy-MM-ddTHH:mm[:ss[.fraction]]Z, as Instant.parse does
+     * @param json
+     * @param start : first character of the date, after the opening quote
+     * @return the instant, null if the string has another form (offsets, escapes) or isn't a valid date
+     */
+    static Instant parseInstant(byte[] json, int start) {
+        int year = digits(json, start, 4);
+        if (year < 0 || !at(json, start + 4, '-')) return null;
+        int month = digits(json, start + 5, 2);
+        if (!at(json, start + 7, '-')) return null;
+        int day = digits(json, start + 8, 2);
+        if (!at(json, start + 10, 'T') && !at(json, start + 10, 't')) return null;
+        int hour = digits(json, start + 11, 2);
+        if (!at(json, start + 13, ':')) return null;
+        int minute = digits(json, start + 14, 2);
+        int position = start + 16;
+        int second = 0;
+        int nano = 0;
+        if (at(json, position, ':')) {
+            second = digits(json, position + 1, 2);
+            position += 3;
+            if (at(json, position, '.')) {
+                position++;
+                int fractionDigits = 0;
+                while (position < json.length && json[position] >= '0' && json[position] <= '9') {
+                    if (++fractionDigits > 9) return null;
+                    nano = nano * 10 + (json[position++] - '0');
+                }
+                if (fractionDigits == 0) return null;
+                for (int i = fractionDigits; i < 9; i++) nano *= 10;
+            }
+        }
+        if ((!at(json, position, 'Z') && !at(json, position, 'z')) || !at(json, position + 1, '"')) return null;
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            // Instant.parse reports what is wrong
+            return null;
+        }
+        return Instant.ofEpochSecond(epochDay(year, month, day) * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second, nano);
+    }
+
+    private static boolean at(byte[] json, int index, char c) {
+        return index < json.length && json[index] == c;
+    }
+
+    /**
+     * @return the value of count decimal digits, -1 if one of them isn't a digit
+     */
+    private static int digits(byte[] json, int start, int count) {
+        if (start + count > json.length) return -1;
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            if (json[i] < '0' || json[i] > '9') return -1;
+            value = value * 10 + (json[i] - '0');
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * Function to count the days from 1970-01-01 to a date of the proleptic Gregorian calendar,
+     * counting in 400 year eras that start on March 1st, so the leap day is the last day of a year
+     */
+    static long epochDay(long year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = Math.floorDiv(year, 400);
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * DAYS_PER_ERA + dayOfEra - DAYS_0000_TO_1970;
+    }
+}
@@ -0,0 +1,14 @@
+// AllocationStrategy giving every booking to the projector with the fewest booked minutes in the year,
+// so that bookings are spread evenly over the fleet.
+public class LoadBalancedStrategy implements AllocationStrategy {
+
+    @Override
+    public boolean takesFirstFree() {
+        return false;
+    }
+
+    @Override
+    public long score(ProjectorView projector, int start, int end, int axisLength) {
+        return projector.bookedMinutes();
+    }
+}
@@ -0,0 +1,198 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters, latency histograms and gauges of the service, written out in the Prometheus text format by /metrics.
+// Counters and histograms are LongAdders, so recording never takes a lock and threads on different cores
+// don't contend on the same cache line. Callers look a metric up once, keep it in a field and record into it,
+// the registry map is only read when a metric is created and when it is scraped.
+// Gauges are computed when scraped.
+// -Dmetrics.enabled=false turns recording off, used to measure what it costs (see MetricsOverheadBenchmark).
+public class MetricsRegistry {
+    // Upper bounds of the latency buckets, in seconds
+    private static final double[] LATENCY_BUCKETS = {
+            0.00001, 0.000025, 0.00005, 0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005,
+            0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private static volatile boolean enabled = !"false".equalsIgnoreCase(System.getProperty("metrics.enabled"));
+    private static final MetricsRegistry instance = new MetricsRegistry();
+
+    // families by name, every family's metrics by their labels, both sorted so the output is stable
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * Callback computing the samples of a gauge family when it is scraped
+     */
+    interface Gauge {
+        void collect(GaugeSamples samples);
+    }
+
+    interface GaugeSamples {
+        /**
+         * @param labels : Prometheus labels of the sample, e.g. projector="0", empty for none
+         * @param value
+         */
+        void add(String labels, double value);
+    }
+
+    private static class Family {
+        final String type;
+        final String help;
+        final Map<String, Object> metrics = new ConcurrentSkipListMap<>();
+        volatile Gauge gauge;
+
+        Family(String type, String help) {
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    public static class Counter {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() {
+            if (enabled) count.increment();
+        }
+
+        public long get() {
+            return count.sum();
+        }
+    }
+
+    // Latency histogram, buckets are counted one by one and added up when written
+    public static class Timer {
+        private static final long[] BUCKET_NANOS = new long[LATENCY_BUCKETS.length];
+        static {
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) BUCKET_NANOS[i] = Math.round(LATENCY_BUCKETS[i] * NANOS_PER_SECOND);
+        }
+
+        // the last one counts the durations above every bound
+        private final LongAdder[] buckets = new LongAdder[LATENCY_BUCKETS.length + 1];
+        private final LongAdder sumNanos = new LongAdder();
+
+        Timer() {
+            for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+        }
+
+        /**
+         * @param nanos : duration to record, e.g. System.nanoTime() - start
+         */
+        public void record(long nanos) {
+            if (!enabled) return;
+            int bucket = 0;
+            while (bucket < BUCKET_NANOS.length && nanos > BUCKET_NANOS[bucket]) bucket++;
+            buckets[bucket].increment();
+            sumNanos.add(nanos);
+        }
+
+        /**
+         * @return number of durations recorded
+         */
+        public long count() {
+            long count = 0;
+            for (LongAdder bucket : buckets) count += bucket.sum();
+            return count;
+        }
+    }
+
+    public static MetricsRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param enabled : false to stop recording, metrics keep their values
+     */
+    static void setEnabled(boolean enabled) {
+        MetricsRegistry.enabled = enabled;
+    }
+
+    /**
+     * Function to get a counter, created on first use
+     * @param name : metric name, e.g. http_responses_total
+     * @param help : description, only the first one given for the name is kept
+     * @param labels : Prometheus labels, e.g. route="GET /metrics",status="200", empty for none
+     * @return the counter
+     */
+    public Counter counter(String name, String help, String labels) {
+        return (Counter) family(name, "counter", help).metrics.computeIfAbsent(labels, key -> new Counter());
+    }
+
+    /**
+     * Function to get a latency histogram, in seconds, created on first use
+     * @param name : metric name, e.g. db_call_duration_seconds
+     * @param help : description, only the first one given for the name is kept
+     * @param labels : Prometheus labels, empty for none
+     * @return the timer
+     */
+    public Timer timer(String name, String help, String labels) {
+        return (Timer) family(name, "histogram", help).metrics.computeIfAbsent(labels, key -> new Timer());
+    }
+
+    /**
+     * Function to set the callback of a gauge family, replacing the previous one
+     * @param name : metric name
+     * @param help : description
+     * @param gauge : computes the samples when scraped
+     */
+    public void gauge(String name, String help, Gauge gauge) {
+        family(name, "gauge", help).gauge = gauge;
+    }
+
+    private Family family(String name, String type, String help) {
+        Family family = families.computeIfAbsent(name, key -> new Family(type, help));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException(name + " is a " + family.type + ", not a " + type);
+        }
+        return family;
+    }
+
+    /**
+     * Function to write every metric in the Prometheus text exposition format (version 0.0.4)
+     * @param out
+     */
+    public void write(StringBuilder out) {
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            Gauge gauge = family.gauge;
+            if (gauge != null) {
+                gauge.collect((labels, value) -> sample(out, name, labels, value));
+            }
+            for (Map.Entry<String, Object> metric : family.metrics.entrySet()) {
+                String labels = metric.getKey();
+                if (metric.getValue() instanceof Counter) {
+                    sample(out, name, labels, ((Counter) metric.getValue()).get());
+                } else {
+                    writeTimer(out, name, labels, (Timer) metric.getValue());
+                }
+            }
+        }
+    }
+
+    private static void writeTimer(StringBuilder out, String name, String labels, Timer timer) {
+        String separator = labels.isEmpty() ? "" : ",";
+        long cumulative = 0;
+        for (int i = 0; i < timer.buckets.length; i++) {
+            cumulative += timer.buckets[i].sum();
+            String bound = i < LATENCY_BUCKETS.length ? Double.toString(LATENCY_BUCKETS[i]) : "+Inf";
+            sample(out, name + "_bucket", labels + separator + "le=\"" + bound + "\"", cumulative);
+        }
+        sample(out, name + "_sum", labels, timer.sumNanos.sum() / NANOS_PER_SECOND);
+        sample(out, name + "_count", labels, cumulative);
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+        out.append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+}
@@ -1,12 +1,20 @@
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import static java.net.HttpURLConnection.*;
 import static spark.Spark.*;
-import org.json.*;
+import spark.Route;
+import org.json.JSONException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,7 +23,32 @@ public class ProjectorController {
     // Logging
     private final Logger appLogger = LoggerFactory.getLogger(ProjectorController.class);
 
+    // Alternatives returned by /projector/suggest when the request doesn't say otherwise
+    private static final int DEFAULT_SUGGESTION_COUNT = 5;
+    private static final int MAX_SUGGESTION_COUNT = 100;
+    private static final Duration DEFAULT_SUGGESTION_HORIZON = Duration.ofDays(1);
+    private static final Duration MAX_SUGGESTION_HORIZON = Duration.ofDays(28);
+    // Most bookings accepted by /projector/request/batch at once
+    private static final int MAX_BATCH_SIZE = 1000;
+    // Longest range /projector/availability looks at
+    private static final Duration MAX_AVAILABILITY_RANGE = Duration.ofDays(28);
+
+    // Fields of the request bodies, read with JsonCodec, every route reads the ones it needs
+    private static final byte[][] BODY_FIELDS = JsonCodec.fieldNames("startDateTime", "duration", "recurInterval",
+            "recurEndDateTime", "teamID", "allocationID", "count", "searchHorizon");
+    private static final int START_DATE_TIME = 0;
+    private static final int DURATION = 1;
+    private static final int RECUR_INTERVAL = 2;
+    private static final int RECUR_END_DATE_TIME = 3;
+    private static final int TEAM_ID = 4;
+    private static final int ALLOCATION_ID = 5;
+    private static final int COUNT = 6;
+    private static final int SEARCH_HORIZON = 7;
+
     public ProjectorController(final ProjectorScheduler projectorScheduler) {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        projectorScheduler.registerIndexGauges(metrics);
+        StatusCache statusCache = StatusCache.fromProperties();
 
         before((request, response) -> {
             // TODO: add basic auth
@@ -28,74 +61,175 @@ public class ProjectorController {
             // DataBase.getInstance().close(); // ref. DataBase#connect
         });
 
+        // Every counter, latency histogram and gauge of the service, in the Prometheus text format
+        get("/metrics", timed("GET", "/metrics", (req, res) -> {
+            StringBuilder body = new StringBuilder();
+            metrics.write(body);
+            res.type("text/plain; version=0.0.4; charset=utf-8");
+            res.status(HTTP_OK);
+            return body.toString();
+        }));
+
 
-        get("/projector/status/:id", (req, res) ->{
+        // The schedule is written to the response as it is read from the indexes, one chunk at a time.
+        // Optional parameters: from and to (ISO instants) limit the range, limit caps the number of time slots.
+        // If the limit cuts the schedule short the response has "next", pass it as cursor to get the rest.
+        // The ETag changes with every booking or cancellation of the projector, with If-None-Match the response
+        // is a 304 while it is the same. Responses are cached by projector and query, see StatusCache.
+        get("/projector/status/:id", timed("GET", "/projector/status/:id", (req, res) ->{
             try {
                 int projectorID = Integer.parseInt(req.params(":id"));
-                List<TimeSlot> projectorSchedule = projectorScheduler.getProjectorSchedule(projectorID);
-                if (projectorSchedule != null) {
-                    JSONObject responseJSON = new JSONObject();
-                    JSONArray timeSlotsArray = new JSONArray();
-                    for (TimeSlot timeSlot : projectorSchedule) {
-                        JSONObject timeSlotJSON = new JSONObject();
-                        timeSlotJSON.put("startDate", timeSlot.getStartDateTime().toString());
-                        timeSlotJSON.put("durationInMinutes", timeSlot.getDuration().toMinutes());
-                        timeSlotsArray.put(timeSlotJSON);
-                    }
-                    responseJSON.put("schedule", timeSlotsArray);
-                    res.status(HTTP_OK);
-                    res.body(responseJSON.toString());
-                } else {
+                String cursor = req.queryParams("cursor");
+                String from = cursor != null ? cursor : req.queryParams("from");
+                String to = req.queryParams("to");
+                String limitParam = req.queryParams("limit");
+                int limit = limitParam != null ? Integer.parseInt(limitParam) : Integer.MAX_VALUE;
+                if (projectorID < 0 || projectorID >= projectorScheduler.getProjectorCount() || limit <= 0) {
                     res.status(HTTP_BAD_REQUEST);
+                    return "";
                 }
-            } catch (JSONException je) {
-                appLogger.error("HTTP_BAD_REQUEST: JSONException " + je.getMessage());
+                Instant fromInstant = from != null ? Instant.parse(from) : null;
+                Instant toInstant = to != null ? Instant.parse(to) : null;
+
+                long version = projectorScheduler.getScheduleVersion(projectorID);
+                String etag = statusCache.etag(projectorID, version);
+                res.header("ETag", etag);
+                if (statusCache.notModified(req.headers("If-None-Match"), etag)) {
+                    res.status(HTTP_NOT_MODIFIED);
+                    return "";
+                }
+                res.status(HTTP_OK);
+                res.type("application/json");
+                String cacheKey = projectorID + "?" + req.queryString();
+                byte[] cached = statusCache.get(cacheKey, version);
+                if (cached != null) {
+                    res.raw().setContentLength(cached.length);
+                    res.raw().getOutputStream().write(cached);
+                    return "";
+                }
+                StatusCache.CapturingOutputStream body = statusCache.capture(res.raw().getOutputStream());
+                Writer writer = new BufferedWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8));
+                writer.write("{\"schedule\":[");
+                boolean[] first = {true};
+                Instant next = projectorScheduler.writeProjectorSchedule(projectorID, fromInstant, toInstant, limit,
+                        (start, duration) -> {
+                            if (!first[0]) writer.write(',');
+                            first[0] = false;
+                            writer.write("{\"startDate\":\"" + start + "\",\"durationInMinutes\":" + duration.toMinutes() + "}");
+                        });
+                writer.write(']');
+                if (next != null) writer.write(",\"next\":\"" + next + "\"");
+                writer.write('}');
+                writer.flush();
+                // a booking or cancellation in the meantime may or may not be in the response
+                if (projectorScheduler.getScheduleVersion(projectorID) == version) statusCache.put(cacheKey, version, body);
+            } catch (NumberFormatException nfe) {
+                appLogger.error("HTTP_BAD_REQUEST: NumberFormatException " + nfe.getMessage());
+                res.status(HTTP_BAD_REQUEST);
+            } catch (DateTimeParseException dtpe) {
+                appLogger.error("HTTP_BAD_REQUEST: DateTimeParseException " + dtpe.getMessage());
                 res.status(HTTP_BAD_REQUEST);
             }
             return "";
-        });
+        }));
+
+        // Free windows of the whole fleet, in one pass over the indexes instead of one status call per projector.
+        // from and to (ISO instants) are required, minDuration (milliseconds) drops gaps shorter than it.
+        get("/projector/availability", timed("GET", "/projector/availability", (req, res) ->{
+            try {
+                String from = req.queryParams("from");
+                String to = req.queryParams("to");
+                String minDurationParam = req.queryParams("minDuration");
+                if (from == null || to == null) {
+                    res.status(HTTP_BAD_REQUEST);
+                    return "";
+                }
+                Instant fromInstant = Instant.parse(from);
+                Instant toInstant = Instant.parse(to);
+                long minDuration = minDurationParam != null ? Long.parseLong(minDurationParam) : 0;
+                if (!fromInstant.isBefore(toInstant) || minDuration < 0
+                        || Duration.between(fromInstant, toInstant).compareTo(MAX_AVAILABILITY_RANGE) > 0) {
+                    res.status(HTTP_BAD_REQUEST);
+                    return "";
+                }
+                List<ProjectorScheduler.FreeWindow> windows = projectorScheduler.getFreeWindows(fromInstant, toInstant,
+                        Duration.ofMillis(minDuration));
+                JsonCodec.Writer writer = JsonCodec.Writer.get().beginObject().name("windows").beginArray();
+                for (ProjectorScheduler.FreeWindow window : windows) {
+                    writer.beginObject()
+                            .name("startDateTime").value(window.getStart())
+                            .name("endDateTime").value(window.getEnd())
+                            .name("projectorIDs").beginArray();
+                    BitSet projectorIDs = window.getProjectorIDs();
+                    for (int id = projectorIDs.nextSetBit(0); id >= 0; id = projectorIDs.nextSetBit(id + 1)) {
+                        writer.value(id);
+                    }
+                    writer.endArray().endObject();
+                }
+                res.status(HTTP_OK);
+                writer.endArray().endObject().writeTo(res.raw());
+            } catch (NumberFormatException nfe) {
+                appLogger.error("HTTP_BAD_REQUEST: NumberFormatException " + nfe.getMessage());
+                res.status(HTTP_BAD_REQUEST);
+            } catch (DateTimeParseException dtpe) {
+                appLogger.error("HTTP_BAD_REQUEST: DateTimeParseException " + dtpe.getMessage());
+                res.status(HTTP_BAD_REQUEST);
+            }
+            return "";
+        }));
 
-        post("/projector/request", (req, res) ->{
+        post("/projector/request", timed("POST", "/projector/request", (req, res) ->{
             if (req.contentLength() ==  0 || !req.contentType().equals("application/json") ){
                 res.status(HTTP_BAD_REQUEST);
             } else {
                 try {
-                    JSONObject requestJSON = new JSONObject(req.body());
-                    String startDateTime = requestJSON.getString("startDateTime");
-                    long duration = requestJSON.getLong("duration");
-                    long recurInterval = requestJSON.getLong("recurInterval");
-                    long teamID = requestJSON.getLong("teamID");
-                    String recurEndDateTime = startDateTime;
-                    if (recurInterval != 0) {
-                        recurEndDateTime = requestJSON.getString("recurEndDateTime");
-                    }
-                    TimeSlot requestedTimeSlot = new TimeSlot(Instant.parse(startDateTime),
-                            Duration.ofMillis(duration),
-                            Duration.ofMillis(recurInterval),
-                            Instant.parse(recurEndDateTime),
-                            teamID);
-
+                    TimeSlot requestedTimeSlot = readTimeSlotRequest(readBody(req.bodyAsBytes()));
                     AllocatedTimeSlot allocatedTimeSlot = projectorScheduler.requestProjector(requestedTimeSlot);
+                    res.status(HTTP_OK);
+                    writeAllocation(JsonCodec.Writer.get(), allocatedTimeSlot).writeTo(res.raw());
+                } catch (SQLException sqle) {
+                    appLogger.error("HTTP_INTERNAL_ERROR: SQLException " + sqle.getMessage());
+                    res.status(HTTP_INTERNAL_ERROR);
+                } catch (JSONException je) {
+                    appLogger.error("HTTP_BAD_REQUEST: JSONException " + je.getMessage());
+                    res.status(HTTP_BAD_REQUEST);
+                } catch (DateTimeParseException dtpe){
+                    appLogger.error("HTTP_BAD_REQUEST: DateTimeParseException " + dtpe.getMessage());
+                    res.status(HTTP_BAD_REQUEST);
+                }
+            }
+            return "";
+        }));
 
-                    if (allocatedTimeSlot != null) {
-                        JSONObject responseJSON = new JSONObject();
-                        if (allocatedTimeSlot.getAllocatedID() == -1) {
-                            if(allocatedTimeSlot.getRecurInterval().equals(Duration.ZERO)) {
-                                responseJSON.put("nextAvailableStartTime", allocatedTimeSlot.getStartDateTime().toString());
-                                res.status(HTTP_OK);
-                            }
-                        } else {
-                            res.status(HTTP_OK);
-                            responseJSON.put("projectorID", allocatedTimeSlot.getProjectorID());
+        // Many bookings in one request, placed together and committed in one transaction.
+        // The body is a JSON array of /projector/request bodies, the response has one result per element, in order.
+        // With ?tightestFirst=true the requests that book the most minutes are placed first.
+        post("/projector/request/batch", timed("POST", "/projector/request/batch", (req, res) ->{
+            if (req.contentLength() ==  0 || !req.contentType().equals("application/json") ){
+                res.status(HTTP_BAD_REQUEST);
+            } else {
+                try {
+                    JsonCodec.Reader reader = new JsonCodec.Reader(req.bodyAsBytes());
+                    JsonCodec.Fields fields = new JsonCodec.Fields(BODY_FIELDS);
+                    List<TimeSlot> requestedTimeSlots = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNextElement()) {
+                        if (requestedTimeSlots.size() == MAX_BATCH_SIZE) {
+                            res.status(HTTP_BAD_REQUEST);
+                            return "";
                         }
-                        responseJSON.put("allocatedID", allocatedTimeSlot.getAllocatedID());
-                        res.body(responseJSON.toString());
-                    } else {
-                        JSONObject responseJSON = new JSONObject();
-                        responseJSON.put("allocatedID", -1);
-                        res.status(HTTP_OK);
-                        res.body(responseJSON.toString());
+                        requestedTimeSlots.add(readTimeSlotRequest(reader.readObject(fields)));
                     }
+                    reader.end();
+                    boolean tightestFirst = Boolean.parseBoolean(req.queryParams("tightestFirst"));
+                    List<AllocatedTimeSlot> allocatedTimeSlots =
+                            projectorScheduler.requestProjectors(requestedTimeSlots, tightestFirst);
+                    JsonCodec.Writer writer = JsonCodec.Writer.get().beginObject().name("results").beginArray();
+                    for (AllocatedTimeSlot allocatedTimeSlot : allocatedTimeSlots) {
+                        writeAllocation(writer, allocatedTimeSlot);
+                    }
+                    res.status(HTTP_OK);
+                    writer.endArray().endObject().writeTo(res.raw());
                 } catch (SQLException sqle) {
                     appLogger.error("HTTP_INTERNAL_ERROR: SQLException " + sqle.getMessage());
                     res.status(HTTP_INTERNAL_ERROR);
@@ -108,12 +242,53 @@ public class ProjectorController {
                 }
             }
             return "";
-        });
+        }));
+
+        post("/projector/suggest", timed("POST", "/projector/suggest", (req, res) ->{
+            if (req.contentLength() ==  0 || !req.contentType().equals("application/json") ){
+                res.status(HTTP_BAD_REQUEST);
+            } else {
+                try {
+                    JsonCodec.Fields fields = readBody(req.bodyAsBytes());
+                    Instant startDateTime = fields.getInstant(START_DATE_TIME);
+                    long duration = fields.getLong(DURATION);
+                    long count = fields.optLong(COUNT, DEFAULT_SUGGESTION_COUNT);
+                    long searchHorizon = fields.optLong(SEARCH_HORIZON, DEFAULT_SUGGESTION_HORIZON.toMillis());
+                    if (duration < 0 || count <= 0 || count > MAX_SUGGESTION_COUNT
+                            || searchHorizon <= 0 || searchHorizon > MAX_SUGGESTION_HORIZON.toMillis()) {
+                        res.status(HTTP_BAD_REQUEST);
+                        return "";
+                    }
+                    TimeSlot requestedTimeSlot = new TimeSlot(startDateTime,
+                            Duration.ofMillis(duration),
+                            Duration.ZERO,
+                            startDateTime);
 
-        delete("/projector/delete", (req, res) -> {
-            JSONObject requestJSON = new JSONObject(req.body());
-            long allocationID = requestJSON.getLong("allocationID");
+                    List<AllocatedTimeSlot> suggestions = projectorScheduler.getAlternativeTimeSlots(requestedTimeSlot,
+                            (int) count, Duration.ofMillis(searchHorizon));
+                    JsonCodec.Writer writer = JsonCodec.Writer.get().beginObject().name("suggestions").beginArray();
+                    for (AllocatedTimeSlot suggestion : suggestions) {
+                        writer.beginObject()
+                                .name("projectorID").value(suggestion.getProjectorID())
+                                .name("startDateTime").value(suggestion.getStartDateTime())
+                                .endObject();
+                    }
+                    res.status(HTTP_OK);
+                    writer.endArray().endObject().writeTo(res.raw());
+                } catch (JSONException je) {
+                    appLogger.error("HTTP_BAD_REQUEST: JSONException " + je.getMessage());
+                    res.status(HTTP_BAD_REQUEST);
+                } catch (DateTimeParseException dtpe){
+                    appLogger.error("HTTP_BAD_REQUEST: DateTimeParseException " + dtpe.getMessage());
+                    res.status(HTTP_BAD_REQUEST);
+                }
+            }
+            return "";
+        }));
+
+        delete("/projector/delete", timed("DELETE", "/projector/delete", (req, res) -> {
             try {
+                long allocationID = readBody(req.bodyAsBytes()).getLong(ALLOCATION_ID);
                 if (projectorScheduler.deleteProjector(allocationID))
                     res.status(HTTP_OK);
                 else
@@ -126,45 +301,39 @@ public class ProjectorController {
                 res.status(HTTP_BAD_REQUEST);
             }
             return "";
-        });
+        }));
 
-        put("/projector/update", (req, res) -> {
+        put("/projector/update", timed("PUT", "/projector/update", (req, res) -> {
             if (req.contentLength() ==  0 || !req.contentType().equals("application/json") ){
                 res.status(HTTP_BAD_REQUEST);
             } else {
                 try {
-                    JSONObject requestJSON = new JSONObject(req.body());
-                    long allocationID = requestJSON.getLong("allocationID");
-                    String startDateTime = requestJSON.getString("startDateTime");
-                    long duration = requestJSON.getLong("duration");
-                    long recurInterval = requestJSON.getLong("recurInterval");
-                    String recurEndDateTime = startDateTime;
+                    JsonCodec.Fields fields = readBody(req.bodyAsBytes());
+                    long allocationID = fields.getLong(ALLOCATION_ID);
+                    Instant startDateTime = fields.getInstant(START_DATE_TIME);
+                    long duration = fields.getLong(DURATION);
+                    long recurInterval = fields.getLong(RECUR_INTERVAL);
+                    Instant recurEndDateTime = startDateTime;
                     if (recurInterval != 0) {
-                        recurEndDateTime = requestJSON.getString("recurEndDateTime");
+                        recurEndDateTime = fields.getInstant(RECUR_END_DATE_TIME);
                     }
-                    TimeSlot timeSlotToUpdate = new TimeSlot(Instant.parse(startDateTime),
+                    TimeSlot timeSlotToUpdate = new TimeSlot(startDateTime,
                             Duration.ofMillis(duration),
                             Duration.ofMillis(recurInterval),
-                            Instant.parse(recurEndDateTime));
+                            recurEndDateTime);
 
                     AllocatedTimeSlot updatedTimeSlot = projectorScheduler.updateProjector(allocationID, timeSlotToUpdate);
-                    if (updatedTimeSlot != null) {
-                        JSONObject responseJSON = new JSONObject();
-                        if (updatedTimeSlot.getAllocatedID() == -1) {
-                            responseJSON.put("nextAvailableStartTime", updatedTimeSlot.getStartDateTime().toString());
-                            res.status(HTTP_OK);
-                        } else {
-                            res.status(HTTP_OK);
-                            responseJSON.put("projectorID", updatedTimeSlot.getProjectorID());
-                            responseJSON.put("allocatedID", updatedTimeSlot.getAllocatedID());
-                        }
-                        res.body(responseJSON.toString());
+                    JsonCodec.Writer writer = JsonCodec.Writer.get().beginObject();
+                    if (updatedTimeSlot == null) {
+                        writer.name("allocatedID").value(-1);
+                    } else if (updatedTimeSlot.getAllocatedID() == -1) {
+                        writer.name("nextAvailableStartTime").value(updatedTimeSlot.getStartDateTime());
                     } else {
-                        JSONObject responseJSON = new JSONObject();
-                        responseJSON.put("allocatedID", -1);
-                        res.status(HTTP_OK);
-                        res.body(responseJSON.toString());
+                        writer.name("projectorID").value(updatedTimeSlot.getProjectorID())
+                                .name("allocatedID").value(updatedTimeSlot.getAllocatedID());
                     }
+                    res.status(HTTP_OK);
+                    writer.endObject().writeTo(res.raw());
                 } catch (SQLException sqle) {
                     appLogger.error("HTTP_INTERNAL_ERROR: SQLException " + sqle.getMessage());
                     res.status(HTTP_INTERNAL_ERROR);
@@ -177,6 +346,124 @@ public class ProjectorController {
                 }
             }
             return "";
-        });
+        }));
+    }
+
+    /**
+     * Function to wrap a route so that its latency and response codes are recorded in the metrics registry,
+     * that it emits a JFR HttpRequest event, and that it is checked by the slow request recorder
+     * @param method : HTTP method, used as label only
+     * @param path : route path, used as label only
+     * @param route
+     * @return the wrapped route
+     */
+    private static Route timed(String method, String path, Route route) {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        String routeLabel = "route=\"" + method + " " + path + "\"";
+        MetricsRegistry.Timer timer = metrics.timer("http_request_duration_seconds",
+                "Time spent handling a request, streaming the response included", routeLabel);
+        // counters by status code, looked up the first time the route answers with a status
+        AtomicReferenceArray<MetricsRegistry.Counter> responses = new AtomicReferenceArray<>(600);
+        SlowRequestRecorder slowRequests = SlowRequestRecorder.getInstance();
+        String routeName = method + " " + path;
+        return (req, res) -> {
+            long startNanos = System.nanoTime();
+            SchedulerEvents.HttpRequest event = new SchedulerEvents.HttpRequest();
+            event.begin();
+            boolean handled = false;
+            try {
+                Object body = route.handle(req, res);
+                handled = true;
+                return body;
+            } finally {
+                long nanos = System.nanoTime() - startNanos;
+                // Spark answers 500 for what the route throws, the response doesn't say so yet
+                int status = handled ? res.raw().getStatus() : HTTP_INTERNAL_ERROR;
+                timer.record(nanos);
+                responsesCounter(metrics, responses, routeLabel, status).increment();
+                if (event.shouldCommit()) {
+                    event.route = routeName;
+                    event.status = status;
+                    event.commit();
+                }
+                if (slowRequests != null) slowRequests.observe(routeName, nanos);
+            }
+        };
+    }
+
+    /**
+     * Function to find the response counter of a route for a status code, registering it the first time
+     * @param metrics
+     * @param responses : the route's counters by status code
+     * @param routeLabel
+     * @param status
+     * @return the counter
+     */
+    private static MetricsRegistry.Counter responsesCounter(MetricsRegistry metrics,
+            AtomicReferenceArray<MetricsRegistry.Counter> responses, String routeLabel, int status) {
+        boolean cached = status >= 0 && status < responses.length();
+        MetricsRegistry.Counter counter = cached ? responses.get(status) : null;
+        if (counter == null) {
+            // the registry hands out the same counter for the same labels, a race only looks it up twice
+            counter = metrics.counter("http_responses_total", "Responses sent, by route and status code",
+                    routeLabel + ",status=\"" + status + "\"");
+            if (cached) responses.set(status, counter);
+        }
+        return counter;
+    }
+
+    /**
+     * Function to read a request body holding a single JSON object
+     * @param body : request bytes
+     * @return the fields of the object
+     * @throws JSONException if the body isn't one JSON object
+     */
+    static JsonCodec.Fields readBody(byte[] body) {
+        JsonCodec.Reader reader = new JsonCodec.Reader(body);
+        JsonCodec.Fields fields = reader.readObject(new JsonCodec.Fields(BODY_FIELDS));
+        reader.end();
+        return fields;
+    }
+
+    /**
+     * Function to read the body of a booking request
+     * @param fields : the body, see readBody
+     * @return the requested time slot
+     */
+    static TimeSlot readTimeSlotRequest(JsonCodec.Fields fields) {
+        Instant startDateTime = fields.getInstant(START_DATE_TIME);
+        long duration = fields.getLong(DURATION);
+        long recurInterval = fields.getLong(RECUR_INTERVAL);
+        long teamID = fields.getLong(TEAM_ID);
+        Instant recurEndDateTime = startDateTime;
+        if (recurInterval != 0) {
+            recurEndDateTime = fields.getInstant(RECUR_END_DATE_TIME);
+        }
+        return new TimeSlot(startDateTime,
+                Duration.ofMillis(duration),
+                Duration.ofMillis(recurInterval),
+                recurEndDateTime,
+                teamID);
+    }
+
+    /**
+     * Function to write the response to a booking request
+     * @param writer
+     * @param allocatedTimeSlot : the allocation, or the suggested start time if allocatedID is -1, null if neither
+     * @return writer, with an object with projectorID and allocatedID, or nextAvailableStartTime and allocatedID -1
+     */
+    static JsonCodec.Writer writeAllocation(JsonCodec.Writer writer, AllocatedTimeSlot allocatedTimeSlot) {
+        writer.beginObject();
+        if (allocatedTimeSlot == null) {
+            return writer.name("allocatedID").value(-1).endObject();
+        }
+        if (allocatedTimeSlot.getAllocatedID() == -1) {
+            if (allocatedTimeSlot.getRecurInterval().equals(Duration.ZERO)) {
+                writer.name("nextAvailableStartTime").value(allocatedTimeSlot.getStartDateTime());
+            }
+        } else {
+            writer.name("projectorID").value(allocatedTimeSlot.getProjectorID());
+        }
+        return writer.name("allocatedID").value(allocatedTimeSlot.getAllocatedID()).endObject();
     }
 }
@@ -1,13 +1,26 @@
-import com.google.common.collect.Range;
-import com.google.common.collect.RangeSet;
-import com.google.common.collect.TreeRangeSet;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.*;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,11 +29,44 @@ import static java.time.temporal.TemporalAdjusters.firstDayOfYear;
 public class ProjectorScheduler {
     private static final int MINUTES_IN_A_YEAR = 525600 /*minutes*/;
     private static final int SUGGESTION_PERIOD_MINS = 120 /*minutes*/;
-    private static final int PROJECTOR_COUNT = 3;
+    // Fleet of schedulers that don't load it from the projectors table (tests and benchmarks)
+    private static final int DEFAULT_PROJECTOR_COUNT = 3;
+    private static final IntervalIndex.Type DEFAULT_INDEX_TYPE = IntervalIndex.Type.SORTED_ARRAY;
+    private static final AllocationStrategy.Type DEFAULT_ALLOCATION_TYPE = AllocationStrategy.Type.FIRST_FIT;
+    // Recurring meetings are checked on several projectors in parallel once occurrences * projectors reaches this
+    private static final int DEFAULT_RECURRING_PARALLEL_THRESHOLD = 4096;
+    // Parallel checks look for cancellation every 64 occurrences
+    private static final int CANCELLATION_CHECK_MASK = 63;
+    private static final ForkJoinPool FEASIBILITY_POOL = new ForkJoinPool(
+            Integer.getInteger("scheduler.parallelism", Runtime.getRuntime().availableProcessors()));
+    private static final long DEFAULT_SNAPSHOT_INTERVAL_SECONDS = 300;
+    // Rows asked from the driver at a time while loading, and how often loading progress is logged
+    private static final int LOAD_FETCH_SIZE = 1000;
+    private static final int LOAD_PROGRESS_ROWS = 100000;
+    // Booked blocks copied out per projector lock by writeProjectorSchedule
+    private static final int STATUS_CHUNK_BLOCKS = 256;
+    // Time spent in every phase of a request, see MetricsRegistry
+    private static final MetricsRegistry.Timer CONFLICT_CHECK_TIMER = phaseTimer("conflict_check");
+    private static final MetricsRegistry.Timer RECURRING_CONFLICT_CHECK_TIMER = phaseTimer("recurring_conflict_check");
+    private static final MetricsRegistry.Timer RECURRING_EXPANSION_TIMER = phaseTimer("recurring_expansion");
+    private static final MetricsRegistry.Timer SUGGESTION_SEARCH_TIMER = phaseTimer("suggestion_search");
+    private static final MetricsRegistry.Timer DB_WRITE_TIMER = phaseTimer("db_write");
+    // Bookings of the current year, loaded at startup.
+    // A recurring meeting starting before this year has no occurrences in it (see getRecurringSeries),
+    // so the same year bounds apply to both kinds of bookings
+    static final String LOAD_QUERY = "SELECT allocations.id AS allocation_id, projector_id, time_slot_id, team_id," +
+            " start, duration, recur_every, end" +
+            " FROM allocations JOIN time_slots ON time_slots.id = allocations.time_slot_id" +
+            " WHERE time_slots.start >= ? AND time_slots.start <= ?";
+    // A single booking by allocation id
+    static final String ALLOCATION_QUERY = "SELECT * from time_slots, allocations " +
+            " WHERE allocations.id = ?" +
+            " AND time_slots.id = allocations.time_slot_id";
+    static final String DELETE_ALLOCATION = "DELETE FROM allocations WHERE id = ? AND projector_id = ? AND time_slot_id = ?";
     private static ProjectorScheduler instance = null;
 
     // Logging
-    private final Logger appLogger = LoggerFactory.getLogger(ProjectorScheduler.class);
+    private static final Logger appLogger = LoggerFactory.getLogger(ProjectorScheduler.class);
 
     // The time slots for projector allocation can be thought of as intervals on the time-axis,
     // the key operation we are needed to do on these intervals is to check if two intervals overlap or not (meetings at the same time)
@@ -29,24 +75,447 @@ public class ProjectorScheduler {
     // An interval tree is the best data structure to perform these operations efficiently.
     // For now we are considering a time-axis about the size of 1 year, and the points on this axis are all 1-minute apart
     // This results in an axis of 525600(minutes in a year) data points. The range of time-axis is [0, 525600)
-    // We maintain a list of Interval Trees(RangeSet), one Interval tree for each available projector.
+    // We maintain a list of interval indexes, one for each available projector.
+    // The index implementation is pluggable (see IntervalIndex.Type), the default keeps the intervals in sorted
+    // primitive arrays so that overlap checks, inserts and removes don't box minutes or allocate Range objects.
     // Assume a projector allocation to start at July 3rd 2017 at 1:00PM, the duration of this allocation is 1 hour
     // The interval on the time axis for this allocation would look something like this [263820, 263880)
     // where, 263820 = July 3rd 1:00PM and 263880 = July 3rd 2:00PM
-    List<RangeSet<Integer>> projectorAvailableTimeSlots = new ArrayList<>();
+    List<IntervalIndex> projectorAvailableTimeSlots = new ArrayList<>();
+    // Recurring meetings are not expanded into the interval indexes, every recurring meeting is kept as a single
+    // arithmetic progression (start, duration, interval, count) in the projector's series index.
+    List<SeriesIndex> projectorRecurringSeries = new ArrayList<>();
+    private final IntervalIndex.Type indexType;
+    // The fleet is read from the projectors table at startup, projector id i is the row with id i + 1
+    private final int projectorCount;
+    // Tree over the one time bookings of the whole fleet, so looking for a free projector can skip
+    // groups of projectors that are all booked, see FleetIndex. Every change to projectorAvailableTimeSlots
+    // goes through it, or is followed by rebuildFleetSummaries() when the indexes are filled in bulk.
+    final FleetIndex fleetIndex;
+    private boolean fleetIndexEnabled = true;
+    // Number of projectors booked at every minute, one time and recurring bookings alike, see CapacityIndex.
+    // Kept up to date with the indexes the same way as the fleet index.
+    final CapacityIndex capacityIndex = new CapacityIndex(MINUTES_IN_A_YEAR);
+    // Booked minutes of every projector within the year, one time and recurring bookings alike,
+    // kept up to date together with the capacity index. Read by the load balanced allocation strategy.
+    private final AtomicLongArray bookedMinutes;
+    // Version of every projector's schedule, incremented after every change to its indexes, under its write lock.
+    // Lets readers tell that a schedule they have seen is still current without reading it, see StatusCache.
+    private final AtomicLongArray scheduleVersions;
+    // Picks among the projectors that are free for a booking, see AllocationStrategy
+    private volatile AllocationStrategy allocationStrategy = AllocationStrategy.create(
+            AllocationStrategy.Type.fromProperty(System.getProperty("scheduler.allocation"), DEFAULT_ALLOCATION_TYPE));
+    // Concurrency model:
+    // - every projector has its own read/write lock, readers of a projector run in parallel,
+    //   a writer only blocks the projector it books or frees
+    // - writers pick a projector without holding any write lock and validate it again under the projector's
+    //   write lock before committing (optimistic allocation)
+    // - the fleet lock is held shared by every request, and exclusively by updates so that an update's
+    //   delete and re-reservation happen atomically
+    // - locks are always taken in the order: fleet lock, projector locks by ascending id, data base lock
+    private final ReentrantReadWriteLock fleetLock = new ReentrantReadWriteLock();
+    private final List<ReentrantReadWriteLock> projectorLocks = new ArrayList<>();
+    // SQLite takes one writer at a time, queueing writers here hands the write lock over without
+    // the busy handler's sleep and retry. Reads don't take this lock, and neither do writes in write-behind mode,
+    // where the journal's applier is the only writer.
+    private final ReentrantLock dataBaseLock = new ReentrantLock();
+    private int recurringParallelThreshold =
+            Integer.getInteger("scheduler.parallelThreshold", DEFAULT_RECURRING_PARALLEL_THRESHOLD);
+    // In pipeline mode (-Dscheduler.mode=pipeline) requests, updates and deletes are applied by a single
+    // scheduler thread and committed in batches, see SchedulerCommandPipeline. null in direct mode.
+    private volatile SchedulerCommandPipeline pipeline = null;
+    // In write-behind mode (-Dscheduler.persistence=write-behind) bookings and deletes are journaled and reach the
+    // data base asynchronously, see WriteBehindJournal. null when every change is written to the data base directly.
+    private volatile WriteBehindJournal writeBehindJournal = null;
 
-    public static ProjectorScheduler getInstance() {
+    public static synchronized ProjectorScheduler getInstance() {
         if(instance == null) {
-            instance = new ProjectorScheduler();
+            WriteBehindJournal journal = null;
+            if ("write-behind".equalsIgnoreCase(System.getProperty("scheduler.persistence"))) {
+                // replaying the journal first, the schedule is then loaded from an up to date data base
+                try {
+                    journal = new WriteBehindJournal(Paths.get(System.getProperty("scheduler.journal", "scheduler.journal")));
+                } catch (IOException | SQLException e) {
+                    throw new IllegalStateException("Write-behind journal could not be opened", e);
+                }
+            }
+            Integer seededProjectors = Integer.getInteger("scheduler.projectors");
+            if (seededProjectors != null) seedProjectors(seededProjectors);
+            String snapshotPath = System.getProperty("scheduler.snapshot");
+            instance = new ProjectorScheduler(
+                    IntervalIndex.Type.fromProperty(System.getProperty("scheduler.index"), DEFAULT_INDEX_TYPE),
+                    loadProjectorCount(), snapshotPath == null);
+            if (snapshotPath != null) {
+                instance.startSnapshots(new SchedulerSnapshot(Paths.get(snapshotPath)),
+                        Long.getLong("scheduler.snapshotIntervalSeconds", DEFAULT_SNAPSHOT_INTERVAL_SECONDS));
+            }
+            instance.setWriteBehindJournal(journal);
+            if ("pipeline".equalsIgnoreCase(System.getProperty("scheduler.mode"))) {
+                instance.startPipeline();
+            }
         }
         return instance;
     }
 
-    private ProjectorScheduler() {
-        for(int i = 0; i < PROJECTOR_COUNT; i++){
-            projectorAvailableTimeSlots.add(TreeRangeSet.create());
+    /**
+     * @param indexType : interval index implementation used for every projector
+     * @param loadFromDataBase : false to start with an empty schedule and the default fleet of three projectors
+     *                         (used by tests and benchmarks), true to load both from the data base
+     */
+    ProjectorScheduler(IntervalIndex.Type indexType, boolean loadFromDataBase) {
+        this(indexType, loadFromDataBase ? loadProjectorCount() : DEFAULT_PROJECTOR_COUNT, loadFromDataBase);
+    }
+
+    /**
+     * @param indexType : interval index implementation used for every projector
+     * @param projectorCount : number of projectors in the fleet
+     * @param loadFromDataBase : false to start with an empty schedule (used by tests and benchmarks)
+     */
+    ProjectorScheduler(IntervalIndex.Type indexType, int projectorCount, boolean loadFromDataBase) {
+        appLogger.info("Using " + indexType + " interval index for " + projectorCount + " projectors");
+        this.indexType = indexType;
+        this.projectorCount = projectorCount;
+        this.bookedMinutes = new AtomicLongArray(projectorCount);
+        this.scheduleVersions = new AtomicLongArray(projectorCount);
+        for(int i = 0; i < projectorCount; i++){
+            projectorAvailableTimeSlots.add(IntervalIndex.create(indexType, MINUTES_IN_A_YEAR));
+            projectorRecurringSeries.add(new SeriesIndex());
+            projectorLocks.add(new ReentrantReadWriteLock());
+        }
+        fleetIndex = new FleetIndex(projectorAvailableTimeSlots);
+        if (loadFromDataBase) loadData();
+    }
+
+    /**
+     * Function to read the size of the fleet from the projectors table
+     * Projector ids are expected to run from 1 without gaps, the highest id decides the size.
+     * @return number of projectors, the default fleet if the table can't be read
+     */
+    static int loadProjectorCount() {
+        try {
+            DataBase dataBase = DataBase.getInstance();
+            int rows = dataBase.query("SELECT count(*) AS n FROM projectors", queryResult -> queryResult.getInt("n"));
+            int highestID = dataBase.query("SELECT coalesce(max(id), 0) AS max_id FROM projectors",
+                    queryResult -> queryResult.getInt("max_id"));
+            if (rows != highestID) {
+                appLogger.warn("Projector ids have gaps, " + rows + " projectors with ids up to " + highestID);
+            }
+            return highestID;
+        } catch (SQLException sqle) {
+            appLogger.error("Projectors could not be read, using " + DEFAULT_PROJECTOR_COUNT + ": " + sqle.getMessage());
+            return DEFAULT_PROJECTOR_COUNT;
+        }
+    }
+
+    /**
+     * Function to add the missing rows to the projectors table, so that it has projectors 1 to count
+     * Used with -Dscheduler.projectors=count to grow the fleet, existing projectors are left alone.
+     * @param count
+     */
+    static void seedProjectors(int count) {
+        try {
+            DataBase dataBase = DataBase.getInstance();
+            dataBase.inTransaction(() -> {
+                for (int id = 1; id <= count; id++) {
+                    dataBase.update("INSERT OR IGNORE INTO projectors VALUES (?, ?)", id, "Projector " + id);
+                }
+                return null;
+            });
+        } catch (SQLException sqle) {
+            appLogger.error("Projectors could not be added: " + sqle.getMessage());
+        }
+    }
+
+    /**
+     * @return number of projectors, their ids are 0 to getProjectorCount() - 1
+     */
+    int getProjectorCount() {
+        return projectorCount;
+    }
+
+    private static MetricsRegistry.Timer phaseTimer(String phase) {
+        return MetricsRegistry.getInstance().timer("scheduler_phase_duration_seconds",
+                "Time spent in every phase of scheduling, locks included", "phase=\"" + phase + "\"");
+    }
+
+    /**
+     * Function to publish the size of every projector's indexes as gauges, read when scraped
+     * @param metrics
+     */
+    void registerIndexGauges(MetricsRegistry metrics) {
+        metrics.gauge("scheduler_index_ranges", "Disjoint one time booked intervals of a projector",
+                samples -> forEachProjectorLocked(i -> samples.add(projectorLabel(i), projectorAvailableTimeSlots.get(i).rangeCount())));
+        metrics.gauge("scheduler_index_series", "Recurring bookings of a projector",
+                samples -> forEachProjectorLocked(i -> samples.add(projectorLabel(i), projectorRecurringSeries.get(i).size())));
+        metrics.gauge("scheduler_booked_minutes", "Booked minutes of a projector in the current year",
+                samples -> forEachProjectorLocked(i -> samples.add(projectorLabel(i), bookedMinutes.get(i))));
+    }
+
+    private static String projectorLabel(int projectorID) {
+        return "projector=\"" + projectorID + "\"";
+    }
+
+    /**
+     * Function to visit every projector while holding its read lock, one projector at a time
+     */
+    private void forEachProjectorLocked(IntConsumer visitor) {
+        for (int i = 0; i < projectorCount; i++) {
+            Lock projectorLock = projectorLocks.get(i).readLock();
+            projectorLock.lock();
+            try {
+                visitor.accept(i);
+            } finally {
+                projectorLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @param writeBehindJournal : journal that takes the data base writes from now on, null to write directly
+     */
+    void setWriteBehindJournal(WriteBehindJournal writeBehindJournal) {
+        this.writeBehindJournal = writeBehindJournal;
+    }
+
+    /**
+     * Function to switch to single writer mode, from now on mutations are queued for the scheduler thread
+     */
+    synchronized void startPipeline() {
+        if (pipeline == null) pipeline = new SchedulerCommandPipeline(this);
+    }
+
+    /**
+     * Function to switch back to direct mode once the queued mutations are done
+     */
+    synchronized void stopPipeline() {
+        if (pipeline != null) {
+            pipeline.stop();
+            pipeline = null;
+        }
+    }
+
+    /**
+     * Function to rebuild the in-memory schedule from the data base
+     * Used when a batch of mutations could not be committed and the indexes may have run ahead of the data base.
+     */
+    void reloadData() {
+        fleetLock.writeLock().lock();
+        try {
+            clearIndexes();
+            loadData();
+        } finally {
+            fleetLock.writeLock().unlock();
+        }
+    }
+
+    private void clearIndexes() {
+        for (int i = 0; i < projectorCount; i++) {
+            projectorAvailableTimeSlots.set(i, IntervalIndex.create(indexType, MINUTES_IN_A_YEAR));
+            projectorRecurringSeries.set(i, new SeriesIndex());
+        }
+        rebuildFleetSummaries();
+    }
+
+    /**
+     * Function to recompute the fleet index and the capacity index from the projectors' indexes,
+     * after these were filled or replaced directly
+     */
+    private void rebuildFleetSummaries() {
+        fleetIndex.rebuild();
+        // every booking adds one from its start and takes it away from its end, the running sum is the count
+        int[] bookedPerMinute = new int[MINUTES_IN_A_YEAR + 1];
+        long[] projectorMinutes = new long[1];
+        IntervalIndex.RangeConsumer countBooking = (start, end) -> {
+            int from = Math.max(0, Math.min(start, MINUTES_IN_A_YEAR));
+            int to = Math.max(0, Math.min(end, MINUTES_IN_A_YEAR));
+            bookedPerMinute[from]++;
+            bookedPerMinute[to]--;
+            projectorMinutes[0] += to - from;
+        };
+        for (int i = 0; i < projectorCount; i++) {
+            projectorMinutes[0] = 0;
+            projectorAvailableTimeSlots.get(i).forEachRange(countBooking);
+            projectorRecurringSeries.get(i).forEachSeries(series -> series.forEachCoveredRange(countBooking));
+            bookedMinutes.set(i, projectorMinutes[0]);
+            scheduleVersions.incrementAndGet(i);
+        }
+        for (int minute = 1; minute < MINUTES_IN_A_YEAR; minute++) {
+            bookedPerMinute[minute] += bookedPerMinute[minute - 1];
+        }
+        capacityIndex.reset(bookedPerMinute);
+    }
+
+    /**
+     * Function to load the schedule from a snapshot if there is a usable one, from the data base otherwise,
+     * and to keep saving snapshots from then on
+     * @param snapshot
+     * @param intervalSeconds : time between two snapshots
+     */
+    void startSnapshots(SchedulerSnapshot snapshot, long intervalSeconds) {
+        long startNanos = System.nanoTime();
+        boolean loaded = false;
+        try {
+            SchedulerSnapshot.installChangeLog();
+            loaded = loadSnapshot(snapshot);
+        } catch (SQLException sqle) {
+            appLogger.error("Change log could not be set up: " + sqle.getMessage());
+        }
+        if (!loaded) reloadData();
+        appLogger.info((loaded ? "Loaded snapshot" : "Loaded schedule from the data base") + " in " +
+                (System.nanoTime() - startNanos) / 1000000 + " ms");
+
+        ScheduledExecutorService snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "scheduler-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // after a full load the next start shouldn't have to do it again, so save right away
+        snapshotExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot.write(captureSnapshot());
+            } catch (IOException | SQLException e) {
+                appLogger.error("Snapshot could not be saved: " + e.getMessage());
+            }
+        }, loaded ? intervalSeconds : 0, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Function to copy the indexes for a snapshot
+     * Taken under the exclusive fleet lock, so every change logged up to the mark is in the copy.
+     * Later changes may be in it too, replaying them again on load is harmless.
+     * @return the copy
+     */
+    SchedulerSnapshot.State captureSnapshot() throws SQLException {
+        // in pipeline mode a half done batch could still be rolled back, wait for it to be committed
+        SchedulerCommandPipeline pipeline = this.pipeline;
+        if (pipeline != null) return pipeline.betweenBatches(this::captureIndexes);
+        return captureIndexes();
+    }
+
+    private SchedulerSnapshot.State captureIndexes() throws SQLException {
+        fleetLock.writeLock().lock();
+        try {
+            // bookings only in the journal must be durable before they go into a snapshot
+            WriteBehindJournal journal = this.writeBehindJournal;
+            if (journal != null) journal.syncAll();
+            SchedulerSnapshot.State state = new SchedulerSnapshot.State(getStartOfYearEpochTime().toEpochMilli(),
+                    SchedulerSnapshot.currentChangeMark());
+            for (int i = 0; i < projectorCount; i++) {
+                IntervalIndex index = projectorAvailableTimeSlots.get(i);
+                int[] ranges = new int[2 * index.rangeCount()];
+                int[] position = {0};
+                index.forEachRange((start, end) -> {
+                    ranges[position[0]++] = start;
+                    ranges[position[0]++] = end;
+                });
+                state.ranges.add(ranges);
+                List<RecurringSeries> seriesList = new ArrayList<>();
+                projectorRecurringSeries.get(i).forEachSeries(seriesList::add);
+                state.series.add(seriesList);
+            }
+            return state;
+        } finally {
+            fleetLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Function to fill the indexes from a snapshot and replay the changes logged after its mark
+     * @param snapshot
+     * @return true if loaded, false if the snapshot can't be used (the indexes are left empty then)
+     */
+    boolean loadSnapshot(SchedulerSnapshot snapshot) {
+        fleetLock.writeLock().lock();
+        try {
+            SchedulerSnapshot.State state = snapshot.read(getStartOfYearEpochTime().toEpochMilli(), projectorCount);
+            if (state == null) return false;
+            clearIndexes();
+            for (int i = 0; i < projectorCount; i++) {
+                IntervalIndex index = projectorAvailableTimeSlots.get(i);
+                int[] ranges = state.ranges.get(i);
+                for (int r = 0; r < ranges.length; r += 2) {
+                    index.add(ranges[r], ranges[r + 1]);
+                }
+                SeriesIndex seriesIndex = projectorRecurringSeries.get(i);
+                for (RecurringSeries series : state.series.get(i)) {
+                    seriesIndex.add(series);
+                }
+            }
+            rebuildFleetSummaries();
+            boolean replayed = replayChanges(state.changeMark);
+            if (!replayed) clearIndexes();
+            return replayed;
+        } catch (IOException | SQLException e) {
+            appLogger.error("Snapshot could not be loaded: " + e.getMessage());
+            clearIndexes();
+            return false;
+        } finally {
+            fleetLock.writeLock().unlock();
         }
-        loadData();
+    }
+
+    /**
+     * Function to apply the changes logged after a snapshot's mark to the indexes
+     * Changes already contained in the snapshot may come again, adding and removing them is idempotent.
+     * @param changeMark
+     * @return false if some change is missing from the log or lacks its time, a full load is needed then
+     */
+    private boolean replayChanges(long changeMark) throws SQLException {
+        // change numbers have no gaps, unless a newer snapshot already pruned what this one still needs
+        long lastChange = SchedulerSnapshot.currentChangeMark();
+        long loggedChanges = DataBase.getInstance().query(
+                "SELECT count(*) AS n FROM allocation_changes WHERE seq > ?",
+                queryResult -> queryResult.getLong("n"), changeMark);
+        if (loggedChanges != lastChange - changeMark) return false;
+
+        Instant yearStart = getStartOfYearEpochTime();
+        Instant yearEnd = yearStart.plus(Duration.ofMinutes(MINUTES_IN_A_YEAR));
+        return DataBase.getInstance().query("SELECT * FROM allocation_changes WHERE seq > ? ORDER BY seq", queryResult -> {
+            while (queryResult.next()) {
+                if (queryResult.getObject("start") == null) return false;
+                AllocatedTimeSlot allocatedTimeSlot = new AllocatedTimeSlot(queryResult.getLong("allocation_id"),
+                        queryResult.getLong("projector_id"),
+                        queryResult.getLong("time_slot_id"),
+                        queryResult.getLong("team_id"),
+                        Instant.ofEpochMilli(queryResult.getLong("start")),
+                        Duration.ofMillis(queryResult.getLong("duration")),
+                        Duration.ofMillis(queryResult.getLong("recur_every")),
+                        Instant.ofEpochMilli(queryResult.getLong("end")));
+                boolean deleted = queryResult.getInt("deleted") != 0;
+                if (allocatedTimeSlot.getRecurInterval().equals(Duration.ZERO)) {
+                    // same bounds as loadData
+                    Instant start = allocatedTimeSlot.getStartDateTime();
+                    if (start.isBefore(yearStart) || start.isAfter(yearEnd)) continue;
+                    if (deleted) cancelProjector(allocatedTimeSlot, (int) allocatedTimeSlot.getProjectorID());
+                    else scheduleProjector(allocatedTimeSlot, (int) allocatedTimeSlot.getProjectorID());
+                } else {
+                    cancelProjectorRecurring(allocatedTimeSlot, (int) allocatedTimeSlot.getProjectorID());
+                    if (!deleted) scheduleProjectorForRecurringMeeting(allocatedTimeSlot);
+                }
+            }
+            return true;
+        }, changeMark);
+    }
+
+    /**
+     * @param recurringParallelThreshold : occurrences * projectors from which recurring meetings are checked in parallel
+     */
+    void setRecurringParallelThreshold(int recurringParallelThreshold) {
+        this.recurringParallelThreshold = recurringParallelThreshold;
+    }
+
+    /**
+     * @param fleetIndexEnabled : false to probe the projectors one after another instead (used by benchmarks)
+     */
+    void setFleetIndexEnabled(boolean fleetIndexEnabled) {
+        this.fleetIndexEnabled = fleetIndexEnabled;
+    }
+
+    /**
+     * @param allocationStrategy : strategy picking among the free projectors from now on
+     */
+    void setAllocationStrategy(AllocationStrategy allocationStrategy) {
+        this.allocationStrategy = allocationStrategy;
     }
 
     /**
@@ -55,7 +524,30 @@ public class ProjectorScheduler {
      * @return minute of year
      */
     private int getMinuteOfYear(Instant currInstant){
-        return (int)ChronoUnit.MINUTES.between(getStartOfYearEpochTime(), currInstant);
+        return getMinuteOfYear(getStartOfYearEpochTime(), currInstant);
+    }
+
+    /**
+     * Utility function to convert a given epoch time into the minute of the year, for a precomputed start of the year
+     * @param yearStartInstant : Start of the current year, as returned by getStartOfYearEpochTime
+     * @param currInstant : Epoch time to be converted
+     * @return minute of year
+     */
+    private int getMinuteOfYear(Instant yearStartInstant, Instant currInstant){
+        return (int)ChronoUnit.MINUTES.between(yearStartInstant, currInstant);
+    }
+
+    /**
+     * Utility function to convert an epoch time into the minute of the year, times outside the year are
+     * moved to its start or end
+     * @param yearStartInstant : Start of the current year, as returned by getStartOfYearEpochTime
+     * @param currInstant : Epoch time to be converted
+     * @return minute of year, between 0 and MINUTES_IN_A_YEAR
+     */
+    private int getMinuteOfYearWithin(Instant yearStartInstant, Instant currInstant){
+        if (!currInstant.isAfter(yearStartInstant)) return 0;
+        if (!currInstant.isBefore(yearStartInstant.plus(Duration.ofMinutes(MINUTES_IN_A_YEAR)))) return MINUTES_IN_A_YEAR;
+        return getMinuteOfYear(yearStartInstant, currInstant);
     }
 
     /**
@@ -78,21 +570,188 @@ public class ProjectorScheduler {
 
     /**
      * Function to return the ID of the projector that can be allocated for the given time
-     * This function checks each projector's interval tree for possible intersection with the given time range,
-     * if no intersection exists then that projector's ID is returned.
+     * This function checks each projector's interval tree for possible intersection with the given time range.
+     * With first fit the first projector without intersection is returned, otherwise every free projector is
+     * scored by the allocation strategy and the best one is returned.
      *
      * @param startMinutes : Allocation starting time
      * @param endMinutes : Allocation ending time
-     * @return id of the first projector that is available for the duration
+     * @param event : receives the number of projectors probed
+     * @return id of the projector picked by the allocation strategy among the ones available for the duration
      * @return -1 if a projector cannot be allocated
      */
-    private int getAvailableProjectorID(int startMinutes, int endMinutes){
-        for (int i = 0; i < PROJECTOR_COUNT; i++) {
-            if (!projectorAvailableTimeSlots.get(i).intersects(Range.closedOpen(startMinutes, endMinutes))) {
-                return i;
+    private int getAvailableProjectorID(int startMinutes, int endMinutes, SchedulerEvents.ConflictCheck event){
+        // if every projector is booked at some minute of the range nobody can take it
+        if (isFleetSaturated(startMinutes, endMinutes)) return -1;
+        AllocationStrategy strategy = allocationStrategy;
+        int bestProjectorID = -1;
+        long bestScore = Long.MAX_VALUE;
+        // the fleet index skips the projectors whose one time bookings rule them out,
+        // each candidate it hands out is checked in full under the projector's lock
+        int i = fleetIndexEnabled ? fleetIndex.nextCandidate(0, startMinutes, endMinutes) : 0;
+        while (i != -1 && i < projectorCount) {
+            event.projectorsProbed++;
+            Lock projectorLock = projectorLocks.get(i).readLock();
+            projectorLock.lock();
+            try {
+                if (isProjectorFree(i, startMinutes, endMinutes)) {
+                    if (strategy.takesFirstFree()) return i;
+                    long score = strategy.score(new StrategyView(i), startMinutes, endMinutes, MINUTES_IN_A_YEAR);
+                    if (score < bestScore) {
+                        bestScore = score;
+                        bestProjectorID = i;
+                    }
+                }
+            } finally {
+                projectorLock.unlock();
+            }
+            i = fleetIndexEnabled ? fleetIndex.nextCandidate(i + 1, startMinutes, endMinutes) : i + 1;
+        }
+        return bestProjectorID;
+    }
+
+    /**
+     * What the allocation strategy sees of a projector, read while the caller holds the projector's lock
+     */
+    private class StrategyView implements AllocationStrategy.ProjectorView {
+        private final int projectorID;
+
+        StrategyView(int projectorID) {
+            this.projectorID = projectorID;
+        }
+
+        @Override
+        public int nextBookedStart(int from) {
+            return getNextBookedStart(projectorID, from);
+        }
+
+        @Override
+        public int previousBookedEnd(int to) {
+            return Math.max(projectorAvailableTimeSlots.get(projectorID).previousBookedEnd(to),
+                    projectorRecurringSeries.get(projectorID).previousBookedEnd(to));
+        }
+
+        @Override
+        public long bookedMinutes() {
+            return bookedMinutes.get(projectorID);
+        }
+    }
+
+    /**
+     * Utility function to read lock every projector, in ascending order
+     */
+    private void lockAllProjectorsForReading(){
+        for (ReentrantReadWriteLock projectorLock : projectorLocks) {
+            projectorLock.readLock().lock();
+        }
+    }
+
+    private void unlockAllProjectorsForReading(){
+        for (int i = projectorLocks.size() - 1; i >= 0; i--) {
+            projectorLocks.get(i).readLock().unlock();
+        }
+    }
+
+    /**
+     * Function to check both the one time bookings and the recurring bookings of a projector
+     * @param projectorID
+     * @param startMinutes : range starting time
+     * @param endMinutes : range ending time
+     * @return true if the projector is free for the whole range
+     */
+    private boolean isProjectorFree(int projectorID, int startMinutes, int endMinutes){
+        return !projectorAvailableTimeSlots.get(projectorID).intersects(startMinutes, endMinutes)
+                && !projectorRecurringSeries.get(projectorID).intersects(startMinutes, endMinutes);
+    }
+
+    /**
+     * Function to find the earliest start at or after the given minute when the projector is free for the given length
+     * The one time bookings and the recurring bookings are consulted in turn until neither of them moves the start.
+     * @param projectorID
+     * @param fromMinutes : earliest acceptable start
+     * @param lengthMinutes : length of the interval
+     * @return earliest free start
+     */
+    private int getNextFreeStart(int projectorID, int fromMinutes, int lengthMinutes){
+        IntervalIndex index = projectorAvailableTimeSlots.get(projectorID);
+        SeriesIndex seriesIndex = projectorRecurringSeries.get(projectorID);
+        int start = fromMinutes;
+        while (true) {
+            start = index.nextFreeStart(start, lengthMinutes);
+            int seriesFreeStart = seriesIndex.nextFreeStart(start, lengthMinutes);
+            if (seriesFreeStart == start) return start;
+            start = seriesFreeStart;
+        }
+    }
+
+    /**
+     * Function to find where the free gap of a projector containing the given minute ends
+     * @param projectorID
+     * @param fromMinutes : minute to look from
+     * @return the first booked minute >= fromMinutes, Integer.MAX_VALUE if there is none
+     */
+    private int getNextBookedStart(int projectorID, int fromMinutes){
+        return Math.min(projectorAvailableTimeSlots.get(projectorID).nextBookedStart(fromMinutes),
+                projectorRecurringSeries.get(projectorID).nextBookedStart(fromMinutes));
+    }
+
+    /**
+     * Function to check, with the capacity index only, if every projector is booked at some minute of the range
+     * @param startMinutes : range starting time
+     * @param endMinutes : range ending time
+     * @return true if no projector can take the range, false if one might
+     */
+    private boolean isFleetSaturated(int startMinutes, int endMinutes){
+        return capacityIndex.maxBooked(startMinutes, endMinutes) >= projectorCount;
+    }
+
+    /**
+     * Function to find the highest number of projectors in use at the same time within [from, to)
+     * @param from : start of the range, moved to the start of the year if earlier
+     * @param to : end of the range, moved to the end of the year if later
+     * @return peak number of booked projectors, one time and recurring bookings counted
+     */
+    int getPeakUsage(Instant from, Instant to){
+        Instant yearStartInstant = getStartOfYearEpochTime();
+        return capacityIndex.maxBooked(getMinuteOfYearWithin(yearStartInstant, from),
+                getMinuteOfYearWithin(yearStartInstant, to));
+    }
+
+    /**
+     * Function to find all the projectors that are free for the whole given time range
+     * With the BITMAP index the projectors are checked together, one 64-minute word at a time,
+     * other indexes are probed one projector after another.
+     * @param startMinutes : range starting time
+     * @param endMinutes : range ending time
+     * @return set of the ids of the free projectors
+     */
+    BitSet getFreeProjectors(int startMinutes, int endMinutes){
+        BitSet freeProjectors = new BitSet(projectorCount);
+        freeProjectors.set(0, projectorCount);
+        lockAllProjectorsForReading();
+        try {
+            collectFreeProjectors(startMinutes, endMinutes, freeProjectors);
+        } finally {
+            unlockAllProjectorsForReading();
+        }
+        return freeProjectors;
+    }
+
+    private void collectFreeProjectors(int startMinutes, int endMinutes, BitSet freeProjectors){
+        if (indexType == IntervalIndex.Type.BITMAP) {
+            BitmapIntervalIndex.clearBusy(projectorAvailableTimeSlots, startMinutes, endMinutes, freeProjectors);
+            for (int i = freeProjectors.nextSetBit(0); i >= 0; i = freeProjectors.nextSetBit(i + 1)) {
+                if (projectorRecurringSeries.get(i).intersects(startMinutes, endMinutes)) {
+                    freeProjectors.clear(i);
+                }
+            }
+        } else {
+            for (int i = 0; i < projectorCount; i++) {
+                if (!isProjectorFree(i, startMinutes, endMinutes)) {
+                    freeProjectors.clear(i);
+                }
             }
         }
-        return -1;
     }
 
     /**
@@ -101,48 +760,292 @@ public class ProjectorScheduler {
      * @return id of the first projector that is available for the duration
      * @return -1 if a projector cannot be allocated
      */
-    private int getAvailableProjectorID(TimeSlot timeSlotToAllocate){
+    int getAvailableProjectorID(TimeSlot timeSlotToAllocate){
         if (timeSlotToAllocate != null) {
+            long startNanos = System.nanoTime();
+            SchedulerEvents.ConflictCheck event = new SchedulerEvents.ConflictCheck();
+            event.begin();
             int startMinutes = getMinuteOfYear(timeSlotToAllocate.getStartDateTime());
             int endMinutes = getMinuteOfYear(timeSlotToAllocate.getStartDateTime().plus(timeSlotToAllocate.getDuration()));
-            return getAvailableProjectorID(startMinutes, endMinutes);
+            int projectorID = -1;
+            try {
+                projectorID = getAvailableProjectorID(startMinutes, endMinutes, event);
+                return projectorID;
+            } finally {
+                CONFLICT_CHECK_TIMER.record(System.nanoTime() - startNanos);
+                commitConflictCheck(event, timeSlotToAllocate, 1, projectorID);
+            }
         }
         return -1;
     }
 
+    /**
+     * Function to convert a recurring meeting into its series on the time-axis of the current year.
+     * Occurrences are counted the same way they have always been expanded: starting from the first one,
+     * as long as the occurrence starts after the start of the year, before the recurrence end time,
+     * and ends before the end of the year.
+     * @param allocationID : allocation the series belongs to, -1 if it is only being checked
+     * @param firstTimeSlot : first time slot of the recurring meeting
+     * @return the series, null if the recurrence interval is not a positive whole number of minutes
+     */
+    private RecurringSeries getRecurringSeries(long allocationID, TimeSlot firstTimeSlot){
+        long startNanos = System.nanoTime();
+        SchedulerEvents.RecurringExpansion event = new SchedulerEvents.RecurringExpansion();
+        event.begin();
+        RecurringSeries series = null;
+        try {
+            series = toRecurringSeries(allocationID, firstTimeSlot);
+            return series;
+        } finally {
+            RECURRING_EXPANSION_TIMER.record(System.nanoTime() - startNanos);
+            if (event.shouldCommit()) {
+                event.recurInterval = firstTimeSlot.getRecurInterval().toMillis();
+                event.occurrences = series == null ? 0 : series.getCount();
+                event.commit();
+            }
+        }
+    }
+
+    private RecurringSeries toRecurringSeries(long allocationID, TimeSlot firstTimeSlot){
+        long intervalMillis = firstTimeSlot.getRecurInterval().toMillis();
+        if (intervalMillis <= 0 || intervalMillis % Duration.ofMinutes(1).toMillis() != 0) return null;
+        Instant yearStartInstant = getStartOfYearEpochTime();
+        long yearStartMillis = yearStartInstant.toEpochMilli();
+        long yearEndMillis = yearStartInstant.plus(Duration.ofMinutes(MINUTES_IN_A_YEAR)).toEpochMilli();
+        long startMillis = firstTimeSlot.getStartDateTime().toEpochMilli();
+        long durationMillis = firstTimeSlot.getDuration().toMillis();
+
+        long count = 0;
+        if (startMillis > yearStartMillis) {
+            // occurrence k is kept while start + k * interval < recurEnd and start + k * interval + duration < yearEnd
+            long beforeRecurEnd = firstTimeSlot.getRecurEndDateTime().toEpochMilli() - startMillis;
+            long beforeYearEnd = yearEndMillis - durationMillis - startMillis;
+            count = Math.max(0, Math.min(
+                    beforeRecurEnd > 0 ? (beforeRecurEnd + intervalMillis - 1) / intervalMillis : 0,
+                    beforeYearEnd > 0 ? (beforeYearEnd + intervalMillis - 1) / intervalMillis : 0));
+        }
+        int startMinutes = getMinuteOfYear(yearStartInstant, firstTimeSlot.getStartDateTime());
+        int endMinutes = getMinuteOfYear(yearStartInstant, firstTimeSlot.getStartDateTime().plus(firstTimeSlot.getDuration()));
+        return new RecurringSeries(allocationID, startMinutes, endMinutes - startMinutes,
+                (int) firstTimeSlot.getRecurInterval().toMinutes(), (int) count);
+    }
+
+    /**
+     * Function to check if a projector is free for every occurrence of a recurring meeting
+     * Existing recurring meetings are checked against the series arithmetically,
+     * one time bookings are checked occurrence by occurrence.
+     * @param projectorID
+     * @param series : the recurring meeting
+     * @param lowestFreeProjectorID : when checking in parallel, the lowest projector id found free so far,
+     *                              the check is abandoned once it drops below projectorID. null otherwise.
+     * @return true if the projector is free for all occurrences
+     */
+    private boolean isProjectorFree(int projectorID, RecurringSeries series, AtomicInteger lowestFreeProjectorID){
+        if (projectorRecurringSeries.get(projectorID).intersects(series)) return false;
+        IntervalIndex index = projectorAvailableTimeSlots.get(projectorID);
+        for (int k = 0; k < series.getCount(); k++) {
+            if (lowestFreeProjectorID != null && (k & CANCELLATION_CHECK_MASK) == 0
+                    && lowestFreeProjectorID.get() < projectorID) {
+                return false;
+            }
+            int start = series.getOccurrenceStart(k);
+            if (index.intersects(start, start + series.getDuration())) return false;
+        }
+        return true;
+    }
+
     /**
      * Function to return the ID of the projector that can be allocated for the recurring meeting
      * @param timeSlotToAllocate : The first time slot of the recurring meeting
-     * @return id of the first projector that is available for *all* occurences of this meeting
+     * @return id of the first projector that is available for *all* occurences of this meeting, or the one
+     * the allocation strategy scores best summed over the occurrences
      * @return -1 if a projector cannot be allocated
      */
-    private int getAvailableProjectorIDForRecurringMeeting(TimeSlot timeSlotToAllocate){
-        boolean isSchedulable = true;
+    int getAvailableProjectorIDForRecurringMeeting(TimeSlot timeSlotToAllocate){
+        long startNanos = System.nanoTime();
+        SchedulerEvents.ConflictCheck event = new SchedulerEvents.ConflictCheck();
+        event.begin();
+        int projectorID = -1;
+        try {
+            projectorID = findProjectorForRecurringMeeting(timeSlotToAllocate, event);
+            return projectorID;
+        } finally {
+            RECURRING_CONFLICT_CHECK_TIMER.record(System.nanoTime() - startNanos);
+            commitConflictCheck(event, timeSlotToAllocate, event.occurrences, projectorID);
+        }
+    }
+
+    /**
+     * Function to fill in and commit a conflict check event, if a recording wants it
+     * @param event
+     * @param requestedTimeSlot
+     * @param occurrences : occurrences checked
+     * @param projectorID : projector found, -1 if none
+     */
+    private static void commitConflictCheck(SchedulerEvents.ConflictCheck event, TimeSlot requestedTimeSlot,
+                                            int occurrences, int projectorID){
+        if (!event.shouldCommit()) return;
+        event.requestedDuration = requestedTimeSlot.getDuration().toMillis();
+        event.recurInterval = requestedTimeSlot.getRecurInterval().toMillis();
+        event.occurrences = occurrences;
+        event.projectorID = projectorID;
+        event.commit();
+    }
+
+    /**
+     * @param event : receives the number of occurrences and projectors checked
+     */
+    private int findProjectorForRecurringMeeting(TimeSlot timeSlotToAllocate, SchedulerEvents.ConflictCheck event){
         if (timeSlotToAllocate.getStartDateTime().isAfter(timeSlotToAllocate.getRecurEndDateTime())) return -1;
-        for(int i = 0; i < PROJECTOR_COUNT; i++) {
-            Instant yearStartInstant = getStartOfYearEpochTime();
-            Instant yearEndInstant = getStartOfYearEpochTime().plus(Duration.ofMinutes(MINUTES_IN_A_YEAR));
-            Instant meetingStart  = timeSlotToAllocate.getStartDateTime();
-            Instant meetingEnd = meetingStart.plus(timeSlotToAllocate.getDuration());
-            while (meetingStart.isAfter(yearStartInstant) &&
-                    meetingStart.isBefore(timeSlotToAllocate.getRecurEndDateTime()) &&
-                    meetingEnd.isBefore(yearEndInstant)) {
-                if (projectorAvailableTimeSlots
-                        .get(i)
-                        .intersects(Range.closedOpen(getMinuteOfYear(meetingStart), getMinuteOfYear(meetingEnd)))) {
-                    isSchedulable = false;
-                    break;
+        RecurringSeries series = getRecurringSeries(-1, timeSlotToAllocate);
+        if (series == null) return -1;
+        event.occurrences = series.getCount();
+        boolean parallel = (long) series.getCount() * projectorCount >= recurringParallelThreshold;
+        // an occurrence at a time every projector is booked rules the whole fleet out, only worth a look
+        // per occurrence before a search big enough to go parallel
+        if (parallel) {
+            for (int k = 0; k < series.getCount(); k++) {
+                int start = series.getOccurrenceStart(k);
+                if (isFleetSaturated(start, start + series.getDuration())) return -1;
+            }
+        }
+        AllocationStrategy strategy = allocationStrategy;
+        // the calling thread holds the read locks on behalf of the pool threads
+        lockAllProjectorsForReading();
+        try {
+            if (!strategy.takesFirstFree() || parallel) {
+                // every projector is looked at, or up to the lowest free one in parallel
+                event.projectorsProbed = projectorCount;
+                event.parallel = parallel;
+            }
+            if (!strategy.takesFirstFree()) return getBestProjectorIDForRecurringMeeting(series, strategy);
+            // small searches are not worth handing over to the pool
+            if (!parallel) {
+                for(int i = 0; i < projectorCount; i++) {
+                    event.projectorsProbed++;
+                    if (isProjectorFree(i, series, null)) {
+                        return i;
+                    }
                 }
-                meetingStart = meetingStart.plus(timeSlotToAllocate.getRecurInterval());
-                meetingEnd = meetingStart.plus(timeSlotToAllocate.getDuration());
+                return -1;
             }
-            if(isSchedulable){
-                return i;
-            } else {
-                isSchedulable = true; // reset
+            AtomicInteger lowestFreeProjectorID = new AtomicInteger(projectorCount);
+            FEASIBILITY_POOL.invoke(new RecurringFeasibilityTask(series, 0, projectorCount, lowestFreeProjectorID));
+            return lowestFreeProjectorID.get() < projectorCount ? lowestFreeProjectorID.get() : -1;
+        } finally {
+            unlockAllProjectorsForReading();
+        }
+    }
+
+    /**
+     * Function to score every projector that is free for a recurring meeting and to pick the best one
+     * Called with every projector read locked. Scoring doesn't stop at the first free projector,
+     * so large searches are always spread over the pool.
+     * @param series : the recurring meeting
+     * @param strategy
+     * @return id of the free projector with the lowest score, the lowest id among equal scores, -1 if none is free
+     */
+    private int getBestProjectorIDForRecurringMeeting(RecurringSeries series, AllocationStrategy strategy){
+        long[] scores = new long[projectorCount];
+        if ((long) series.getCount() * projectorCount < recurringParallelThreshold) {
+            for (int i = 0; i < projectorCount; i++) {
+                scores[i] = getRecurringScore(i, series, strategy);
             }
+        } else {
+            FEASIBILITY_POOL.invoke(new RecurringScoreTask(series, strategy, 0, projectorCount, scores));
+        }
+        int bestProjectorID = -1;
+        for (int i = 0; i < projectorCount; i++) {
+            if (scores[i] != Long.MAX_VALUE && (bestProjectorID == -1 || scores[i] < scores[bestProjectorID])) {
+                bestProjectorID = i;
+            }
+        }
+        return bestProjectorID;
+    }
+
+    /**
+     * @return the strategy's score summed over every occurrence of the series, Long.MAX_VALUE if the projector
+     * isn't free for all of them
+     */
+    private long getRecurringScore(int projectorID, RecurringSeries series, AllocationStrategy strategy){
+        if (!isProjectorFree(projectorID, series, null)) return Long.MAX_VALUE;
+        StrategyView view = new StrategyView(projectorID);
+        long score = 0;
+        for (int k = 0; k < series.getCount(); k++) {
+            int start = series.getOccurrenceStart(k);
+            score += strategy.score(view, start, start + series.getDuration(), MINUTES_IN_A_YEAR);
+        }
+        return score;
+    }
+
+    /**
+     * Fork/join task scoring a range of projectors for a recurring meeting, split in halves until
+     * it is a single projector. Every projector writes its own slot of scores.
+     */
+    private class RecurringScoreTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RecurringSeries series;
+        private final AllocationStrategy strategy;
+        private final int fromProjectorID;
+        private final int toProjectorID;
+        private final long[] scores;
+
+        RecurringScoreTask(RecurringSeries series, AllocationStrategy strategy, int fromProjectorID, int toProjectorID, long[] scores) {
+            this.series = series;
+            this.strategy = strategy;
+            this.fromProjectorID = fromProjectorID;
+            this.toProjectorID = toProjectorID;
+            this.scores = scores;
+        }
+
+        @Override
+        protected void compute() {
+            if (toProjectorID - fromProjectorID == 1) {
+                scores[fromProjectorID] = getRecurringScore(fromProjectorID, series, strategy);
+                return;
+            }
+            int middle = (fromProjectorID + toProjectorID) >>> 1;
+            invokeAll(new RecurringScoreTask(series, strategy, fromProjectorID, middle, scores),
+                    new RecurringScoreTask(series, strategy, middle, toProjectorID, scores));
+        }
+    }
+
+    /**
+     * Fork/join task checking a range of projectors for a recurring meeting.
+     * The range is split in halves until it is a single projector. Whenever a projector turns out to be free
+     * it is recorded in lowestFreeProjectorID if it is lower than what is already there,
+     * every projector above that id is abandoned (or skipped if not started yet),
+     * so the result is the same as checking the projectors one after another.
+     */
+    private class RecurringFeasibilityTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RecurringSeries series;
+        private final int fromProjectorID;
+        private final int toProjectorID;
+        private final AtomicInteger lowestFreeProjectorID;
+
+        RecurringFeasibilityTask(RecurringSeries series, int fromProjectorID, int toProjectorID, AtomicInteger lowestFreeProjectorID) {
+            this.series = series;
+            this.fromProjectorID = fromProjectorID;
+            this.toProjectorID = toProjectorID;
+            this.lowestFreeProjectorID = lowestFreeProjectorID;
+        }
+
+        @Override
+        protected void compute() {
+            if (fromProjectorID >= lowestFreeProjectorID.get()) return;
+            if (toProjectorID - fromProjectorID == 1) {
+                if (isProjectorFree(fromProjectorID, series, lowestFreeProjectorID)) {
+                    lowestFreeProjectorID.accumulateAndGet(fromProjectorID, Math::min);
+                }
+                return;
+            }
+            int middle = (fromProjectorID + toProjectorID) >>> 1;
+            invokeAll(new RecurringFeasibilityTask(series, fromProjectorID, middle, lowestFreeProjectorID),
+                    new RecurringFeasibilityTask(series, middle, toProjectorID, lowestFreeProjectorID));
         }
-        return -1;
     }
 
     /**
@@ -154,8 +1057,12 @@ public class ProjectorScheduler {
      * @return false if adding failed
      */
     private boolean scheduleProjector(int startMinutes, int endMinutes, int projectorID){
-        if (projectorID < 0 || projectorID >= PROJECTOR_COUNT) return false;
-        projectorAvailableTimeSlots.get(projectorID).add(Range.closedOpen(startMinutes, endMinutes));
+        if (projectorID < 0 || projectorID >= projectorCount) return false;
+        // only minutes the projector didn't have booked yet are counted, booking the same time again changes nothing
+        projectorAvailableTimeSlots.get(projectorID).forEachFreeRange(startMinutes, endMinutes,
+                (start, end) -> countBooking(projectorID, start, end, 1));
+        fleetIndex.add(projectorID, startMinutes, endMinutes);
+        scheduleVersions.incrementAndGet(projectorID);
         return true;
     }
 
@@ -177,21 +1084,43 @@ public class ProjectorScheduler {
 
     /**
      * Function to mark the projector as taken for all the occurences of the given recurring meeting
+     * The meeting is added to the projector's series index as a single entry, occurrences are not expanded.
      * @param allocatedTimeSlot : First time slot of the recurring meeting
      */
     private void scheduleProjectorForRecurringMeeting(AllocatedTimeSlot allocatedTimeSlot){
-        Instant yearStartInstant = getStartOfYearEpochTime();
-        Instant yearEndInstant = getStartOfYearEpochTime().plus(Duration.ofMinutes(MINUTES_IN_A_YEAR));
-        Instant meetingStart  = allocatedTimeSlot.getStartDateTime();
-        Instant meetingEnd = meetingStart.plus(allocatedTimeSlot.getDuration());
-        while (meetingStart.isAfter(yearStartInstant) && meetingStart.isBefore(allocatedTimeSlot.getRecurEndDateTime()) && meetingEnd.isBefore(yearEndInstant)){
-            scheduleProjector(getMinuteOfYear(meetingStart),
-                    getMinuteOfYear(meetingEnd), (int)allocatedTimeSlot.getProjectorID());
-            meetingStart = meetingStart.plus(allocatedTimeSlot.getRecurInterval());
-            meetingEnd = meetingStart.plus(allocatedTimeSlot.getDuration());
+        int projectorID = (int)allocatedTimeSlot.getProjectorID();
+        if (projectorID < 0 || projectorID >= projectorCount) return;
+        RecurringSeries series = getRecurringSeries(allocatedTimeSlot.getAllocatedID(), allocatedTimeSlot);
+        if (series != null) {
+            projectorRecurringSeries.get(projectorID).add(series);
+            addOccurrences(projectorID, series, 1);
+            scheduleVersions.incrementAndGet(projectorID);
         }
     }
 
+    /**
+     * Function to count every occurrence of a series in the capacity index and the projector's booked minutes
+     * Overlapping occurrences, longer than the interval, count their common minutes once.
+     * @param projectorID
+     * @param series
+     * @param delta : +1 when the series is booked, -1 when it is freed
+     */
+    private void addOccurrences(int projectorID, RecurringSeries series, int delta){
+        series.forEachCoveredRange((start, end) -> countBooking(projectorID, start, end, delta));
+    }
+
+    /**
+     * Function to count [start, end), cut to the time-axis, in the capacity index and the projector's booked minutes
+     * @param projectorID
+     * @param start : interval start (inclusive)
+     * @param end : interval end (exclusive)
+     * @param delta : +1 when the interval is booked, -1 when it is freed
+     */
+    private void countBooking(int projectorID, int start, int end, int delta){
+        capacityIndex.add(start, end, delta);
+        int minutes = Math.min(end, MINUTES_IN_A_YEAR) - Math.max(start, 0);
+        if (minutes > 0) bookedMinutes.addAndGet(projectorID, (long) delta * minutes);
+    }
 
     /**
      * Mark the projector as available for the given time interval
@@ -202,8 +1131,11 @@ public class ProjectorScheduler {
      * @return false if projector id is incorrect
      */
     private boolean cancelProjector(int startMinutes, int endMinutes, int projectorID){
-        if (projectorID < 0 || projectorID >= PROJECTOR_COUNT) return false;
-        projectorAvailableTimeSlots.get(projectorID).remove(Range.closedOpen(startMinutes, endMinutes));
+        if (projectorID < 0 || projectorID >= projectorCount) return false;
+        projectorAvailableTimeSlots.get(projectorID).forEachRange(startMinutes, endMinutes,
+                (start, end) -> countBooking(projectorID, start, end, -1));
+        fleetIndex.remove(projectorID, startMinutes, endMinutes);
+        scheduleVersions.incrementAndGet(projectorID);
         return true;
     }
 
@@ -227,59 +1159,141 @@ public class ProjectorScheduler {
      * Function to mark all occurences of a recurring meeting as free
      * @param firstTimeSlot : First time slot of the recurring meeting
      * @param projectorID
-     * @return
+     * @return true if the meeting was found and removed
      */
-    private boolean cancelProjectorRecurring(TimeSlot firstTimeSlot, int projectorID){
-        Instant yearStartInstant = getStartOfYearEpochTime();
-        Instant yearEndInstant = getStartOfYearEpochTime().plus(Duration.ofMinutes(MINUTES_IN_A_YEAR));
-        Instant meetingStart  = firstTimeSlot.getStartDateTime();
-        Instant meetingEnd = meetingStart.plus(firstTimeSlot.getDuration());
-        while (meetingEnd.isAfter(meetingStart) && meetingStart.isAfter(yearStartInstant) && meetingStart.isBefore(firstTimeSlot.getRecurEndDateTime()) && meetingEnd.isBefore(yearEndInstant)){
-            cancelProjector(getMinuteOfYear(meetingStart),
-                    getMinuteOfYear(meetingEnd), projectorID);
-            meetingStart = meetingStart.plus(firstTimeSlot.getRecurInterval());
-            meetingEnd = meetingStart.plus(firstTimeSlot.getDuration());
-        }
+    private boolean cancelProjectorRecurring(AllocatedTimeSlot firstTimeSlot, int projectorID){
+        if (projectorID < 0 || projectorID >= projectorCount) return false;
+        SeriesIndex seriesIndex = projectorRecurringSeries.get(projectorID);
+        RecurringSeries series = seriesIndex.find(firstTimeSlot.getAllocatedID());
+        if (series == null) return false;
+        seriesIndex.remove(firstTimeSlot.getAllocatedID());
+        addOccurrences(projectorID, series, -1);
+        scheduleVersions.incrementAndGet(projectorID);
         return true;
     }
 
     /**
      *  Function to load data based on the underlying database as the scheduler starts.
-     *  The RangeSets for each of the projector are marked for the current year.
+     *  The interval indexes for each of the projector are marked for the current year.
      *  Recurring meetings are marked accordingly
+     *  Rows are streamed and grouped by projector, then every projector's indexes are built on the fork/join pool.
+     *  One time bookings are sorted by start first, so the indexes only ever append.
      */
     private void loadData(){
-        String query = "SELECT * from time_slots, allocations " +
-                " WHERE time_slots.id = allocations.time_slot_id AND " +
-                " start >= " + getStartOfYearEpochTime().toEpochMilli() +
-                " AND start <= " + getStartOfYearEpochTime().plus(Duration.ofMinutes(MINUTES_IN_A_YEAR)).toEpochMilli() +
-                " OR  recur_every > 0";
+        long yearStartMillis = getStartOfYearEpochTime().toEpochMilli();
+        long yearEndMillis = getStartOfYearEpochTime().plus(Duration.ofMinutes(MINUTES_IN_A_YEAR)).toEpochMilli();
+        long startNanos = System.nanoTime();
+        List<ProjectorBookings> bookings = new ArrayList<>();
+        for (int i = 0; i < projectorCount; i++) bookings.add(new ProjectorBookings());
         try {
-            ResultSet queryResult = DataBase.getInstance().query(query);
-            if (queryResult != null) {
-                AllocatedTimeSlot allocatedTimeSlot;
+            long rows = DataBase.getInstance().query(LOAD_QUERY, queryResult -> {
+                // the driver steps through the result one row at a time, the fetch size is only a hint
+                queryResult.setFetchSize(LOAD_FETCH_SIZE);
+                long rowCount = 0;
                 while (queryResult.next()) {
-                    allocatedTimeSlot = new AllocatedTimeSlot(queryResult.getLong("id"),
-                        queryResult.getLong("projector_id"),
-                        queryResult.getLong("time_slot_id"),
-                        queryResult.getLong("team_id"),
-                        Instant.ofEpochMilli(queryResult.getLong("start")),
-                        Duration.ofMillis(queryResult.getLong("duration")),
-                        Duration.ofMillis(queryResult.getLong("recur_every")),
-                        Instant.ofEpochMilli(queryResult.getLong("end")));
-
-                    if (allocatedTimeSlot.getRecurInterval().equals(Duration.ZERO)) {
-                        scheduleProjector(allocatedTimeSlot, (int)allocatedTimeSlot.getProjectorID());
+                    rowCount++;
+                    if (rowCount % LOAD_PROGRESS_ROWS == 0) logLoadProgress("Loading schedule:", rowCount, startNanos);
+                    int projectorID = queryResult.getInt("projector_id");
+                    if (projectorID < 0 || projectorID >= projectorCount) continue;
+                    long startMillis = queryResult.getLong("start");
+                    if (queryResult.getLong("recur_every") == 0) {
+                        long endMillis = startMillis + queryResult.getLong("duration");
+                        bookings.get(projectorID).addOneTime((int) ((startMillis - yearStartMillis) / 60000),
+                                (int) ((endMillis - yearStartMillis) / 60000));
                     } else {
-                        scheduleProjectorForRecurringMeeting(allocatedTimeSlot);
+                        bookings.get(projectorID).recurring.add(
+                                readAllocatedTimeSlot(queryResult.getLong("allocation_id"), queryResult));
                     }
                 }
-            }
+                return rowCount;
+            }, yearStartMillis, yearEndMillis);
+            if (projectorCount > 0) FEASIBILITY_POOL.invoke(new ProjectorLoadTask(bookings, 0, projectorCount));
+            rebuildFleetSummaries();
+            logLoadProgress("Loaded schedule:", rows, startNanos);
         } catch (SQLException sqle){
             appLogger.info("Caught SQL Exception: " + sqle.getMessage());
         }
     }
 
+    private void logLoadProgress(String message, long rows, long startNanos) {
+        long elapsedNanos = Math.max(1, System.nanoTime() - startNanos);
+        appLogger.info(message + " " + rows + " bookings in " + elapsedNanos / 1000000 + " ms ("
+                + rows * 1000000000L / elapsedNanos + " rows/s)");
+    }
+
+    /**
+     * Bookings of a single projector read by loadData, one time bookings packed as (start << 32 | end)
+     */
+    private static class ProjectorBookings {
+        long[] oneTime = new long[64];
+        int oneTimeCount = 0;
+        final List<AllocatedTimeSlot> recurring = new ArrayList<>();
+
+        void addOneTime(int startMinutes, int endMinutes) {
+            if (oneTimeCount == oneTime.length) oneTime = Arrays.copyOf(oneTime, oneTimeCount * 2);
+            oneTime[oneTimeCount++] = ((long) startMinutes << 32) | (endMinutes & 0xffffffffL);
+        }
+    }
+
+    /**
+     * Fork/join task building the indexes of a range of projectors from the rows loadData read.
+     * Every projector has indexes of its own, so the projectors are built independently.
+     */
+    private class ProjectorLoadTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<ProjectorBookings> bookings;
+        private final int fromProjectorID;
+        private final int toProjectorID;
+
+        ProjectorLoadTask(List<ProjectorBookings> bookings, int fromProjectorID, int toProjectorID) {
+            this.bookings = bookings;
+            this.fromProjectorID = fromProjectorID;
+            this.toProjectorID = toProjectorID;
+        }
+
+        @Override
+        protected void compute() {
+            if (toProjectorID - fromProjectorID == 1) {
+                ProjectorBookings projectorBookings = bookings.get(fromProjectorID);
+                // start is never negative, so the packed values sort by start
+                Arrays.sort(projectorBookings.oneTime, 0, projectorBookings.oneTimeCount);
+                // straight into the projector's own indexes, loadData rebuilds the fleet summaries once all are done
+                IntervalIndex index = projectorAvailableTimeSlots.get(fromProjectorID);
+                for (int i = 0; i < projectorBookings.oneTimeCount; i++) {
+                    long booking = projectorBookings.oneTime[i];
+                    index.add((int) (booking >>> 32), (int) booking);
+                }
+                SeriesIndex seriesIndex = projectorRecurringSeries.get(fromProjectorID);
+                for (AllocatedTimeSlot allocatedTimeSlot : projectorBookings.recurring) {
+                    RecurringSeries series = getRecurringSeries(allocatedTimeSlot.getAllocatedID(), allocatedTimeSlot);
+                    if (series != null) seriesIndex.add(series);
+                }
+                return;
+            }
+            int middle = (fromProjectorID + toProjectorID) >>> 1;
+            invokeAll(new ProjectorLoadTask(bookings, fromProjectorID, middle),
+                    new ProjectorLoadTask(bookings, middle, toProjectorID));
+        }
+    }
+
+    /**
+     * Function to build an AllocatedTimeSlot from the current row of a time_slots, allocations join
+     * @param allocationID
+     * @param queryResult
+     * @return the allocated time slot
+     */
+    private static AllocatedTimeSlot readAllocatedTimeSlot(long allocationID, ResultSet queryResult) throws SQLException {
+        return new AllocatedTimeSlot(allocationID,
+                queryResult.getLong("projector_id"),
+                queryResult.getLong("time_slot_id"),
+                queryResult.getLong("team_id"),
+                Instant.ofEpochMilli(queryResult.getLong("start")),
+                Duration.ofMillis(queryResult.getLong("duration")),
+                Duration.ofMillis(queryResult.getLong("recur_every")),
+                Instant.ofEpochMilli(queryResult.getLong("end")));
+    }
+
     /**
      * Function to return AllocatedTimeSlot for the given allocation id
      * NOTE: Recurring meetings are identified by the time slot of their first occurence,
@@ -290,64 +1304,139 @@ public class ProjectorScheduler {
      * @return null if the record doesn't exist
      */
     private AllocatedTimeSlot getTimeSlotForAllocationID(long allocationID) throws SQLException {
-        String query = "SELECT * from time_slots, allocations " +
-                " WHERE allocations.id = " + allocationID +
-                " AND time_slots.id = allocations.time_slot_id";
-        AllocatedTimeSlot allocatedTimeSlot = null;
+        WriteBehindJournal journal = this.writeBehindJournal;
+        if (journal != null) {
+            // rows the journal hasn't applied yet
+            if (journal.isPendingDelete(allocationID)) return null;
+            AllocatedTimeSlot pendingTimeSlot = journal.getPendingInsert(allocationID);
+            if (pendingTimeSlot != null) return pendingTimeSlot;
+        }
         try {
-            ResultSet queryResult = DataBase.getInstance().query(query);
-            if (queryResult != null && queryResult.next()){
-                allocatedTimeSlot = new AllocatedTimeSlot(allocationID,
-                    queryResult.getLong("projector_id"),
-                    queryResult.getLong("time_slot_id"),
-                    queryResult.getLong("team_id"),
-                    Instant.ofEpochMilli(queryResult.getLong("start")),
-                    Duration.ofMillis(queryResult.getLong("duration")),
-                    Duration.ofMillis(queryResult.getLong("recur_every")),
-                    Instant.ofEpochMilli(queryResult.getLong("end")));
-            }
+            return DataBase.getInstance().query(ALLOCATION_QUERY,
+                    queryResult -> queryResult.next() ? readAllocatedTimeSlot(allocationID, queryResult) : null,
+                    allocationID);
         } catch (SQLException sqle) {
             appLogger.info("Caught SQL Exception: " + sqle.getMessage());
             throw new SQLException();
         }
-        return allocatedTimeSlot;
     }
 
     /**
      * Function to find the next available time slot when the projector can be scheduled
      * This function looks for next available start time within the given SUGGESTION_PERIOD_MINS,
      * which is currently set to 120 minutes, or 2 hours.
+     * Instead of probing every minute, each projector's index jumps straight to its earliest free gap
+     * that can hold the requested duration, and the earliest of those wins.
      * NOTE: Currently this function only handles non-recurring allocations.
      * For Recurring allocations, if they can't be allocated, No next available time is suggested
      * @param requestedTimeSlot
      * @return An AllocatedTimeSlot indicating the start time and duration of the next available time slot
      * @return null if no next time can be suggested
      */
-    private AllocatedTimeSlot getNextAvailableTimeSlot(TimeSlot requestedTimeSlot){
-        Instant suggestionIntervalEnd = requestedTimeSlot.getStartDateTime().plus(Duration.ofMinutes(SUGGESTION_PERIOD_MINS));
-        Instant meetingStart  = requestedTimeSlot.getStartDateTime();
-        while (meetingStart.isBefore(suggestionIntervalEnd)){
-            int allocatableProjectorID = getAvailableProjectorID(getMinuteOfYear(meetingStart),
-                    getMinuteOfYear(meetingStart.plus(requestedTimeSlot.getDuration())));
-            if (allocatableProjectorID != -1){
-                return new AllocatedTimeSlot(-1, allocatableProjectorID, -1, -1, meetingStart, requestedTimeSlot.getDuration(), requestedTimeSlot.getRecurInterval(), requestedTimeSlot.getRecurEndDateTime());
+    AllocatedTimeSlot getNextAvailableTimeSlot(TimeSlot requestedTimeSlot){
+        List<AllocatedTimeSlot> suggestions = getAlternativeTimeSlots(requestedTimeSlot, 1,
+                Duration.ofMinutes(SUGGESTION_PERIOD_MINS));
+        return suggestions.isEmpty() ? null : suggestions.get(0);
+    }
+
+    /**
+     * Function to find the k best alternative start times for a non-recurring request.
+     * Every free gap of every projector that can hold the requested duration is a candidate,
+     * candidates are returned in order of their start time (the closest to the requested start first),
+     * each start time is suggested only once, for the lowest projector id that is free at that time.
+     * The gaps are enumerated lazily with a priority queue holding the next candidate of each projector,
+     * so the cost depends on the number of gaps visited, not on the length of the search horizon.
+     * @param requestedTimeSlot : the requested (rejected) time slot
+     * @param count : maximum number of suggestions
+     * @param searchHorizon : suggestions have to start before requested start + searchHorizon
+     * @return suggested time slots, allocatedID is -1 for all of them
+     */
+    List<AllocatedTimeSlot> getAlternativeTimeSlots(TimeSlot requestedTimeSlot, int count, Duration searchHorizon){
+        List<AllocatedTimeSlot> suggestions = new ArrayList<>();
+        if (requestedTimeSlot == null || count <= 0) return suggestions;
+        Instant yearStartInstant = getStartOfYearEpochTime();
+        Instant requestedStart = requestedTimeSlot.getStartDateTime();
+        int startMinutes = getMinuteOfYear(yearStartInstant, requestedStart);
+        int durationMinutes = getMinuteOfYear(yearStartInstant, requestedStart.plus(requestedTimeSlot.getDuration())) - startMinutes;
+        long horizonEnd = startMinutes + searchHorizon.toMinutes();
+
+        long startNanos = System.nanoTime();
+        SchedulerEvents.SuggestionSearch event = new SchedulerEvents.SuggestionSearch();
+        event.begin();
+        int gapsVisited = 0;
+        fleetLock.readLock().lock();
+        lockAllProjectorsForReading();
+        try {
+            gapsVisited = collectAlternativeTimeSlots(requestedTimeSlot, count, startMinutes, durationMinutes, horizonEnd, suggestions);
+        } finally {
+            unlockAllProjectorsForReading();
+            fleetLock.readLock().unlock();
+            SUGGESTION_SEARCH_TIMER.record(System.nanoTime() - startNanos);
+            if (event.shouldCommit()) {
+                event.requestedDuration = requestedTimeSlot.getDuration().toMillis();
+                event.searchHorizon = searchHorizon.toMillis();
+                event.projectorsProbed = projectorCount;
+                event.gapsVisited = gapsVisited;
+                event.suggestions = suggestions.size();
+                event.commit();
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * @return number of gaps taken off the queue
+     */
+    private int collectAlternativeTimeSlots(TimeSlot requestedTimeSlot, int count, int startMinutes, int durationMinutes,
+                                            long horizonEnd, List<AllocatedTimeSlot> suggestions){
+        Instant requestedStart = requestedTimeSlot.getStartDateTime();
+        // each entry is {candidate start, projector id}, ordered by start and then by projector id
+        PriorityQueue<int[]> candidates = new PriorityQueue<>((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+        for (int i = 0; i < projectorCount; i++) {
+            int gapStart = getNextFreeStart(i, startMinutes, durationMinutes);
+            if (gapStart < horizonEnd) candidates.add(new int[]{gapStart, i});
+        }
+        int lastSuggestedStart = Integer.MIN_VALUE;
+        int gapsVisited = 0;
+        while (!candidates.isEmpty() && suggestions.size() < count) {
+            int[] candidate = candidates.poll();
+            gapsVisited++;
+            int gapStart = candidate[0];
+            int projectorID = candidate[1];
+            if (gapStart != lastSuggestedStart) {
+                suggestions.add(new AllocatedTimeSlot(-1, projectorID, -1, -1,
+                        requestedStart.plus(Duration.ofMinutes(gapStart - startMinutes)),
+                        requestedTimeSlot.getDuration(),
+                        requestedTimeSlot.getRecurInterval(),
+                        requestedTimeSlot.getRecurEndDateTime()));
+                lastSuggestedStart = gapStart;
+            }
+            // move this projector on to its next gap
+            int gapEnd = getNextBookedStart(projectorID, gapStart);
+            if (gapEnd == Integer.MAX_VALUE) continue;
+            int nextGapStart = getNextFreeStart(projectorID, gapEnd, durationMinutes);
+            if (nextGapStart < horizonEnd) {
+                candidate[0] = nextGapStart;
+                candidates.add(candidate);
             }
-            meetingStart = meetingStart.plus(Duration.ofMinutes(1));
         }
-        return null;
+        return gapsVisited;
     }
 
     private List<TimeSlot> getAllocatedTimeSlotsForProjector(int projectorID){
-        if (projectorID < 0 || projectorID >= PROJECTOR_COUNT) return null;
-        Set<Range<Integer>> ranges = projectorAvailableTimeSlots.get(projectorID).asRanges();
+        if (projectorID < 0 || projectorID >= projectorCount) return null;
+        // merge the one time bookings with the occurrences of the recurring ones, touching intervals are coalesced
+        IntervalIndex bookedTimeSlots = new SortedArrayIntervalIndex();
+        projectorAvailableTimeSlots.get(projectorID).forEachRange(bookedTimeSlots::add);
+        projectorRecurringSeries.get(projectorID).forEachOccurrence(bookedTimeSlots::add);
         List<TimeSlot> takenSlots = new ArrayList<>();
-        for(Range<Integer> range : ranges) {
-            TimeSlot takenSlot = new TimeSlot(getInstantForMinute(range.lowerEndpoint()),
-                    Duration.ofMinutes(range.upperEndpoint() - range.lowerEndpoint()),
+        bookedTimeSlots.forEachRange((start, end) -> {
+            TimeSlot takenSlot = new TimeSlot(getInstantForMinute(start),
+                    Duration.ofMinutes(end - start),
                     Duration.ZERO,
-                    getInstantForMinute(range.lowerEndpoint()));
+                    getInstantForMinute(start));
             takenSlots.add(takenSlot);
-        }
+        });
         return takenSlots;
     };
 
@@ -360,59 +1449,383 @@ public class ProjectorScheduler {
      */
     private AllocatedTimeSlot reserveProjector(TimeSlot requestedTimeSlot) throws SQLException{
         if (requestedTimeSlot == null) return null;
-        long allocatedProjectorId;
+        boolean isRecurring = !requestedTimeSlot.getRecurInterval().equals(Duration.ZERO);
 
+        fleetLock.readLock().lock();
+        try {
+            // Optimistic allocation: find a projector without blocking other writers,
+            // then lock only that projector and check again that it is still free before committing.
+            while (true) {
+                int allocatedProjectorId;
+                if (!isRecurring) {
+                    allocatedProjectorId = getAvailableProjectorID(requestedTimeSlot);
+                } else {
+                    allocatedProjectorId = getAvailableProjectorIDForRecurringMeeting(requestedTimeSlot);
+                }
+                if (allocatedProjectorId == -1) return null;
+
+                Lock projectorLock = projectorLocks.get(allocatedProjectorId).writeLock();
+                projectorLock.lock();
+                try {
+                    if (isProjectorStillFree(requestedTimeSlot, allocatedProjectorId)) {
+                        return commitReservation(requestedTimeSlot, allocatedProjectorId);
+                    }
+                    // somebody else took the projector in the meantime, look again
+                } finally {
+                    projectorLock.unlock();
+                }
+            }
+        } finally {
+            fleetLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Function to validate a projector picked without holding its lock
+     * Must be called while holding the write lock of the projector.
+     * @param requestedTimeSlot
+     * @param projectorID
+     * @return true if the projector can still take the requested time slot
+     */
+    private boolean isProjectorStillFree(TimeSlot requestedTimeSlot, int projectorID){
         if (requestedTimeSlot.getRecurInterval().equals(Duration.ZERO)) {
-            allocatedProjectorId = getAvailableProjectorID(requestedTimeSlot);
-        } else {
-            allocatedProjectorId = getAvailableProjectorIDForRecurringMeeting(requestedTimeSlot);
+            int startMinutes = getMinuteOfYear(requestedTimeSlot.getStartDateTime());
+            int endMinutes = getMinuteOfYear(requestedTimeSlot.getStartDateTime().plus(requestedTimeSlot.getDuration()));
+            return isProjectorFree(projectorID, startMinutes, endMinutes);
         }
+        RecurringSeries series = getRecurringSeries(-1, requestedTimeSlot);
+        return series != null && isProjectorFree(projectorID, series, null);
+    }
 
-        if (allocatedProjectorId != - 1) {
+    /**
+     * Function to mark the projector as taken and record the allocation in the data base
+     * Must be called while holding the write lock of the projector.
+     * @param requestedTimeSlot
+     * @param allocatedProjectorId
+     * @return the allocated time slot
+     */
+    private AllocatedTimeSlot commitReservation(TimeSlot requestedTimeSlot, long allocatedProjectorId) throws SQLException{
+        boolean isRecurring = !requestedTimeSlot.getRecurInterval().equals(Duration.ZERO);
+        // recurring meetings are added to the series index once their allocation id is known
+        if (!isRecurring) {
             scheduleProjector(requestedTimeSlot, (int) allocatedProjectorId);
-            try {
+        }
+        WriteBehindJournal journal = this.writeBehindJournal;
+        // journal records only need the projector's lock, the applier is the one data base writer then
+        boolean lockDataBase = journal == null;
+        if (lockDataBase) dataBaseLock.lock();
+        long startNanos = System.nanoTime();
+        try {
+            // both rows go in with one commit, the ids come back as generated keys
+            AllocatedTimeSlot allocatedTimeSlot = atomically(() -> {
+                if (journal != null) {
+                    // write-behind: the ids are handed out here and the rows are written later
+                    AllocatedTimeSlot journaledTimeSlot = toAllocatedTimeSlot(journal.nextAllocationID(),
+                            allocatedProjectorId, journal.nextTimeSlotID(), requestedTimeSlot);
+                    journal.recordInsert(journaledTimeSlot);
+                    return journaledTimeSlot;
+                }
                 //First column is the id, sqlite db will auto increment it so passing null
-                String query = "INSERT INTO time_slots values(NULL, " +
-                        requestedTimeSlot.getStartDateTime().toEpochMilli() + " , " +
-                        requestedTimeSlot.getDuration().toMillis() + " , " +
-                        requestedTimeSlot.getRecurInterval().toMillis() + " , " +
-                        requestedTimeSlot.getRecurEndDateTime().toEpochMilli() +
-                        ");";
-                DataBase.getInstance().query(query);
+                long timeSlotID = DataBase.getInstance().insert("INSERT INTO time_slots values(NULL, ?, ?, ?, ?)",
+                        requestedTimeSlot.getStartDateTime().toEpochMilli(),
+                        requestedTimeSlot.getDuration().toMillis(),
+                        requestedTimeSlot.getRecurInterval().toMillis(),
+                        requestedTimeSlot.getRecurEndDateTime().toEpochMilli());
 
-                ResultSet queryResult = DataBase.getInstance().query("SELECT max(id) AS id FROM time_slots;");
+                //First columns is the id, sqlite db will auto increment it so passing null
+                long allocationID = DataBase.getInstance().insert("INSERT INTO allocations values(NULL, ?, ?, ?)",
+                        allocatedProjectorId,
+                        timeSlotID,
+                        requestedTimeSlot.getTeamID());
 
-                int timeSlotID = queryResult.getInt("id");
+                return toAllocatedTimeSlot(allocationID, allocatedProjectorId, timeSlotID, requestedTimeSlot);
+            });
+            // if this is recurring meeting, let our data structure reflect that
+            if (isRecurring) {
+                scheduleProjectorForRecurringMeeting(allocatedTimeSlot);
+            }
+            return allocatedTimeSlot;
+        } catch (SQLException sqle) {
+            appLogger.info("SQL Exception: " + sqle.getMessage());
+            // the allocation didn't make it to the data base, give the time back
+            if (!isRecurring) {
+                cancelProjector(requestedTimeSlot, (int) allocatedProjectorId);
+            }
+            throw new SQLException();
+        } finally {
+            DB_WRITE_TIMER.record(System.nanoTime() - startNanos);
+            if (lockDataBase) dataBaseLock.unlock();
+        }
+    }
 
-                //First columns is the id, sqlite db will auto increment it so passing null
-                query = "INSERT INTO allocations values(NULL, " +
-                        allocatedProjectorId + " , " +
-                        timeSlotID + " , " +
-                        requestedTimeSlot.getTeamID() +
-                        " );";
+    /**
+     * Function to build the allocation for a request without reading it back, the data base keeps milliseconds
+     * @param allocationID
+     * @param projectorID
+     * @param timeSlotID
+     * @param requestedTimeSlot
+     * @return the same values as reading the rows back
+     */
+    private static AllocatedTimeSlot toAllocatedTimeSlot(long allocationID, long projectorID, long timeSlotID,
+                                                         TimeSlot requestedTimeSlot) {
+        return new AllocatedTimeSlot(allocationID,
+                projectorID,
+                timeSlotID,
+                requestedTimeSlot.getTeamID(),
+                Instant.ofEpochMilli(requestedTimeSlot.getStartDateTime().toEpochMilli()),
+                Duration.ofMillis(requestedTimeSlot.getDuration().toMillis()),
+                Duration.ofMillis(requestedTimeSlot.getRecurInterval().toMillis()),
+                Instant.ofEpochMilli(requestedTimeSlot.getRecurEndDateTime().toEpochMilli()));
+    }
+
+    /**
+     * Function to run data base writes together, as one transaction or as one journal record in write-behind mode
+     * @param body
+     * @return whatever the body returned
+     */
+    private <T> T atomically(DataBase.TransactionBody<T> body) throws SQLException {
+        WriteBehindJournal journal = this.writeBehindJournal;
+        if (journal != null) return journal.inGroup(body);
+        return DataBase.getInstance().inTransaction(body);
+    }
 
-                DataBase.getInstance().query(query);
+    /**
+     * Function to wait until the calling thread's write-behind journal records are on disk
+     */
+    private void syncJournal() throws SQLException {
+        WriteBehindJournal journal = this.writeBehindJournal;
+        if (journal != null) journal.sync();
+    }
 
-                queryResult = DataBase.getInstance().query("SELECT max(id) AS id FROM allocations;");
+    List<TimeSlot> getProjectorSchedule(int projectorID){
+        if (projectorID < 0 || projectorID >= projectorCount) return null;
+        fleetLock.readLock().lock();
+        Lock projectorLock = projectorLocks.get(projectorID).readLock();
+        projectorLock.lock();
+        try {
+            return getAllocatedTimeSlotsForProjector(projectorID);
+        } finally {
+            projectorLock.unlock();
+            fleetLock.readLock().unlock();
+        }
+    }
 
-                int allocationID = queryResult.getInt("id");
+    /**
+     * Function to read the version of a projector's schedule, without taking any lock
+     * The version changes after every booking or cancellation of the projector, so a schedule read while the version
+     * stayed the same is still current. Versions start again from 0 with every scheduler instance.
+     * @param projectorID
+     * @return the version
+     */
+    long getScheduleVersion(int projectorID) {
+        if (projectorID < 0 || projectorID >= projectorCount) throw new IllegalArgumentException("No projector " + projectorID);
+        return scheduleVersions.get(projectorID);
+    }
 
-                AllocatedTimeSlot allocatedTimeSlot = getTimeSlotForAllocationID(allocationID);
-                // if this is recurring meeting, let our data structure reflect that
-                if (!requestedTimeSlot.getRecurInterval().equals(Duration.ZERO)) {
-                    scheduleProjectorForRecurringMeeting(allocatedTimeSlot);
-                }
-                return allocatedTimeSlot;
-            } catch (SQLException sqle) {
-                appLogger.info("SQL Exception: " + sqle.getMessage());
-                throw new SQLException();
+    /**
+     * Receives the booked time of a projector one merged block at a time, see writeProjectorSchedule
+     */
+    interface TimeSlotWriter {
+        void write(Instant start, Duration duration) throws IOException;
+    }
+
+    /**
+     * Function to hand a projector's booked time within [from, to) to a writer, merged and in ascending order
+     * Blocks are found by seeking through the indexes, nothing is built for the rest of the year.
+     * They are copied out a chunk at a time under the projector's read lock and written without holding it,
+     * so memory doesn't grow with the length of the schedule and a slow writer doesn't hold up bookings.
+     * Blocks are cut at from and to.
+     * @param projectorID
+     * @param from : start of the range, moved to the start of the year if earlier, null for the start of the year
+     * @param to : end of the range, moved to the end of the year if later, null for the end of the year
+     * @param limit : most blocks to write
+     * @param writer
+     * @return where to continue from if the limit was reached before the end of the range, null otherwise
+     */
+    Instant writeProjectorSchedule(int projectorID, Instant from, Instant to, int limit, TimeSlotWriter writer) throws IOException {
+        if (projectorID < 0 || projectorID >= projectorCount) throw new IllegalArgumentException("No projector " + projectorID);
+        Instant yearStartInstant = getStartOfYearEpochTime();
+        int position = from == null ? 0 : getMinuteOfYearWithin(yearStartInstant, from);
+        int toMinute = to == null ? MINUTES_IN_A_YEAR : getMinuteOfYearWithin(yearStartInstant, to);
+        int[] blocks = new int[2 * STATUS_CHUNK_BLOCKS];
+        int written = 0;
+        while (written < limit) {
+            int count;
+            fleetLock.readLock().lock();
+            Lock projectorLock = projectorLocks.get(projectorID).readLock();
+            projectorLock.lock();
+            try {
+                count = copyBookedBlocks(projectorID, position, toMinute, blocks, Math.min(STATUS_CHUNK_BLOCKS, limit - written));
+            } finally {
+                projectorLock.unlock();
+                fleetLock.readLock().unlock();
+            }
+            for (int i = 0; i < count; i++) {
+                writer.write(yearStartInstant.plus(Duration.ofMinutes(blocks[2 * i])),
+                        Duration.ofMinutes(blocks[2 * i + 1] - blocks[2 * i]));
             }
+            written += count;
+            if (count == 0) return null;
+            position = blocks[2 * count - 1];
+            if (position >= toMinute) return null;
         }
-        return null;
+        // only hand out a cursor if there is something after it
+        fleetLock.readLock().lock();
+        Lock projectorLock = projectorLocks.get(projectorID).readLock();
+        projectorLock.lock();
+        try {
+            if (copyBookedBlocks(projectorID, position, toMinute, blocks, 1) == 0) return null;
+        } finally {
+            projectorLock.unlock();
+            fleetLock.readLock().unlock();
+        }
+        return yearStartInstant.plus(Duration.ofMinutes(position));
     }
 
-    List<TimeSlot> getProjectorSchedule(int projectorID){
-        return getAllocatedTimeSlotsForProjector(projectorID);
+    /**
+     * Function to copy the booked blocks of a projector that start before toMinute, one time bookings and
+     * occurrences of recurring ones merged. Must be called while holding the read lock of the projector.
+     * @param projectorID
+     * @param fromMinute : blocks that started earlier are cut here
+     * @param toMinute : blocks that end later are cut here
+     * @param blocks : receives start/end pairs
+     * @param maxBlocks : most blocks to copy
+     * @return number of blocks copied
+     */
+    private int copyBookedBlocks(int projectorID, int fromMinute, int toMinute, int[] blocks, int maxBlocks) {
+        IntervalIndex index = projectorAvailableTimeSlots.get(projectorID);
+        SeriesIndex seriesIndex = projectorRecurringSeries.get(projectorID);
+        int count = 0;
+        int position = fromMinute;
+        while (count < maxBlocks) {
+            int start = Math.min(index.nextBookedStart(position), seriesIndex.nextBookedStart(position));
+            if (start >= toMinute) break;
+            // the block goes on until neither the index nor any series has the next minute booked
+            int end = start;
+            while (true) {
+                int indexFree = index.nextFreeStart(end, 1);
+                int free = seriesIndex.nextFreeStart(indexFree, 1);
+                end = free;
+                if (free == indexFree) break;
+            }
+            blocks[2 * count] = start;
+            blocks[2 * count + 1] = Math.min(end, toMinute);
+            count++;
+            position = end;
+        }
+        return count;
+    }
+
+    /**
+     * A window of time in which at least one projector is free, see getFreeWindows
+     */
+    static class FreeWindow {
+        private final Instant start;
+        private final Instant end;
+        private final BitSet projectorIDs;
+
+        FreeWindow(Instant start, Instant end, BitSet projectorIDs) {
+            this.start = start;
+            this.end = end;
+            this.projectorIDs = projectorIDs;
+        }
+
+        Instant getStart() {
+            return start;
+        }
+
+        Instant getEnd() {
+            return end;
+        }
+
+        /**
+         * @return ids of the projectors with a free gap of at least the asked duration inside the window
+         */
+        BitSet getProjectorIDs() {
+            return projectorIDs;
+        }
+    }
+
+    /**
+     * Function to find when any projector is free for at least the given duration within [from, to)
+     * The free gaps of every projector that can hold minDuration are walked together in order of their start,
+     * with a priority queue holding the next gap of each projector, like getAlternativeTimeSlots does.
+     * Overlapping and touching gaps are merged into one window, so the windows are disjoint and in ascending order.
+     * Gaps are cut at from and to.
+     * @param from : start of the range, moved to the start of the year if earlier
+     * @param to : end of the range, moved to the end of the year if later
+     * @param minDuration : shortest gap worth reporting
+     * @return free windows, each with the projectors that are free for minDuration inside it
+     */
+    List<FreeWindow> getFreeWindows(Instant from, Instant to, Duration minDuration){
+        List<FreeWindow> windows = new ArrayList<>();
+        Instant yearStartInstant = getStartOfYearEpochTime();
+        int fromMinute = getMinuteOfYearWithin(yearStartInstant, from);
+        int toMinute = getMinuteOfYearWithin(yearStartInstant, to);
+        int lengthMinutes = (int)Math.max(1, (minDuration.toMillis() + 59999) / 60000);
+        if (fromMinute + lengthMinutes > toMinute) return windows;
+
+        fleetLock.readLock().lock();
+        lockAllProjectorsForReading();
+        try {
+            collectFreeWindows(yearStartInstant, fromMinute, toMinute, lengthMinutes, windows);
+        } finally {
+            unlockAllProjectorsForReading();
+            fleetLock.readLock().unlock();
+        }
+        return windows;
+    }
+
+    private void collectFreeWindows(Instant yearStartInstant, int fromMinute, int toMinute, int lengthMinutes,
+                                    List<FreeWindow> windows){
+        // each entry is {gap start, gap end, projector id}, ordered by start
+        PriorityQueue<int[]> gaps = new PriorityQueue<>((a, b) -> Integer.compare(a[0], b[0]));
+        for (int i = 0; i < projectorCount; i++) {
+            int[] gap = nextFreeGap(i, fromMinute, toMinute, lengthMinutes);
+            if (gap != null) gaps.add(gap);
+        }
+        int windowStart = -1;
+        int windowEnd = -1;
+        BitSet windowProjectors = null;
+        while (!gaps.isEmpty()) {
+            int[] gap = gaps.poll();
+            if (windowProjectors != null && gap[0] > windowEnd) {
+                windows.add(new FreeWindow(yearStartInstant.plus(Duration.ofMinutes(windowStart)),
+                        yearStartInstant.plus(Duration.ofMinutes(windowEnd)), windowProjectors));
+                windowProjectors = null;
+            }
+            if (windowProjectors == null) {
+                windowStart = gap[0];
+                windowEnd = gap[1];
+                windowProjectors = new BitSet(projectorCount);
+            } else {
+                windowEnd = Math.max(windowEnd, gap[1]);
+            }
+            windowProjectors.set(gap[2]);
+            // move this projector on to its next gap
+            int[] nextGap = nextFreeGap(gap[2], gap[1], toMinute, lengthMinutes);
+            if (nextGap != null) gaps.add(nextGap);
+        }
+        if (windowProjectors != null) {
+            windows.add(new FreeWindow(yearStartInstant.plus(Duration.ofMinutes(windowStart)),
+                    yearStartInstant.plus(Duration.ofMinutes(windowEnd)), windowProjectors));
+        }
+    }
+
+    /**
+     * Function to find the next free gap of a projector that can hold the given length before toMinute
+     * @param projectorID
+     * @param fromMinute : earliest start of the gap, a gap containing fromMinute is cut here
+     * @param toMinute : gaps are cut here
+     * @param lengthMinutes : shortest gap to return
+     * @return {gap start, gap end, projector id}, null if there is none
+     */
+    private int[] nextFreeGap(int projectorID, int fromMinute, int toMinute, int lengthMinutes){
+        if (fromMinute >= toMinute) return null;
+        int gapStart = getNextFreeStart(projectorID, fromMinute, lengthMinutes);
+        if (gapStart > toMinute - lengthMinutes) return null;
+        int gapEnd = Math.min(getNextBookedStart(projectorID, gapStart), toMinute);
+        return new int[]{gapStart, gapEnd, projectorID};
     }
 
     /**
@@ -422,15 +1835,112 @@ public class ProjectorScheduler {
      *          null if a projector could not be reserved and no next available time can be suggested
      */
     AllocatedTimeSlot requestProjector(TimeSlot requestedTimeSlot) throws SQLException{
+        SchedulerCommandPipeline pipeline = this.pipeline;
+        if (pipeline != null) return pipeline.requestProjector(requestedTimeSlot);
+        return requestProjectorDirect(requestedTimeSlot);
+    }
+
+    /**
+     * Function to allocate a projector on the calling thread
+     * @param requestedTimeSlot
+     * @return see requestProjector
+     */
+    AllocatedTimeSlot requestProjectorDirect(TimeSlot requestedTimeSlot) throws SQLException{
+        SchedulerEvents.Request event = new SchedulerEvents.Request();
+        event.begin();
         AllocatedTimeSlot allocatedTimeSlot = reserveProjector(requestedTimeSlot);
+        boolean suggested = false;
         // if a time slot could not be allocated and the request is not recurring
         if (allocatedTimeSlot == null && requestedTimeSlot.getRecurInterval().equals(Duration.ZERO)){
             // get next available time
             allocatedTimeSlot = getNextAvailableTimeSlot(requestedTimeSlot);
+            suggested = allocatedTimeSlot != null;
+        }
+        syncJournal();
+        if (event.shouldCommit()) {
+            event.requestedDuration = requestedTimeSlot.getDuration().toMillis();
+            event.recurInterval = requestedTimeSlot.getRecurInterval().toMillis();
+            event.projectorID = allocatedTimeSlot == null || suggested ? -1 : (int) allocatedTimeSlot.getProjectorID();
+            event.suggested = suggested;
+            event.commit();
         }
         return allocatedTimeSlot;
     }
 
+    /**
+     * Entry point for POST request to allocate projectors for many time slots at once
+     * @param requestedTimeSlots
+     * @param tightestFirst : place the requests that book the most minutes first, instead of in the given order
+     * @return one result per request, in the order of the requests, each as returned by requestProjector
+     */
+    List<AllocatedTimeSlot> requestProjectors(List<TimeSlot> requestedTimeSlots, boolean tightestFirst) throws SQLException{
+        SchedulerCommandPipeline pipeline = this.pipeline;
+        if (pipeline != null) return pipeline.requestProjectors(requestedTimeSlots, tightestFirst);
+        return requestProjectorsDirect(requestedTimeSlots, tightestFirst);
+    }
+
+    /**
+     * Function to allocate projectors for many time slots on the calling thread
+     * All the requests are committed in one transaction (one journal record in write-behind mode),
+     * if the commit fails none of them is booked. In write-behind and pipeline mode no other thread writes to the
+     * data base meanwhile, so every request locks only its projector, like a single booking. With the data base
+     * written directly the transaction would hold SQLite's write lock while other bookings wait for it holding
+     * their projector's lock, so the requests are placed under the exclusive fleet lock instead.
+     * Suggestions for the requests that couldn't be placed are searched once the batch is committed.
+     * @param requestedTimeSlots
+     * @param tightestFirst
+     * @return see requestProjectors
+     */
+    List<AllocatedTimeSlot> requestProjectorsDirect(List<TimeSlot> requestedTimeSlots, boolean tightestFirst) throws SQLException{
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < requestedTimeSlots.size(); i++) order.add(i);
+        if (tightestFirst) {
+            // like first fit decreasing, long and recurring bookings are the hardest to fit in later
+            long[] bookedMinutes = new long[requestedTimeSlots.size()];
+            for (int i = 0; i < bookedMinutes.length; i++) bookedMinutes[i] = getBookedMinutes(requestedTimeSlots.get(i));
+            order.sort((a, b) -> Long.compare(bookedMinutes[b], bookedMinutes[a]));
+        }
+        List<AllocatedTimeSlot> results = new ArrayList<>(Collections.nCopies(requestedTimeSlots.size(), null));
+        List<AllocatedTimeSlot> reserved = new ArrayList<>();
+        boolean exclusive = writeBehindJournal == null && pipeline == null;
+        if (exclusive) fleetLock.writeLock().lock();
+        try {
+            atomically(() -> {
+                for (int i : order) {
+                    AllocatedTimeSlot allocatedTimeSlot = reserveProjector(requestedTimeSlots.get(i));
+                    if (allocatedTimeSlot != null) reserved.add(allocatedTimeSlot);
+                    results.set(i, allocatedTimeSlot);
+                }
+                return null;
+            });
+        } catch (SQLException sqle) {
+            // the data base has none of the batch, do the same for the indexes
+            for (AllocatedTimeSlot allocatedTimeSlot : reserved) releaseInMemory(allocatedTimeSlot);
+            throw sqle;
+        } finally {
+            if (exclusive) fleetLock.writeLock().unlock();
+        }
+        syncJournal();
+        for (int i = 0; i < results.size(); i++) {
+            TimeSlot requestedTimeSlot = requestedTimeSlots.get(i);
+            if (results.get(i) == null && requestedTimeSlot.getRecurInterval().equals(Duration.ZERO)) {
+                results.set(i, getNextAvailableTimeSlot(requestedTimeSlot));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Function to measure how much of the time-axis a request would take
+     * @param requestedTimeSlot
+     * @return minutes booked by the request in the current year, every occurrence counted for recurring meetings
+     */
+    private long getBookedMinutes(TimeSlot requestedTimeSlot){
+        if (requestedTimeSlot.getRecurInterval().equals(Duration.ZERO)) return requestedTimeSlot.getDuration().toMinutes();
+        RecurringSeries series = getRecurringSeries(-1, requestedTimeSlot);
+        return series == null ? 0 : (long) series.getDuration() * series.getCount();
+    }
+
     /**
      * Entry point to DELETE request to delete a previously scheduled projector allocation
      * @param allocationId
@@ -438,21 +1948,64 @@ public class ProjectorScheduler {
      * @return false if no such allocation existed
      */
     boolean deleteProjector(long allocationId) throws SQLException{
-        AllocatedTimeSlot allocatedTimeSlot = getTimeSlotForAllocationID(allocationId);
-        if (allocatedTimeSlot != null){
-            if (allocatedTimeSlot.getRecurInterval().equals(Duration.ZERO))
-                cancelProjector(allocatedTimeSlot, (int)allocatedTimeSlot.getProjectorID());
-            else
-                cancelProjectorRecurring(allocatedTimeSlot, (int)allocatedTimeSlot.getProjectorID());
-            // Update datebase
-            String query = "DELETE FROM allocations WHERE id = " + allocatedTimeSlot.getAllocatedID() + ";";
-            DataBase.getInstance().query(query);
-
-            query = "DELETE FROM time_slots WHERE id = " + allocatedTimeSlot.getTimeSlotID();
-            DataBase.getInstance().query(query);
-            return true;
+        SchedulerCommandPipeline pipeline = this.pipeline;
+        if (pipeline != null) return pipeline.deleteProjector(allocationId);
+        return deleteProjectorDirect(allocationId);
+    }
+
+    /**
+     * Function to delete an allocation on the calling thread
+     * @param allocationId
+     * @return see deleteProjector
+     */
+    boolean deleteProjectorDirect(long allocationId) throws SQLException{
+        fleetLock.readLock().lock();
+        try {
+            AllocatedTimeSlot allocatedTimeSlot = getTimeSlotForAllocationID(allocationId);
+            if (allocatedTimeSlot == null) return false;
+            int projectorID = (int)allocatedTimeSlot.getProjectorID();
+            if (projectorID < 0 || projectorID >= projectorCount) return false;
+
+            Lock projectorLock = projectorLocks.get(projectorID).writeLock();
+            projectorLock.lock();
+            try {
+                // Update datebase
+                // a concurrent delete of the same allocation finds no row here and frees nothing
+                WriteBehindJournal journal = this.writeBehindJournal;
+                boolean deleted;
+                boolean lockDataBase = journal == null;
+                if (lockDataBase) dataBaseLock.lock();
+                long startNanos = System.nanoTime();
+                try {
+                    deleted = atomically(() -> {
+                        if (journal != null) {
+                            if (getTimeSlotForAllocationID(allocationId) == null) return false;
+                            journal.recordDelete(allocatedTimeSlot);
+                            return true;
+                        }
+                        int deletedRows = DataBase.getInstance().update(DELETE_ALLOCATION,
+                                allocatedTimeSlot.getAllocatedID(),
+                                allocatedTimeSlot.getProjectorID(),
+                                allocatedTimeSlot.getTimeSlotID());
+                        if (deletedRows == 0) return false;
+                        DataBase.getInstance().update("DELETE FROM time_slots WHERE id = ?",
+                                allocatedTimeSlot.getTimeSlotID());
+                        return true;
+                    });
+                } finally {
+                    DB_WRITE_TIMER.record(System.nanoTime() - startNanos);
+                    if (lockDataBase) dataBaseLock.unlock();
+                }
+                if (!deleted) return false;
+                releaseInMemory(allocatedTimeSlot);
+            } finally {
+                projectorLock.unlock();
+            }
+        } finally {
+            fleetLock.readLock().unlock();
         }
-        return false;
+        syncJournal();
+        return true;
     }
 
     /**
@@ -464,17 +2017,76 @@ public class ProjectorScheduler {
      *          null if doesn't exist
      */
     AllocatedTimeSlot updateProjector(long allocationID, TimeSlot allocatedTimeSlot) throws SQLException{
-        // Delete the original entry - if it exists
-        AllocatedTimeSlot oldAllocatedTimeSlot = getTimeSlotForAllocationID(allocationID);
-        if (!deleteProjector(allocationID)) return null;
-        // Allocate new
-        AllocatedTimeSlot reservedTimeSlot = reserveProjector(allocatedTimeSlot);
-        if(reservedTimeSlot != null){
-            return reservedTimeSlot;
-        } else {
-            // if it can't be allocated reschedule the original one - return
-            reserveProjector(oldAllocatedTimeSlot);
-            return null;
+        SchedulerCommandPipeline pipeline = this.pipeline;
+        if (pipeline != null) return pipeline.updateProjector(allocationID, allocatedTimeSlot);
+        return updateProjectorDirect(allocationID, allocatedTimeSlot);
+    }
+
+    /**
+     * Function to update an allocation on the calling thread
+     * @param allocationID
+     * @param allocatedTimeSlot
+     * @return see updateProjector
+     */
+    AllocatedTimeSlot updateProjectorDirect(long allocationID, TimeSlot allocatedTimeSlot) throws SQLException{
+        // The delete and the re-reservation happen under the exclusive fleet lock,
+        // nobody can take the freed time or observe the schedule in between.
+        AllocatedTimeSlot updatedTimeSlot;
+        fleetLock.writeLock().lock();
+        try {
+            // Delete the original entry - if it exists
+            AllocatedTimeSlot oldAllocatedTimeSlot = getTimeSlotForAllocationID(allocationID);
+            if (oldAllocatedTimeSlot == null) return null;
+            // The delete and the new reservation (or the restored original) are committed together
+            final boolean[] deleted = {false};
+            final AllocatedTimeSlot[] reserved = {null};
+            try {
+                updatedTimeSlot = atomically(() -> {
+                    if (!deleteProjectorDirect(allocationID)) return null;
+                    deleted[0] = true;
+                    // Allocate new
+                    reserved[0] = reserveProjector(allocatedTimeSlot);
+                    if (reserved[0] != null) {
+                        return reserved[0];
+                    } else {
+                        // if it can't be allocated reschedule the original one - return
+                        reserved[0] = reserveProjector(oldAllocatedTimeSlot);
+                        return null;
+                    }
+                });
+            } catch (SQLException sqle) {
+                // the data base is back to where it was, do the same for the indexes
+                if (reserved[0] != null) releaseInMemory(reserved[0]);
+                if (deleted[0]) restoreInMemory(oldAllocatedTimeSlot);
+                throw sqle;
+            }
+        } finally {
+            fleetLock.writeLock().unlock();
         }
+        syncJournal();
+        return updatedTimeSlot;
+    }
+
+    /**
+     * Function to take an allocation out of the in-memory indexes only
+     * @param allocatedTimeSlot
+     */
+    private void releaseInMemory(AllocatedTimeSlot allocatedTimeSlot) {
+        int projectorID = (int) allocatedTimeSlot.getProjectorID();
+        if (allocatedTimeSlot.getRecurInterval().equals(Duration.ZERO))
+            cancelProjector(allocatedTimeSlot, projectorID);
+        else
+            cancelProjectorRecurring(allocatedTimeSlot, projectorID);
+    }
+
+    /**
+     * Function to put an allocation back into the in-memory indexes only
+     * @param allocatedTimeSlot
+     */
+    void restoreInMemory(AllocatedTimeSlot allocatedTimeSlot) {
+        if (allocatedTimeSlot.getRecurInterval().equals(Duration.ZERO))
+            scheduleProjector(allocatedTimeSlot, (int) allocatedTimeSlot.getProjectorID());
+        else
+            scheduleProjectorForRecurringMeeting(allocatedTimeSlot);
     }
 }
@@ -0,0 +1,63 @@
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+
+// IntervalIndex backed by Guava's TreeRangeSet (Interval Tree).
+// This is the original implementation of the scheduler, kept around so it can be compared against the others.
+public class RangeSetIntervalIndex implements IntervalIndex {
+    private final RangeSet<Integer> rangeSet = TreeRangeSet.create();
+
+    @Override
+    public boolean intersects(int start, int end) {
+        return rangeSet.intersects(Range.closedOpen(start, end));
+    }
+
+    @Override
+    public void add(int start, int end) {
+        rangeSet.add(Range.closedOpen(start, end));
+    }
+
+    @Override
+    public void remove(int start, int end) {
+        rangeSet.remove(Range.closedOpen(start, end));
+    }
+
+    @Override
+    public int nextFreeStart(int from, int length) {
+        if (length <= 0) return from;
+        int start = from;
+        for (Range<Integer> range : rangeSet.subRangeSet(Range.atLeast(from)).asRanges()) {
+            if (range.lowerEndpoint() >= start + length) break;
+            start = Math.max(start, range.upperEndpoint());
+        }
+        return start;
+    }
+
+    @Override
+    public int nextBookedStart(int from) {
+        for (Range<Integer> range : rangeSet.subRangeSet(Range.atLeast(from)).asRanges()) {
+            if (!range.isEmpty()) return range.lowerEndpoint();
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int previousBookedEnd(int to) {
+        for (Range<Integer> range : rangeSet.subRangeSet(Range.lessThan(to)).asDescendingSetOfRanges()) {
+            if (!range.isEmpty()) return range.upperEndpoint();
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    @Override
+    public int rangeCount() {
+        return rangeSet.asRanges().size();
+    }
+
+    @Override
+    public void forEachRange(RangeConsumer consumer) {
+        for (Range<Integer> range : rangeSet.asRanges()) {
+            consumer.accept(range.lowerEndpoint(), range.upperEndpoint());
+        }
+    }
+}
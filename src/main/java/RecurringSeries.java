@@ -0,0 +1,120 @@
+// A recurring booking kept as an arithmetic progression on the time-axis instead of one interval per occurrence.
+// Occurrence k (0 <= k < count) covers [start + k * interval, start + k * interval + duration), all values in minutes.
+// Conflict checks against an interval or against another series are done arithmetically,
+// so the cost of a series doesn't depend on how many times it occurs.
+public class RecurringSeries {
+    private final long allocationID;
+    private final int start;
+    private final int duration;
+    private final int interval;
+    private final int count;
+
+    /**
+     * @param allocationID : allocation this series belongs to, -1 for a series that is only being checked
+     * @param start : start of the first occurrence, minute of year
+     * @param duration : duration of every occurrence in minutes
+     * @param interval : minutes between the starts of two consecutive occurrences, > 0
+     * @param count : number of occurrences
+     */
+    public RecurringSeries(long allocationID, int start, int duration, int interval, int count) {
+        if (interval <= 0) throw new IllegalArgumentException("Invalid recurrence interval " + interval);
+        this.allocationID = allocationID;
+        this.start = start;
+        this.duration = duration;
+        this.interval = interval;
+        this.count = count;
+    }
+
+    public long getAllocationID() {
+        return allocationID;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getDuration() {
+        return duration;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getOccurrenceStart(int k) {
+        return start + k * interval;
+    }
+
+    /**
+     * Function to walk the minutes covered by the occurrences, each minute once
+     * With a duration longer than the interval occurrences overlap, each is then cut at the start of the next one.
+     * @param consumer : receives start and end of every occurrence, as cut
+     */
+    public void forEachCoveredRange(IntervalIndex.RangeConsumer consumer) {
+        if (duration <= 0) return;
+        for (int k = 0; k < count; k++) {
+            int occurrenceStart = getOccurrenceStart(k);
+            int occurrenceEnd = occurrenceStart + duration;
+            consumer.accept(occurrenceStart, k + 1 < count ? Math.min(occurrenceEnd, occurrenceStart + interval) : occurrenceEnd);
+        }
+    }
+
+    /**
+     * Function to find the first occurrence overlapping [from, to)
+     * @param from : interval start (inclusive)
+     * @param to : interval end (exclusive)
+     * @return index of the first overlapping occurrence, -1 if no occurrence overlaps
+     */
+    public int firstOverlapping(int from, int to) {
+        if (from >= to || duration <= 0 || count <= 0) return -1;
+        // occurrence k overlaps iff start + k * interval < to and start + k * interval + duration > from
+        long first = Math.floorDiv((long) from - duration - start, interval) + 1;
+        long last = Math.floorDiv((long) to - 1 - start, interval);
+        first = Math.max(first, 0);
+        last = Math.min(last, count - 1);
+        return first <= last ? (int) first : -1;
+    }
+
+    public boolean intersects(int from, int to) {
+        return firstOverlapping(from, to) != -1;
+    }
+
+    /**
+     * Function to check if any occurrence of this series overlaps any occurrence of the other series.
+     * Occurrences i and j overlap iff the start of j minus the start of i lies in (-other.duration, duration).
+     * All such distances are congruent to (other.start - start) modulo gcd(interval, other.interval),
+     * so if no value in that window has the right residue the two series can never meet.
+     * Otherwise the series with fewer occurrences is walked and each occurrence is checked in constant time.
+     * @param other
+     * @return true if the two series overlap
+     */
+    public boolean intersects(RecurringSeries other) {
+        if (duration <= 0 || other.duration <= 0 || count <= 0 || other.count <= 0) return false;
+        long period = gcd(interval, other.interval);
+        long lowestDistance = 1L - other.duration;
+        long residue = Math.floorMod((long) other.start - start - lowestDistance, period);
+        if (lowestDistance + residue >= duration) return false;
+
+        RecurringSeries shorter = count <= other.count ? this : other;
+        RecurringSeries longer = shorter == this ? other : this;
+        for (int k = 0; k < shorter.count; k++) {
+            int occurrenceStart = shorter.getOccurrenceStart(k);
+            if (occurrenceStart >= longer.getOccurrenceStart(longer.count - 1) + longer.duration) break;
+            if (longer.intersects(occurrenceStart, occurrenceStart + shorter.duration)) return true;
+        }
+        return false;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
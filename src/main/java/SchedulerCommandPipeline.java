@@ -0,0 +1,226 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Single-writer mode for the scheduler.
+// Request, update and delete commands are put on a bounded queue and applied one after another by a single
+// scheduler thread, the HTTP handlers just wait for the command's future.
+// The scheduler thread takes the commands that piled up in the queue as one batch and runs all of their
+// data base writes in a single transaction (group commit), every command gets a savepoint of its own so that
+// a failing command doesn't take the rest of the batch down with it.
+// Futures are only completed once the batch is committed.
+public class SchedulerCommandPipeline {
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 64;
+    // How often a submitter waiting for room in a full queue checks that the scheduler thread is still running
+    private static final long OFFER_RETRY_MILLIS = 100;
+
+    // Logging
+    private final Logger appLogger = LoggerFactory.getLogger(SchedulerCommandPipeline.class);
+
+    private final ProjectorScheduler scheduler;
+    private final BlockingQueue<Command<?>> commands;
+    private final int maxBatchSize;
+    private final Thread schedulerThread;
+    private volatile boolean running = true;
+    // Held by the scheduler thread while a batch is open
+    private final ReentrantLock batchLock = new ReentrantLock();
+
+    private interface Action<T> {
+        T apply(ProjectorScheduler scheduler) throws SQLException;
+    }
+
+    private static class Command<T> {
+        private final Action<T> action;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+        private SQLException failure;
+
+        Command(Action<T> action) {
+            this.action = action;
+        }
+
+        void apply(ProjectorScheduler scheduler) {
+            try {
+                result = action.apply(scheduler);
+            } catch (SQLException sqle) {
+                failure = sqle;
+            } catch (RuntimeException re) {
+                failure = new SQLException(re);
+            }
+        }
+
+        void complete() {
+            if (failure != null) future.completeExceptionally(failure);
+            else future.complete(result);
+        }
+
+        void fail(SQLException sqle) {
+            future.completeExceptionally(sqle);
+        }
+    }
+
+    SchedulerCommandPipeline(ProjectorScheduler scheduler) {
+        this(scheduler,
+                Integer.getInteger("scheduler.pipeline.capacity", DEFAULT_CAPACITY),
+                Integer.getInteger("scheduler.pipeline.batchSize", DEFAULT_MAX_BATCH_SIZE));
+    }
+
+    /**
+     * @param scheduler : scheduler the commands are applied to
+     * @param capacity : number of commands that can wait, submitters block once the queue is full
+     * @param maxBatchSize : maximum number of commands committed in one transaction
+     */
+    SchedulerCommandPipeline(ProjectorScheduler scheduler, int capacity, int maxBatchSize) {
+        this.scheduler = scheduler;
+        this.commands = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.schedulerThread = new Thread(this::run, "scheduler-writer");
+        this.schedulerThread.setDaemon(true);
+        this.schedulerThread.start();
+        appLogger.info("Started single writer command pipeline, capacity " + capacity + ", batches of up to " + maxBatchSize);
+    }
+
+    AllocatedTimeSlot requestProjector(TimeSlot requestedTimeSlot) throws SQLException {
+        return submit(scheduler -> scheduler.requestProjectorDirect(requestedTimeSlot));
+    }
+
+    List<AllocatedTimeSlot> requestProjectors(List<TimeSlot> requestedTimeSlots, boolean tightestFirst) throws SQLException {
+        return submit(scheduler -> scheduler.requestProjectorsDirect(requestedTimeSlots, tightestFirst));
+    }
+
+    AllocatedTimeSlot updateProjector(long allocationID, TimeSlot allocatedTimeSlot) throws SQLException {
+        return submit(scheduler -> scheduler.updateProjectorDirect(allocationID, allocatedTimeSlot));
+    }
+
+    boolean deleteProjector(long allocationID) throws SQLException {
+        return submit(scheduler -> scheduler.deleteProjectorDirect(allocationID));
+    }
+
+    /**
+     * Function to run something while no batch is open, everything applied so far is committed
+     * @param body
+     * @return whatever the body returned
+     */
+    <T> T betweenBatches(DataBase.TransactionBody<T> body) throws SQLException {
+        batchLock.lock();
+        try {
+            return body.run();
+        } finally {
+            batchLock.unlock();
+        }
+    }
+
+    /**
+     * Function to hand a command over to the scheduler thread and wait for its result
+     */
+    private <T> T submit(Action<T> action) throws SQLException {
+        Command<T> command = new Command<>(action);
+        try {
+            while (!commands.offer(command, OFFER_RETRY_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (!running) throw new SQLException("Command pipeline is stopped");
+            }
+            // the scheduler thread may have stopped after its last look at the queue
+            if (!running) failLeftovers();
+            return command.future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the scheduler", ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof SQLException) throw (SQLException) ee.getCause();
+            throw new SQLException(ee.getCause());
+        }
+    }
+
+    /**
+     * Function to stop the scheduler thread once the commands already queued are done
+     */
+    void stop() {
+        running = false;
+        schedulerThread.interrupt();
+        try {
+            schedulerThread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        failLeftovers();
+    }
+
+    /**
+     * Function to fail the commands nobody is going to take off the queue any more
+     */
+    private void failLeftovers() {
+        List<Command<?>> leftovers = new ArrayList<>();
+        commands.drainTo(leftovers);
+        SQLException stopped = new SQLException("Command pipeline is stopped");
+        for (Command<?> command : leftovers) command.fail(stopped);
+    }
+
+    private void run() {
+        List<Command<?>> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (running || !commands.isEmpty()) {
+                try {
+                    if (commands.isEmpty() && !running) break;
+                    batch.add(commands.take());
+                } catch (InterruptedException ie) {
+                    continue;
+                }
+                commands.drainTo(batch, maxBatchSize - 1);
+                batchLock.lock();
+                try {
+                    applyBatch(batch);
+                } finally {
+                    batchLock.unlock();
+                }
+                batch.clear();
+            }
+        } finally {
+            // if the thread dies on an unexpected error nobody must be left waiting for it
+            running = false;
+            SQLException stopped = new SQLException("Command pipeline is stopped");
+            for (Command<?> command : batch) command.fail(stopped);
+            failLeftovers();
+        }
+    }
+
+    private void applyBatch(List<Command<?>> batch) {
+        DataBase dataBase = DataBase.getInstance();
+        try {
+            dataBase.beginTransaction();
+        } catch (SQLException sqle) {
+            appLogger.error("Could not start a transaction: " + sqle.getMessage());
+            for (Command<?> command : batch) command.fail(sqle);
+            return;
+        }
+        for (Command<?> command : batch) {
+            try {
+                dataBase.execute("SAVEPOINT command");
+                command.apply(scheduler);
+                if (command.failure != null) dataBase.execute("ROLLBACK TO command");
+                dataBase.execute("RELEASE command");
+            } catch (SQLException sqle) {
+                command.failure = sqle;
+            }
+        }
+        try {
+            dataBase.commitTransaction();
+            for (Command<?> command : batch) command.complete();
+        } catch (SQLException sqle) {
+            // commitTransaction already rolled the batch back and ended the transaction
+            appLogger.error("Could not commit a batch of " + batch.size() + " commands: " + sqle.getMessage());
+            // the indexes already reflect the batch, bring them back in line with the data base
+            scheduler.reloadData();
+            for (Command<?> command : batch) command.fail(sqle);
+        }
+    }
+}
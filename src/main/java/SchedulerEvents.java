@@ -0,0 +1,136 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// Java Flight Recorder events of the scheduler, see SlowRequestRecorder.
+// Every phase of a request emits its own event on the request's thread, so a recording shows where the time of a
+// slow request went (conflict checks, recurring expansion, suggestion search, data base calls) nested under its
+// HttpRequest event. The events carry the shape of the work, their duration is the phase timing.
+// While no recording has them enabled, begin(), shouldCommit() and the allocation of the event are optimized
+// away by the JIT, the fields are only filled in when the event is going to be committed.
+final class SchedulerEvents {
+    static final String CATEGORY = "Projector Scheduler";
+
+    private SchedulerEvents() {}
+
+    @Name("projector.HttpRequest")
+    @Label("HTTP Request")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class HttpRequest extends Event {
+        @Label("Route")
+        String route;
+
+        @Label("Status")
+        int status;
+    }
+
+    @Name("projector.Request")
+    @Label("Booking Request")
+    @Description("A booking request placed by the scheduler, with its outcome")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class Request extends Event {
+        @Label("Duration")
+        @Timespan(Timespan.MILLISECONDS)
+        long requestedDuration;
+
+        @Label("Recurrence Interval")
+        @Timespan(Timespan.MILLISECONDS)
+        long recurInterval;
+
+        @Label("Projector ID")
+        @Description("Projector booked, -1 if none was free")
+        int projectorID;
+
+        @Label("Suggested")
+        @Description("A next available time was suggested instead")
+        boolean suggested;
+    }
+
+    @Name("projector.ConflictCheck")
+    @Label("Conflict Check")
+    @Description("Search for a free projector")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ConflictCheck extends Event {
+        @Label("Duration")
+        @Timespan(Timespan.MILLISECONDS)
+        long requestedDuration;
+
+        @Label("Recurrence Interval")
+        @Timespan(Timespan.MILLISECONDS)
+        long recurInterval;
+
+        @Label("Occurrences Checked")
+        int occurrences;
+
+        @Label("Projectors Probed")
+        int projectorsProbed;
+
+        @Label("Parallel")
+        boolean parallel;
+
+        @Label("Projector ID")
+        @Description("Projector found, -1 if none was free")
+        int projectorID;
+    }
+
+    @Name("projector.RecurringExpansion")
+    @Label("Recurring Expansion")
+    @Description("Conversion of a recurring booking into its series on the time-axis")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class RecurringExpansion extends Event {
+        @Label("Recurrence Interval")
+        @Timespan(Timespan.MILLISECONDS)
+        long recurInterval;
+
+        @Label("Occurrences")
+        int occurrences;
+    }
+
+    @Name("projector.SuggestionSearch")
+    @Label("Suggestion Search")
+    @Description("Search for alternative start times")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class SuggestionSearch extends Event {
+        @Label("Duration")
+        @Timespan(Timespan.MILLISECONDS)
+        long requestedDuration;
+
+        @Label("Search Horizon")
+        @Timespan(Timespan.MILLISECONDS)
+        long searchHorizon;
+
+        @Label("Projectors Probed")
+        int projectorsProbed;
+
+        @Label("Gaps Visited")
+        int gapsVisited;
+
+        @Label("Suggestions")
+        int suggestions;
+    }
+
+    @Name("projector.DataBaseCall")
+    @Label("Data Base Call")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class DataBaseCall extends Event {
+        @Label("Call")
+        String call;
+
+        @Label("SQL")
+        String sql;
+
+        @Label("Rows Touched")
+        @Description("Rows changed, or read by a query, -1 if not known")
+        long rows;
+    }
+}
@@ -0,0 +1,196 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Snapshot of the scheduler's in-memory indexes, saved to a memory-mapped file.
+// Every change to the allocations table is logged by triggers in allocation_changes, with the booking's time
+// copied from time_slots. A snapshot records the last logged change it contains (the high-water mark).
+// On startup the snapshot is mapped, its ranges and series go straight into the indexes, and only the changes
+// logged after the mark are replayed instead of loading every booking of the year.
+// File layout (native byte order, ints unless noted):
+//   magic, version, long CRC32 of everything after the header, long start of year (epoch ms), long change mark,
+//   projector count, then for every projector: range count, start/end pairs,
+//   series count, and per series: long allocation id, start, duration, interval, count
+public class SchedulerSnapshot {
+    private static final int MAGIC = 0x50534e50;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 8 + 4;
+    private static final int SERIES_BYTES = 8 + 4 * 4;
+
+    // Logging
+    private final Logger appLogger = LoggerFactory.getLogger(SchedulerSnapshot.class);
+
+    private final Path path;
+
+    /**
+     * Indexes copied out of the scheduler while no booking is in flight
+     */
+    static class State {
+        final long yearStartEpochMilli;
+        final long changeMark;
+        final List<int[]> ranges = new ArrayList<>();
+        final List<List<RecurringSeries>> series = new ArrayList<>();
+
+        State(long yearStartEpochMilli, long changeMark) {
+            this.yearStartEpochMilli = yearStartEpochMilli;
+            this.changeMark = changeMark;
+        }
+    }
+
+    SchedulerSnapshot(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Function to create the change log and the triggers that fill it, if they don't exist yet
+     * Deletes copy the booking's time from time_slots, which is still there because allocations are
+     * deleted first. If it is not, the times are left NULL and replaying falls back to a full load.
+     */
+    static void installChangeLog() throws SQLException {
+        DataBase dataBase = DataBase.getInstance();
+        dataBase.update("CREATE TABLE IF NOT EXISTS allocation_changes " +
+                "(seq INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                " allocation_id INTEGER not NULL, " +
+                " projector_id INTEGER not NULL, " +
+                " time_slot_id INTEGER not NULL, " +
+                " team_id INTEGER not NULL, " +
+                " deleted INTEGER not NULL, " +
+                " start INTEGER, " +
+                " duration INTEGER, " +
+                " recur_every INTEGER, " +
+                " end INTEGER)");
+        dataBase.update("CREATE TRIGGER IF NOT EXISTS allocations_insert_change AFTER INSERT ON allocations BEGIN " +
+                "INSERT INTO allocation_changes (allocation_id, projector_id, time_slot_id, team_id, deleted, " +
+                "start, duration, recur_every, end) " +
+                "SELECT NEW.id, NEW.projector_id, NEW.time_slot_id, NEW.team_id, 0, " +
+                "(SELECT start FROM time_slots WHERE id = NEW.time_slot_id), " +
+                "(SELECT duration FROM time_slots WHERE id = NEW.time_slot_id), " +
+                "(SELECT recur_every FROM time_slots WHERE id = NEW.time_slot_id), " +
+                "(SELECT end FROM time_slots WHERE id = NEW.time_slot_id); END");
+        dataBase.update("CREATE TRIGGER IF NOT EXISTS allocations_delete_change AFTER DELETE ON allocations BEGIN " +
+                "INSERT INTO allocation_changes (allocation_id, projector_id, time_slot_id, team_id, deleted, " +
+                "start, duration, recur_every, end) " +
+                "SELECT OLD.id, OLD.projector_id, OLD.time_slot_id, OLD.team_id, 1, " +
+                "(SELECT start FROM time_slots WHERE id = OLD.time_slot_id), " +
+                "(SELECT duration FROM time_slots WHERE id = OLD.time_slot_id), " +
+                "(SELECT recur_every FROM time_slots WHERE id = OLD.time_slot_id), " +
+                "(SELECT end FROM time_slots WHERE id = OLD.time_slot_id); END");
+    }
+
+    /**
+     * @return number of the last change logged so far, 0 if there is none. Pruned changes still count.
+     */
+    static long currentChangeMark() throws SQLException {
+        return DataBase.getInstance().query(
+                "SELECT coalesce(max(seq), 0) AS seq FROM sqlite_sequence WHERE name = 'allocation_changes'",
+                queryResult -> queryResult.getLong("seq"));
+    }
+
+    /**
+     * Function to save a snapshot, the file is replaced atomically
+     * Changes up to the snapshot's mark are no longer needed and are removed from the change log.
+     * @param state
+     */
+    void write(State state) throws IOException, SQLException {
+        long size = HEADER_BYTES;
+        for (int i = 0; i < state.ranges.size(); i++) {
+            size += 4 + 4L * state.ranges.get(i).length + 4 + (long) SERIES_BYTES * state.series.get(i).size();
+        }
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.nativeOrder());
+            buffer.position(HEADER_BYTES);
+            for (int i = 0; i < state.ranges.size(); i++) {
+                int[] ranges = state.ranges.get(i);
+                buffer.putInt(ranges.length / 2);
+                IntBuffer ints = buffer.asIntBuffer();
+                ints.put(ranges);
+                buffer.position(buffer.position() + 4 * ranges.length);
+                List<RecurringSeries> seriesList = state.series.get(i);
+                buffer.putInt(seriesList.size());
+                for (RecurringSeries series : seriesList) {
+                    buffer.putLong(series.getAllocationID());
+                    buffer.putInt(series.getStart());
+                    buffer.putInt(series.getDuration());
+                    buffer.putInt(series.getInterval());
+                    buffer.putInt(series.getCount());
+                }
+            }
+            buffer.position(HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(buffer);
+            buffer.position(0);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putLong(crc.getValue());
+            buffer.putLong(state.yearStartEpochMilli);
+            buffer.putLong(state.changeMark);
+            buffer.putInt(state.ranges.size());
+            buffer.force();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        DataBase.getInstance().update("DELETE FROM allocation_changes WHERE seq <= ?", state.changeMark);
+        appLogger.info("Saved snapshot up to change " + state.changeMark + " (" + size + " bytes)");
+    }
+
+    /**
+     * Function to map a saved snapshot
+     * @param yearStartEpochMilli : start of the current year, snapshots of another year are ignored
+     * @param projectorCount : number of projectors the scheduler has
+     * @return the snapshot, null if there is none or it can't be used
+     */
+    State read(long yearStartEpochMilli, int projectorCount) throws IOException {
+        if (!Files.exists(path)) return null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.nativeOrder());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                appLogger.info("Ignoring snapshot " + path + ", unknown format");
+                return null;
+            }
+            long checksum = buffer.getLong();
+            State state = new State(buffer.getLong(), buffer.getLong());
+            int snapshotProjectorCount = buffer.getInt();
+            if (state.yearStartEpochMilli != yearStartEpochMilli || snapshotProjectorCount != projectorCount) {
+                appLogger.info("Ignoring snapshot " + path + ", it was saved for another year or fleet");
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if (crc.getValue() != checksum) {
+                appLogger.info("Ignoring snapshot " + path + ", checksum mismatch");
+                return null;
+            }
+            for (int i = 0; i < snapshotProjectorCount; i++) {
+                int[] ranges = new int[2 * buffer.getInt()];
+                buffer.asIntBuffer().get(ranges);
+                buffer.position(buffer.position() + 4 * ranges.length);
+                state.ranges.add(ranges);
+                int seriesCount = buffer.getInt();
+                List<RecurringSeries> seriesList = new ArrayList<>(seriesCount);
+                for (int k = 0; k < seriesCount; k++) {
+                    seriesList.add(new RecurringSeries(buffer.getLong(),
+                            buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt()));
+                }
+                state.series.add(seriesList);
+            }
+            return state;
+        }
+    }
+}
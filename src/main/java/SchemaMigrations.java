@@ -0,0 +1,114 @@
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Versioned schema changes, applied in order on startup.
+// The schema_version table has a row for every migration applied to the data base file. A migration runs
+// in a transaction together with the insert of its row, so it is either applied and recorded, or neither.
+// Add new migrations at the end of MIGRATIONS with the next version number, never change an applied one.
+public class SchemaMigrations {
+
+    // Logging
+    private static final Logger appLogger = LoggerFactory.getLogger(SchemaMigrations.class);
+
+    /**
+     * A schema change, the statements run in the given order
+     */
+    static class Migration {
+        final int version;
+        final String description;
+        final List<String> statements;
+
+        Migration(int version, String description, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.statements = Collections.unmodifiableList(Arrays.asList(statements));
+        }
+    }
+
+    static final List<Migration> MIGRATIONS = Collections.unmodifiableList(Arrays.asList(
+            // data bases created before migrations existed already have these tables, IF NOT EXISTS adopts them
+            new Migration(1, "projectors, teams, time slots and allocations",
+                    "CREATE TABLE IF NOT EXISTS projectors " +
+                            "(id INTEGER not NULL, " +
+                            " name VARCHAR(255), " +
+                            " PRIMARY KEY ( id ))",
+                    "CREATE TABLE IF NOT EXISTS time_slots " +
+                            "(id INTEGER not NULL, " +
+                            " start INTEGER, " +
+                            " duration INTEGER, " +
+                            " recur_every INTEGER, " +
+                            " end INTEGER, " +
+                            " PRIMARY KEY ( id ))",
+                    "CREATE TABLE IF NOT EXISTS teams " +
+                            "(id INTEGER not NULL, " +
+                            " name VARCHAR(255), " +
+                            " PRIMARY KEY ( id ))",
+                    "CREATE TABLE IF NOT EXISTS allocations " +
+                            "(id INTEGER not NULL, " +
+                            " projector_id INTEGER not NULL, " +
+                            " time_slot_id INTEGER not NULL, " +
+                            " team_id INTEGER not NULL, " +
+                            " PRIMARY KEY ( id ))",
+                    "INSERT OR IGNORE INTO projectors VALUES (1, 'Projector 1'), (2, 'Projector 2'), (3, 'Projector 3')",
+                    "INSERT OR IGNORE INTO teams VALUES (1, 'Team 1'), (2, 'Team 2'), (3, 'Team 3'), " +
+                            "(4, 'Team 4'), (5, 'Team 5')"),
+            // the startup load searches time slots by start and joins their allocations,
+            // lookups and deletes by allocation id use the primary keys
+            new Migration(2, "indexes for the schedule load",
+                    "CREATE INDEX IF NOT EXISTS time_slots_start ON time_slots (start)",
+                    "CREATE INDEX IF NOT EXISTS allocations_time_slot_id ON allocations (time_slot_id)")
+    ));
+
+    private SchemaMigrations() {}
+
+    /**
+     * @return version of the newest migration
+     */
+    static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    /**
+     * Function to read the version of the schema
+     * @return version of the newest applied migration, 0 if none has been applied
+     */
+    static int currentVersion() throws SQLException {
+        DataBase dataBase = DataBase.getInstance();
+        dataBase.execute("CREATE TABLE IF NOT EXISTS schema_version " +
+                "(version INTEGER not NULL, " +
+                " description VARCHAR(255), " +
+                " applied_at INTEGER not NULL, " +
+                " PRIMARY KEY ( version ))");
+        return dataBase.query("SELECT coalesce(max(version), 0) AS version FROM schema_version",
+                queryResult -> queryResult.getInt("version"));
+    }
+
+    /**
+     * Function to apply every migration newer than the data base's schema version
+     * @return number of migrations applied
+     */
+    static int migrate() throws SQLException {
+        DataBase dataBase = DataBase.getInstance();
+        int currentVersion = currentVersion();
+        int applied = 0;
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version <= currentVersion) continue;
+            dataBase.inTransaction(() -> {
+                for (String statement : migration.statements) {
+                    dataBase.execute(statement);
+                }
+                dataBase.update("INSERT INTO schema_version VALUES (?, ?, ?)",
+                        migration.version, migration.description, System.currentTimeMillis());
+                return null;
+            });
+            appLogger.info("Applied schema migration " + migration.version + ": " + migration.description);
+            applied++;
+        }
+        return applied;
+    }
+}
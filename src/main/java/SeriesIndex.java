@@ -0,0 +1,140 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// The recurring bookings of a single projector.
+// Every recurring booking is stored once as a RecurringSeries, so memory and insert/delete cost depend on the
+// number of series and not on the number of occurrences.
+public class SeriesIndex {
+    private final List<RecurringSeries> seriesList = new ArrayList<>();
+
+    public void add(RecurringSeries series) {
+        seriesList.add(series);
+    }
+
+    /**
+     * Function to remove the series of the given allocation
+     * @param allocationID
+     * @return true if a series was removed
+     */
+    public boolean remove(long allocationID) {
+        for (int i = 0; i < seriesList.size(); i++) {
+            if (seriesList.get(i).getAllocationID() == allocationID) {
+                seriesList.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param allocationID
+     * @return the series of the given allocation, null if there is none
+     */
+    public RecurringSeries find(long allocationID) {
+        for (RecurringSeries series : seriesList) {
+            if (series.getAllocationID() == allocationID) return series;
+        }
+        return null;
+    }
+
+    public int size() {
+        return seriesList.size();
+    }
+
+    /**
+     * Function to check if any occurrence of any series overlaps [start, end)
+     */
+    public boolean intersects(int start, int end) {
+        for (RecurringSeries series : seriesList) {
+            if (series.intersects(start, end)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Function to check if any series overlaps the given series
+     */
+    public boolean intersects(RecurringSeries other) {
+        for (RecurringSeries series : seriesList) {
+            if (series.intersects(other)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Function to move a start time past every occurrence it collides with
+     * @param from : earliest acceptable start
+     * @param length : length of the interval in minutes
+     * @return the smallest start >= from such that [start, start + length) doesn't overlap any series
+     */
+    public int nextFreeStart(int from, int length) {
+        if (length <= 0) return from;
+        int start = from;
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            for (RecurringSeries series : seriesList) {
+                int k = series.firstOverlapping(start, start + length);
+                if (k != -1) {
+                    start = series.getOccurrenceStart(k) + series.getDuration();
+                    moved = true;
+                }
+            }
+        }
+        return start;
+    }
+
+    /**
+     * @param from : minute to look from
+     * @return the first minute >= from covered by an occurrence, Integer.MAX_VALUE if there is none
+     */
+    public int nextBookedStart(int from) {
+        int nextBooked = Integer.MAX_VALUE;
+        for (RecurringSeries series : seriesList) {
+            int k = series.firstOverlapping(from, Integer.MAX_VALUE);
+            if (k != -1) {
+                nextBooked = Math.min(nextBooked, Math.max(from, series.getOccurrenceStart(k)));
+            }
+        }
+        return nextBooked;
+    }
+
+    /**
+     * @param to : minute to look back from (exclusive)
+     * @return the end of the last occurrence, cut to to, that starts before to,
+     * Integer.MIN_VALUE if there is none
+     */
+    public int previousBookedEnd(int to) {
+        int previousEnd = Integer.MIN_VALUE;
+        for (RecurringSeries series : seriesList) {
+            if (series.getDuration() <= 0 || series.getCount() <= 0) continue;
+            long k = Math.min(Math.floorDiv((long) to - 1 - series.getStart(), series.getInterval()), series.getCount() - 1);
+            if (k >= 0) {
+                previousEnd = Math.max(previousEnd, Math.min(to, series.getOccurrenceStart((int) k) + series.getDuration()));
+            }
+        }
+        return previousEnd;
+    }
+
+    /**
+     * Function to walk every occurrence of every series, in no particular order
+     * @param consumer : receives start and end of every occurrence
+     */
+    public void forEachOccurrence(IntervalIndex.RangeConsumer consumer) {
+        for (RecurringSeries series : seriesList) {
+            for (int k = 0; k < series.getCount(); k++) {
+                int start = series.getOccurrenceStart(k);
+                consumer.accept(start, start + series.getDuration());
+            }
+        }
+    }
+
+    /**
+     * Function to walk every series, in no particular order
+     * @param consumer
+     */
+    public void forEachSeries(Consumer<RecurringSeries> consumer) {
+        seriesList.forEach(consumer);
+    }
+}
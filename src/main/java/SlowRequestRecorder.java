@@ -0,0 +1,126 @@
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps a Java Flight Recorder recording of the last seconds in memory and on disk, and dumps it to a file
+// whenever a request takes longer than a threshold, so a slow request can be looked at after the fact in
+// JDK Mission Control (or with jfr print --events 'projector.*' <file>).
+// The recording has the JDK's default settings (GC, safepoints, lock contention, sampled stacks, about 1% of
+// overhead) plus every SchedulerEvents event, whatever its duration.
+// Off unless -Dscheduler.slowRequestMillis=n is set, requests taking n ms or more then trigger a dump.
+// -Dscheduler.slowRequestWindowSeconds=n seconds kept and dumped (default 30), at most one dump per window,
+// -Dscheduler.slowRequestDir=path where the dumps go (default slow-requests), as slow-<time>.jfr.
+// JFR is part of JDK 11 and later, and of JDK 8 from 8u262 on.
+public class SlowRequestRecorder {
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    private static final int DEFAULT_WINDOW_SECONDS = 30;
+
+    private static SlowRequestRecorder instance = null;
+
+    private final Logger appLogger = LoggerFactory.getLogger(SlowRequestRecorder.class);
+    private final long thresholdNanos;
+    private final long windowNanos;
+    private final Path directory;
+    private final Recording recording;
+    // dumps are written off the request threads
+    private final ExecutorService dumper = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "slow-request-dump");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // System.nanoTime() before which no new dump is taken
+    private final AtomicLong nextDumpNanos = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param threshold : requests taking at least this long trigger a dump
+     * @param window : length of the recording kept, and the least time between two dumps
+     * @param directory : where the dumps are written, created if needed
+     */
+    SlowRequestRecorder(Duration threshold, Duration window, Path directory) throws IOException, ParseException {
+        this.thresholdNanos = threshold.toNanos();
+        this.windowNanos = window.toNanos();
+        this.directory = directory;
+        Files.createDirectories(directory);
+        recording = new Recording(Configuration.getConfiguration("default"));
+        recording.setName("slow-requests");
+        recording.setToDisk(true);
+        recording.setMaxAge(window);
+        List<Class<? extends jdk.jfr.Event>> eventClasses = Arrays.asList(
+                SchedulerEvents.HttpRequest.class, SchedulerEvents.Request.class, SchedulerEvents.ConflictCheck.class,
+                SchedulerEvents.RecurringExpansion.class, SchedulerEvents.SuggestionSearch.class,
+                SchedulerEvents.DataBaseCall.class);
+        for (Class<? extends jdk.jfr.Event> eventClass : eventClasses) {
+            recording.enable(eventClass).withoutThreshold();
+        }
+        recording.start();
+    }
+
+    /**
+     * @return the recorder configured by the -Dscheduler.slowRequest* properties, null if it is off or JFR is missing
+     */
+    public static synchronized SlowRequestRecorder getInstance() {
+        if (instance == null) {
+            Long thresholdMillis = Long.getLong("scheduler.slowRequestMillis");
+            if (thresholdMillis == null) return null;
+            Duration window = Duration.ofSeconds(Integer.getInteger("scheduler.slowRequestWindowSeconds", DEFAULT_WINDOW_SECONDS));
+            Path directory = Paths.get(System.getProperty("scheduler.slowRequestDir", "slow-requests"));
+            try {
+                instance = new SlowRequestRecorder(Duration.ofMillis(thresholdMillis), window, directory);
+            } catch (IOException | ParseException | RuntimeException e) {
+                LoggerFactory.getLogger(SlowRequestRecorder.class).error("Slow request recording could not be started: " + e.getMessage());
+                return null;
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Function to check a finished request against the threshold, and dump the recording if it was too slow
+     * @param route : route of the request, for the log
+     * @param nanos : time the request took
+     * @return the pending dump, null if the request was fast enough or a dump was taken less than a window ago
+     */
+    Future<Path> observe(String route, long nanos) {
+        if (nanos < thresholdNanos) return null;
+        long now = System.nanoTime();
+        long next = nextDumpNanos.get();
+        if (now - next < 0 || !nextDumpNanos.compareAndSet(next, now + windowNanos)) return null;
+        Path file = directory.resolve("slow-" + LocalDateTime.now().format(FILE_TIME) + ".jfr");
+        return dumper.submit(() -> {
+            try {
+                recording.dump(file);
+                appLogger.warn(route + " took " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms, recording dumped to " + file);
+            } catch (IOException | IllegalStateException e) {
+                appLogger.error("Slow request recording could not be dumped to " + file + ": " + e.getMessage());
+                throw e;
+            }
+            return file;
+        });
+    }
+
+    /**
+     * Function to stop recording, pending dumps are written first
+     */
+    void close() throws InterruptedException {
+        dumper.shutdown();
+        dumper.awaitTermination(1, TimeUnit.MINUTES);
+        recording.close();
+    }
+}
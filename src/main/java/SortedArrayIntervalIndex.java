@@ -0,0 +1,154 @@
+import java.util.Arrays;
+
+// IntervalIndex backed by two sorted primitive arrays holding the start and end minute of every booked interval.
+// Intervals are kept disjoint and non-adjacent (touching intervals are coalesced, just like TreeRangeSet does),
+// so both arrays are sorted and a binary search finds the neighbourhood of any minute.
+// Lookups never allocate, inserts and removes only allocate when the arrays have to grow.
+public class SortedArrayIntervalIndex implements IntervalIndex {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] ends = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * Utility function to find the first interval ending after the given minute
+     * @param minute
+     * @return index of the first interval with end > minute, size if there is none
+     */
+    private int firstEndingAfter(int minute) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] > minute) high = mid;
+            else low = mid + 1;
+        }
+        return low;
+    }
+
+    /**
+     * Utility function to find the first interval starting after the given minute
+     * @param minute
+     * @return index of the first interval with start > minute, size if there is none
+     */
+    private int firstStartingAfter(int minute) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] > minute) high = mid;
+            else low = mid + 1;
+        }
+        return low;
+    }
+
+    /**
+     * Utility function to replace the intervals [from, to) by `count` new slots, shifting the tail of the arrays
+     * The caller fills the new slots.
+     */
+    private void replace(int from, int to, int count) {
+        int newSize = size - (to - from) + count;
+        if (newSize > starts.length) {
+            int capacity = Math.max(newSize, starts.length * 2);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        int tail = size - to;
+        if (tail > 0 && from + count != to) {
+            System.arraycopy(starts, to, starts, from + count, tail);
+            System.arraycopy(ends, to, ends, from + count, tail);
+        }
+        size = newSize;
+    }
+
+    private static void checkInterval(int start, int end) {
+        if (start > end) throw new IllegalArgumentException("Invalid interval [" + start + ", " + end + ")");
+    }
+
+    @Override
+    public boolean intersects(int start, int end) {
+        checkInterval(start, end);
+        if (start == end) return false;
+        int i = firstEndingAfter(start);
+        return i < size && starts[i] < end;
+    }
+
+    @Override
+    public void add(int start, int end) {
+        checkInterval(start, end);
+        if (start == end) return;
+        // every interval in [low, high) touches [start, end) and gets merged into it
+        int low = firstEndingAfter(start - 1);
+        int high = firstStartingAfter(end);
+        if (low < high) {
+            start = Math.min(start, starts[low]);
+            end = Math.max(end, ends[high - 1]);
+        }
+        replace(low, high, 1);
+        starts[low] = start;
+        ends[low] = end;
+    }
+
+    @Override
+    public void remove(int start, int end) {
+        checkInterval(start, end);
+        if (start == end) return;
+        // every interval in [low, high) overlaps [start, end)
+        int low = firstEndingAfter(start);
+        int high = firstStartingAfter(end - 1);
+        if (low >= high) return;
+        int leftStart = starts[low];
+        int rightEnd = ends[high - 1];
+        boolean keepLeft = leftStart < start;
+        boolean keepRight = rightEnd > end;
+        replace(low, high, (keepLeft ? 1 : 0) + (keepRight ? 1 : 0));
+        int i = low;
+        if (keepLeft) {
+            starts[i] = leftStart;
+            ends[i] = start;
+            i++;
+        }
+        if (keepRight) {
+            starts[i] = end;
+            ends[i] = rightEnd;
+        }
+    }
+
+    @Override
+    public int nextFreeStart(int from, int length) {
+        if (length <= 0) return from;
+        int start = from;
+        // intervals are coalesced, so every interval we step over ends in front of a free gap
+        for (int i = firstEndingAfter(from); i < size && starts[i] < start + length; i++) {
+            start = Math.max(start, ends[i]);
+        }
+        return start;
+    }
+
+    @Override
+    public int nextBookedStart(int from) {
+        int i = firstEndingAfter(from);
+        if (i == size) return Integer.MAX_VALUE;
+        return Math.max(from, starts[i]);
+    }
+
+    @Override
+    public int previousBookedEnd(int to) {
+        int i = firstStartingAfter(to - 1) - 1;
+        if (i < 0) return Integer.MIN_VALUE;
+        return Math.min(to, ends[i]);
+    }
+
+    @Override
+    public int rangeCount() {
+        return size;
+    }
+
+    @Override
+    public void forEachRange(RangeConsumer consumer) {
+        for (int i = 0; i < size; i++) {
+            consumer.accept(starts[i], ends[i]);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Cache of the /projector/status responses, by projector and query, each tagged with the version of the projector's
+// schedule it was written from (see ProjectorScheduler.getScheduleVersion). A cached response is only sent while
+// the version is still the same, so changes never need to invalidate anything, old entries just stop matching
+// and age out. The version is also the response's ETag: a dashboard polling with If-None-Match gets a 304 as long
+// as the projector wasn't booked or freed, without the schedule being read at all.
+// Bounded by the bytes of the cached responses, least recently used first out, bigger responses aren't cached.
+// -Dscheduler.statusCacheBytes=n total size (default 16 MB), responses up to a sixteenth of it are cached.
+// Hits (304s and cached responses), misses and evictions are counted in the metrics registry.
+public class StatusCache {
+    private static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    private final Cache<String, Entry> entries;
+    private final int maxEntryBytes;
+    // ETags carry it, versions start again from 0 when the service restarts
+    private final String instanceTag = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    private final MetricsRegistry.Counter hits;
+    private final MetricsRegistry.Counter notModified;
+    private final MetricsRegistry.Counter misses;
+    private final MetricsRegistry.Counter evictions;
+
+    private static class Entry {
+        final long version;
+        final byte[] body;
+
+        Entry(long version, byte[] body) {
+            this.version = version;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Stream that passes a response on and keeps a copy of it, as long as it is small enough to be cached
+     */
+    static class CapturingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final int maxBytes;
+        private byte[] copy = new byte[1024];
+        private int size;
+
+        CapturingOutputStream(OutputStream out, int maxBytes) {
+            this.out = out;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (reserve(1)) copy[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            if (reserve(length)) {
+                System.arraycopy(bytes, offset, copy, size, length);
+                size += length;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        /**
+         * @return true if the copy has room for more bytes, false if it was dropped for being too big
+         */
+        private boolean reserve(int more) {
+            if (copy == null) return false;
+            if (size + more > maxBytes) {
+                copy = null;
+                return false;
+            }
+            if (size + more > copy.length) copy = Arrays.copyOf(copy, Math.min(maxBytes, Math.max(2 * copy.length, size + more)));
+            return true;
+        }
+
+        /**
+         * @return what was written, null if it was too big
+         */
+        byte[] captured() {
+            return copy == null ? null : Arrays.copyOf(copy, size);
+        }
+    }
+
+    /**
+     * @param maxBytes : most bytes of responses kept
+     * @param metrics : where hits, misses and evictions are counted
+     */
+    StatusCache(long maxBytes, MetricsRegistry metrics) {
+        this.maxEntryBytes = (int) Math.min(Integer.MAX_VALUE, maxBytes / 16);
+        String help = "Status reads answered from the status cache (hit, not_modified) or from the schedule (miss)";
+        hits = metrics.counter("status_cache_requests_total", help, "result=\"hit\"");
+        notModified = metrics.counter("status_cache_requests_total", help, "result=\"not_modified\"");
+        misses = metrics.counter("status_cache_requests_total", help, "result=\"miss\"");
+        evictions = metrics.counter("status_cache_evictions_total", "Responses dropped from the status cache to make room", "");
+        entries = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .<String, Entry>weigher((key, entry) -> entry.body.length + 2 * key.length())
+                .removalListener(removal -> {
+                    if (removal.wasEvicted()) evictions.increment();
+                })
+                .build();
+        metrics.gauge("status_cache_hit_ratio", "Share of status reads answered from the status cache", samples -> {
+            long answered = hits.get() + notModified.get();
+            long total = answered + misses.get();
+            samples.add("", total == 0 ? 0 : (double) answered / total);
+        });
+        metrics.gauge("status_cache_entries", "Responses in the status cache", samples -> samples.add("", entries.size()));
+    }
+
+    /**
+     * @return the cache sized by -Dscheduler.statusCacheBytes, counting in the service's metrics registry
+     */
+    static StatusCache fromProperties() {
+        return new StatusCache(Long.getLong("scheduler.statusCacheBytes", DEFAULT_MAX_BYTES), MetricsRegistry.getInstance());
+    }
+
+    /**
+     * @param projectorID
+     * @param version : version of the projector's schedule
+     * @return the ETag of the projector's status at that version, the same for every query
+     */
+    String etag(int projectorID, long version) {
+        return "\"" + instanceTag + "-" + projectorID + "-" + version + "\"";
+    }
+
+    /**
+     * Function to check an If-None-Match header against the current ETag, and count a hit if it matches
+     * @param ifNoneMatch : header value, a list of ETags or *, null if the request has none
+     * @param etag : current ETag
+     * @return true if the client's copy is current and a 304 can be sent
+     */
+    boolean notModified(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            // a weak tag is as good as a strong one for a GET
+            if (candidate.startsWith("W/")) candidate = candidate.substring(2);
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                notModified.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Function to look a response up, counting a hit or a miss
+     * @param key : projector and query of the request
+     * @param version : current version of the projector's schedule
+     * @return the cached response, null if there is none for this version
+     */
+    byte[] get(String key, long version) {
+        Entry entry = entries.getIfPresent(key);
+        if (entry != null && entry.version == version) {
+            hits.increment();
+            return entry.body;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * @param out : the response stream
+     * @return stream to write a response through, to be cached afterwards with put
+     */
+    CapturingOutputStream capture(OutputStream out) {
+        return new CapturingOutputStream(out, maxEntryBytes);
+    }
+
+    /**
+     * Function to cache a response that was written through capture
+     * @param key : projector and query of the request
+     * @param version : version of the projector's schedule read before the response was written,
+     *                the caller makes sure it didn't change while it was written
+     * @param body
+     */
+    void put(String key, long version, CapturingOutputStream body) {
+        byte[] captured = body.captured();
+        if (captured != null) entries.put(key, new Entry(version, captured));
+    }
+}
@@ -0,0 +1,522 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Write-behind persistence for the scheduler.
+// Accepted bookings and deletes are appended to a local append-only journal file and the request only waits
+// for the journal to be fsynced. Threads that finish appending while an fsync is running are covered by the
+// next one together (group commit). A background thread then applies the journal to the SQLite tables in large
+// transactions, each of which also stores the last applied log sequence number (LSN) in journal_checkpoint.
+// On startup every journal record after the checkpoint is applied again, so the tables catch up after a crash.
+// Until a record is applied its rows are only in memory (pending inserts and deletes), lookups consult those first.
+// Journal record: int payload length, long CRC32 of the payload, payload = long LSN, int operation count, operations.
+// A torn or corrupt record at the end of the file (crash during append) ends the replay.
+public class WriteBehindJournal {
+    private static final byte INSERT = 1;
+    private static final byte DELETE = 2;
+    private static final int RECORD_HEADER_BYTES = 4 + 8;
+    private static final int DEFAULT_APPLY_BATCH_SIZE = 512;
+    private static final long APPLY_RETRY_MILLIS = 1000;
+    // The applier lets records pile up for this long, so that they go to the data base in large transactions
+    private static final long DEFAULT_APPLY_DELAY_MILLIS = 20;
+
+    // Logging
+    private final Logger appLogger = LoggerFactory.getLogger(WriteBehindJournal.class);
+
+    // A booking or a delete, deletes only carry the ids
+    private static class Operation {
+        private final byte type;
+        private final AllocatedTimeSlot allocatedTimeSlot;
+
+        Operation(byte type, AllocatedTimeSlot allocatedTimeSlot) {
+            this.type = type;
+            this.allocatedTimeSlot = allocatedTimeSlot;
+        }
+    }
+
+    // One journal record, all of its operations are applied together
+    private static class Entry {
+        private final long lsn;
+        private final List<Operation> operations;
+
+        Entry(long lsn, List<Operation> operations) {
+            this.lsn = lsn;
+            this.operations = operations;
+        }
+    }
+
+    private final FileChannel channel;
+    // Appends are ordered by this lock, LSNs are handed out in file order
+    private final Object appendLock = new Object();
+    private long lastLSN;
+    private final Object flushMonitor = new Object();
+    private long durableLSN;
+    private boolean flushing = false;
+    private final BlockingQueue<Entry> unapplied = new LinkedBlockingQueue<>();
+    private final int applyBatchSize;
+    private final long applyDelayMillis = Long.getLong("scheduler.journal.applyDelayMillis", DEFAULT_APPLY_DELAY_MILLIS);
+    private final Thread applier;
+    private volatile boolean running = true;
+
+    // Ids are handed out here because the rows reach the data base later
+    private final AtomicLong nextAllocationID = new AtomicLong();
+    private final AtomicLong nextTimeSlotID = new AtomicLong();
+    private final ConcurrentHashMap<Long, AllocatedTimeSlot> pendingInserts = new ConcurrentHashMap<>();
+    private final Set<Long> pendingDeletes = ConcurrentHashMap.newKeySet();
+
+    // Operations of the calling thread's open group, they go into one record when the group ends
+    private final ThreadLocal<List<Operation>> openGroup = new ThreadLocal<>();
+    // LSN of the calling thread's last record, sync waits for it
+    private final ThreadLocal<Long> lastAppendedLSN = new ThreadLocal<>();
+
+    WriteBehindJournal(Path journalPath) throws IOException, SQLException {
+        this(journalPath, Integer.getInteger("scheduler.journal.applyBatchSize", DEFAULT_APPLY_BATCH_SIZE), true);
+    }
+
+    /**
+     * Opens the journal, replays whatever the data base is missing and starts applying new records
+     * @param journalPath : journal file, created if it doesn't exist
+     * @param applyBatchSize : maximum number of records applied in one transaction
+     * @param applyInBackground : false to leave new records unapplied (used by tests to simulate a crash)
+     */
+    WriteBehindJournal(Path journalPath, int applyBatchSize, boolean applyInBackground) throws IOException, SQLException {
+        this.applyBatchSize = applyBatchSize;
+        this.channel = FileChannel.open(journalPath,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        DataBase.getInstance().update("CREATE TABLE IF NOT EXISTS journal_checkpoint " +
+                "(id INTEGER not NULL, lsn INTEGER not NULL, PRIMARY KEY ( id ))");
+        DataBase.getInstance().update("INSERT OR IGNORE INTO journal_checkpoint VALUES (1, 0)");
+        recover();
+        nextAllocationID.set(1 + DataBase.getInstance().query("SELECT max(id) AS id FROM allocations",
+                queryResult -> queryResult.getLong("id")));
+        nextTimeSlotID.set(1 + DataBase.getInstance().query("SELECT max(id) AS id FROM time_slots",
+                queryResult -> queryResult.getLong("id")));
+
+        this.applier = new Thread(this::applyLoop, "journal-applier");
+        this.applier.setDaemon(true);
+        if (applyInBackground) this.applier.start();
+    }
+
+    long nextAllocationID() {
+        return nextAllocationID.getAndIncrement();
+    }
+
+    long nextTimeSlotID() {
+        return nextTimeSlotID.getAndIncrement();
+    }
+
+    /**
+     * @param allocationID
+     * @return the booking if it is only in the journal so far, null otherwise
+     */
+    AllocatedTimeSlot getPendingInsert(long allocationID) {
+        return pendingInserts.get(allocationID);
+    }
+
+    /**
+     * @param allocationID
+     * @return true if the allocation is deleted in the journal but maybe not yet in the data base
+     */
+    boolean isPendingDelete(long allocationID) {
+        return pendingDeletes.contains(allocationID);
+    }
+
+    /**
+     * Function to run several operations as one journal record, records are all or nothing on replay
+     * Nested calls become part of the outer group.
+     * @param body : records the operations, throwing discards them
+     * @return whatever the body returned
+     */
+    <T> T inGroup(DataBase.TransactionBody<T> body) throws SQLException {
+        if (openGroup.get() != null) return body.run();
+        openGroup.set(new ArrayList<>());
+        try {
+            T result = body.run();
+            List<Operation> operations = openGroup.get();
+            if (!operations.isEmpty()) append(operations);
+            return result;
+        } finally {
+            openGroup.remove();
+        }
+    }
+
+    void recordInsert(AllocatedTimeSlot allocatedTimeSlot) {
+        record(new Operation(INSERT, allocatedTimeSlot));
+    }
+
+    void recordDelete(AllocatedTimeSlot allocatedTimeSlot) {
+        record(new Operation(DELETE, allocatedTimeSlot));
+    }
+
+    private void record(Operation operation) {
+        List<Operation> operations = openGroup.get();
+        if (operations == null) throw new IllegalStateException("Journal operations must be recorded in a group");
+        operations.add(operation);
+    }
+
+    /**
+     * Function to wait until the calling thread's records are on disk, nothing to do inside a group
+     * The records are already queued for the data base and in the indexes, so failing here would tell the client
+     * a booking failed that is kept anyway: a failed fsync is retried until it succeeds.
+     */
+    void sync() {
+        if (openGroup.get() != null) return;
+        Long lsn = lastAppendedLSN.get();
+        if (lsn == null) return;
+        awaitDurableRetrying(lsn);
+        lastAppendedLSN.remove();
+    }
+
+    /**
+     * Function to wait until every record appended so far is on disk, retrying like sync
+     */
+    void syncAll() {
+        long lsn;
+        synchronized (appendLock) {
+            lsn = lastLSN;
+        }
+        awaitDurableRetrying(lsn);
+    }
+
+    private void awaitDurableRetrying(long lsn) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    awaitDurable(lsn);
+                    return;
+                } catch (IOException ioe) {
+                    appLogger.error("Journal could not be synced, retrying: " + ioe.getMessage());
+                    // an interrupt would only make the next wait fail again, it is passed on once synced
+                    interrupted |= Thread.interrupted();
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(APPLY_RETRY_MILLIS));
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    private void append(List<Operation> operations) throws SQLException {
+        try {
+            synchronized (appendLock) {
+                long lsn = lastLSN + 1;
+                ByteBuffer record = encode(lsn, operations);
+                long recordStart = channel.position();
+                try {
+                    while (record.hasRemaining()) channel.write(record);
+                } catch (IOException ioe) {
+                    // the caller rolls back, a torn record left in the file would end the replay before later ones
+                    channel.truncate(recordStart);
+                    throw ioe;
+                }
+                lastLSN = lsn;
+                for (Operation operation : operations) {
+                    long allocationID = operation.allocatedTimeSlot.getAllocatedID();
+                    if (operation.type == INSERT) pendingInserts.put(allocationID, operation.allocatedTimeSlot);
+                    else pendingDeletes.add(allocationID);
+                }
+                unapplied.add(new Entry(lsn, operations));
+                lastAppendedLSN.set(lsn);
+            }
+        } catch (IOException ioe) {
+            throw new SQLException("Journal could not be written", ioe);
+        }
+    }
+
+    /**
+     * Function to wait until the given LSN is fsynced
+     * The first waiter forces everything written so far, waiters arriving meanwhile share the next force.
+     * @param lsn
+     */
+    private void awaitDurable(long lsn) throws IOException {
+        while (true) {
+            synchronized (flushMonitor) {
+                while (flushing && durableLSN < lsn) {
+                    try {
+                        flushMonitor.wait();
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for the journal", ie);
+                    }
+                }
+                if (durableLSN >= lsn) return;
+                flushing = true;
+            }
+            long target;
+            synchronized (appendLock) {
+                target = lastLSN;
+            }
+            boolean forced = false;
+            try {
+                force();
+                forced = true;
+            } finally {
+                synchronized (flushMonitor) {
+                    flushing = false;
+                    if (forced) durableLSN = Math.max(durableLSN, target);
+                    flushMonitor.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Function to fsync the journal file, tests override it to make the disk fail
+     */
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * Function to apply everything that is still pending and stop the background thread
+     */
+    void close() throws IOException {
+        running = false;
+        if (applier.isAlive()) {
+            try {
+                applier.join();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        channel.close();
+    }
+
+    private void applyLoop() {
+        List<Entry> batch = new ArrayList<>(applyBatchSize);
+        // a batch stays until it is in the data base, whatever goes wrong meanwhile is retried
+        while (running || !unapplied.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    Entry first = unapplied.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) continue;
+                    batch.add(first);
+                    if (running && applyDelayMillis > 0) Thread.sleep(applyDelayMillis);
+                    unapplied.drainTo(batch, applyBatchSize - 1);
+                }
+                long batchLSN = batch.get(batch.size() - 1).lsn;
+                // only what the journal already holds goes to the data base, the appenders normally sync it
+                synchronized (flushMonitor) {
+                    if (durableLSN < batchLSN) flushMonitor.wait(applyDelayMillis + 1);
+                }
+                awaitDurable(batchLSN);
+                while (!apply(batch)) {
+                    Thread.sleep(APPLY_RETRY_MILLIS);
+                }
+                for (Entry entry : batch) {
+                    for (Operation operation : entry.operations) {
+                        long allocationID = operation.allocatedTimeSlot.getAllocatedID();
+                        if (operation.type == INSERT) pendingInserts.remove(allocationID);
+                        else pendingDeletes.remove(allocationID);
+                    }
+                }
+                batch.clear();
+                truncateIfApplied(batchLSN);
+            } catch (InterruptedException ie) {
+                // keep going until everything is applied, close() waits for us
+            } catch (IOException ioe) {
+                appLogger.error("Journal could not be synced: " + ioe.getMessage());
+                if (!batch.isEmpty()) LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(APPLY_RETRY_MILLIS));
+            }
+        }
+    }
+
+    /**
+     * Function to apply journal records to the tables and move the checkpoint, in one transaction
+     * @param entries
+     * @return true if applied
+     */
+    private boolean apply(List<Entry> entries) {
+        try {
+            DataBase.getInstance().inTransaction(() -> {
+                for (Entry entry : entries) {
+                    for (Operation operation : entry.operations) {
+                        AllocatedTimeSlot slot = operation.allocatedTimeSlot;
+                        if (operation.type == INSERT) {
+                            DataBase.getInstance().update("INSERT INTO time_slots values(?, ?, ?, ?, ?)",
+                                    slot.getTimeSlotID(),
+                                    slot.getStartDateTime().toEpochMilli(),
+                                    slot.getDuration().toMillis(),
+                                    slot.getRecurInterval().toMillis(),
+                                    slot.getRecurEndDateTime().toEpochMilli());
+                            DataBase.getInstance().update("INSERT INTO allocations values(?, ?, ?, ?)",
+                                    slot.getAllocatedID(),
+                                    slot.getProjectorID(),
+                                    slot.getTimeSlotID(),
+                                    slot.getTeamID());
+                        } else {
+                            DataBase.getInstance().update("DELETE FROM allocations WHERE id = ?", slot.getAllocatedID());
+                            DataBase.getInstance().update("DELETE FROM time_slots WHERE id = ?", slot.getTimeSlotID());
+                        }
+                    }
+                }
+                DataBase.getInstance().update("UPDATE journal_checkpoint SET lsn = ? WHERE id = 1",
+                        entries.get(entries.size() - 1).lsn);
+                return null;
+            });
+            return true;
+        } catch (SQLException sqle) {
+            appLogger.error("Could not apply " + entries.size() + " journal records: " + sqle.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Function to empty the journal once the data base has caught up with all of it
+     * @param appliedLSN
+     */
+    private void truncateIfApplied(long appliedLSN) throws IOException {
+        synchronized (appendLock) {
+            if (appliedLSN != lastLSN || !unapplied.isEmpty()) return;
+        }
+        try {
+            if (!checkpointDataBase()) return;
+        } catch (SQLException sqle) {
+            appLogger.error("Data base checkpoint failed, keeping the journal: " + sqle.getMessage());
+            return;
+        }
+        synchronized (appendLock) {
+            if (appliedLSN == lastLSN && unapplied.isEmpty()) {
+                channel.truncate(0);
+            }
+        }
+    }
+
+    /**
+     * Function to checkpoint the data base's write-ahead log into the data base file
+     * With synchronous=NORMAL the applied commits are only durable once a checkpoint has copied them and synced the
+     * file. A passive checkpoint stops at frames readers still need, until it gets them all the journal is kept.
+     * @return true if every frame of the log was checkpointed
+     */
+    private boolean checkpointDataBase() throws SQLException {
+        // one row: busy, frames in the log, frames checkpointed (both -1 when not in WAL mode)
+        return DataBase.getInstance().query("PRAGMA wal_checkpoint(PASSIVE)",
+                queryResult -> queryResult.getInt(1) == 0 && queryResult.getInt(2) == queryResult.getInt(3));
+    }
+
+    /**
+     * Function to bring the data base in sync with the journal, after a crash or an unclean shutdown
+     */
+    private void recover() throws IOException, SQLException {
+        long checkpoint = DataBase.getInstance().query("SELECT lsn FROM journal_checkpoint WHERE id = 1",
+                queryResult -> queryResult.getLong("lsn"));
+        List<Entry> entries = new ArrayList<>();
+        long validBytes = 0;
+        long fileSize = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        long readLSN = checkpoint;
+        while (validBytes + RECORD_HEADER_BYTES <= fileSize) {
+            header.clear();
+            channel.read(header, validBytes);
+            header.flip();
+            int length = header.getInt();
+            long checksum = header.getLong();
+            if (length <= 0 || validBytes + RECORD_HEADER_BYTES + length > fileSize) break;
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            channel.read(payload, validBytes + RECORD_HEADER_BYTES);
+            payload.flip();
+            CRC32 crc = new CRC32();
+            crc.update(payload.array(), 0, length);
+            if (crc.getValue() != checksum) break;
+            Entry entry = decode(payload);
+            if (entry.lsn > checkpoint) entries.add(entry);
+            readLSN = Math.max(readLSN, entry.lsn);
+            validBytes += RECORD_HEADER_BYTES + length;
+        }
+        if (validBytes < fileSize) {
+            appLogger.info("Dropping " + (fileSize - validBytes) + " bytes of incomplete journal record");
+        }
+        if (!entries.isEmpty()) {
+            appLogger.info("Replaying " + entries.size() + " journal records after LSN " + checkpoint);
+            if (!apply(entries)) throw new SQLException("Journal could not be replayed");
+        }
+        if (checkpointDataBase()) {
+            channel.truncate(0);
+        } else {
+            // the records stay until the data base has them for good, new ones go after them
+            appLogger.info("Data base checkpoint incomplete, keeping the journal");
+            channel.truncate(validBytes);
+            channel.position(validBytes);
+        }
+        channel.force(false);
+        lastLSN = readLSN;
+        durableLSN = readLSN;
+    }
+
+    private static ByteBuffer encode(long lsn, List<Operation> operations) {
+        int payloadLength = 8 + 4;
+        for (Operation operation : operations) {
+            payloadLength += 1 + (operation.type == INSERT ? 8 * 8 : 2 * 8);
+        }
+        ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+        payload.putLong(lsn);
+        payload.putInt(operations.size());
+        for (Operation operation : operations) {
+            AllocatedTimeSlot slot = operation.allocatedTimeSlot;
+            payload.put(operation.type);
+            payload.putLong(slot.getAllocatedID());
+            payload.putLong(slot.getTimeSlotID());
+            if (operation.type == INSERT) {
+                payload.putLong(slot.getProjectorID());
+                payload.putLong(slot.getTeamID());
+                payload.putLong(slot.getStartDateTime().toEpochMilli());
+                payload.putLong(slot.getDuration().toMillis());
+                payload.putLong(slot.getRecurInterval().toMillis());
+                payload.putLong(slot.getRecurEndDateTime().toEpochMilli());
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), 0, payloadLength);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payloadLength);
+        record.putInt(payloadLength);
+        record.putLong(crc.getValue());
+        record.put(payload.array());
+        record.flip();
+        return record;
+    }
+
+    private static Entry decode(ByteBuffer payload) {
+        long lsn = payload.getLong();
+        int count = payload.getInt();
+        List<Operation> operations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte type = payload.get();
+            long allocationID = payload.getLong();
+            long timeSlotID = payload.getLong();
+            AllocatedTimeSlot slot;
+            if (type == INSERT) {
+                long projectorID = payload.getLong();
+                long teamID = payload.getLong();
+                slot = new AllocatedTimeSlot(allocationID, projectorID, timeSlotID, teamID,
+                        Instant.ofEpochMilli(payload.getLong()),
+                        Duration.ofMillis(payload.getLong()),
+                        Duration.ofMillis(payload.getLong()),
+                        Instant.ofEpochMilli(payload.getLong()));
+            } else {
+                slot = new AllocatedTimeSlot(allocationID, -1, timeSlotID, -1,
+                        Instant.EPOCH, Duration.ZERO, Duration.ZERO, Instant.EPOCH);
+            }
+            operations.add(new Operation(type, slot));
+        }
+        return new Entry(lsn, operations);
+    }
+}
@@ -0,0 +1,159 @@
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static java.time.temporal.TemporalAdjusters.firstDayOfYear;
+
+// Replays the same booking trace with every allocation strategy and compares how well they use the fleet.
+// Not a unit test, run it with:
+// mvn test-compile exec:java -Dexec.mainClass="AllocationStrategyBenchmark" -Dexec.classpathScope=test
+// The trace covers four weeks of working hours (8:00 to 18:00, five days a week) on ten projectors, booked at
+// about nine tenths of their capacity: short one time bookings, long one time bookings and weekly recurring
+// bookings, arriving in random order. No data base is used.
+// For every strategy it prints the share of each kind of booking that got a projector, the fragmentation of
+// the free time left (share of the free working minutes in gaps shorter than two hours) and the time taken
+// per allocation decision.
+// -Dbenchmark.seed=n changes the trace (default 1).
+public class AllocationStrategyBenchmark {
+    private static final int PROJECTORS = 10;
+    private static final int WEEKS = 4;
+    private static final int WORKING_DAYS = 5;
+    private static final int DAY_START_MINUTES = 8 * 60;
+    private static final int DAY_END_MINUTES = 18 * 60;
+    private static final int SHORT_BOOKINGS = 1000;
+    private static final int LONG_BOOKINGS = 80;
+    private static final int RECURRING_BOOKINGS = 60;
+    private static final int RECURRING_OCCURRENCES = 4;
+    private static final int SMALL_GAP_MINUTES = 120;
+    private static final String[] KINDS = {"short", "long", "recurring"};
+
+    private static class Request {
+        final int kind;
+        final TimeSlot timeSlot;
+
+        Request(int kind, TimeSlot timeSlot) {
+            this.kind = kind;
+            this.timeSlot = timeSlot;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Instant startOfYear = LocalDate.now().with(firstDayOfYear()).atStartOfDay(ZoneId.systemDefault()).toInstant();
+        // the trace starts a week into the year, bookings need to start after the start of the year
+        Instant firstDay = startOfYear.plus(Duration.ofDays(7));
+        List<Request> trace = trace(firstDay, new Random(Long.getLong("benchmark.seed", 1L)));
+
+        // first pass warms up, only the second one is printed
+        for (int pass = 0; pass < 2; pass++) {
+            for (AllocationStrategy.Type type : AllocationStrategy.Type.values()) {
+                replay(type, trace, firstDay, pass == 1);
+            }
+        }
+    }
+
+    private static List<Request> trace(Instant firstDay, Random random) {
+        List<Request> trace = new ArrayList<>();
+        for (int i = 0; i < SHORT_BOOKINGS; i++) {
+            int minutes = 30 + 15 * random.nextInt(5);
+            trace.add(new Request(0, oneTime(firstDay, random, WEEKS, minutes)));
+        }
+        for (int i = 0; i < LONG_BOOKINGS; i++) {
+            int minutes = 60 * (4 + random.nextInt(5));
+            trace.add(new Request(1, oneTime(firstDay, random, WEEKS, minutes)));
+        }
+        for (int i = 0; i < RECURRING_BOOKINGS; i++) {
+            int minutes = 60 + 30 * random.nextInt(3);
+            TimeSlot first = oneTime(firstDay, random, 1, minutes);
+            Duration week = Duration.ofDays(7);
+            trace.add(new Request(2, new TimeSlot(first.getStartDateTime(), first.getDuration(), week,
+                    first.getStartDateTime().plus(week.multipliedBy(RECURRING_OCCURRENCES - 1)).plusSeconds(60), 1)));
+        }
+        Collections.shuffle(trace, random);
+        return trace;
+    }
+
+    /**
+     * @return a booking of the given length on a random working day within the first weeks, inside working hours
+     */
+    private static TimeSlot oneTime(Instant firstDay, Random random, int weeks, int minutes) {
+        int day = 7 * random.nextInt(weeks) + random.nextInt(WORKING_DAYS);
+        int start = DAY_START_MINUTES + 15 * random.nextInt((DAY_END_MINUTES - DAY_START_MINUTES - minutes) / 15 + 1);
+        Instant startDateTime = firstDay.plus(Duration.ofDays(day)).plus(Duration.ofMinutes(start));
+        return new TimeSlot(startDateTime, Duration.ofMinutes(minutes), Duration.ZERO, startDateTime, 1);
+    }
+
+    private static void replay(AllocationStrategy.Type type, List<Request> trace, Instant firstDay, boolean print) throws Exception {
+        ProjectorScheduler scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, PROJECTORS, false);
+        scheduler.setAllocationStrategy(AllocationStrategy.create(type));
+        int[] requested = new int[KINDS.length];
+        int[] accepted = new int[KINDS.length];
+        long[] decisionNanos = new long[trace.size()];
+        long allocationID = 0;
+        for (int i = 0; i < trace.size(); i++) {
+            Request request = trace.get(i);
+            TimeSlot timeSlot = request.timeSlot;
+            boolean recurring = !timeSlot.getRecurInterval().isZero();
+            long before = System.nanoTime();
+            int projectorID = recurring ? scheduler.getAvailableProjectorIDForRecurringMeeting(timeSlot)
+                    : scheduler.getAvailableProjectorID(timeSlot);
+            decisionNanos[i] = System.nanoTime() - before;
+            requested[request.kind]++;
+            if (projectorID == -1) continue;
+            accepted[request.kind]++;
+            allocationID++;
+            scheduler.restoreInMemory(new AllocatedTimeSlot(allocationID, projectorID, allocationID, 1,
+                    timeSlot.getStartDateTime(), timeSlot.getDuration(), timeSlot.getRecurInterval(),
+                    timeSlot.getRecurEndDateTime()));
+        }
+        if (!print) return;
+
+        Arrays.sort(decisionNanos);
+        long totalNanos = 0;
+        for (long nanos : decisionNanos) totalNanos += nanos;
+        StringBuilder acceptance = new StringBuilder();
+        int totalAccepted = 0;
+        for (int kind = 0; kind < KINDS.length; kind++) {
+            acceptance.append(String.format("%s %5.1f%%  ", KINDS[kind], 100.0 * accepted[kind] / requested[kind]));
+            totalAccepted += accepted[kind];
+        }
+        System.out.printf("%-13s accepted: %sall %5.1f%%, fragmentation %5.1f%%, decision mean %6.0f ns p99 %7d ns%n",
+                type, acceptance, 100.0 * totalAccepted / trace.size(), 100 * fragmentation(scheduler, firstDay),
+                (double) totalNanos / decisionNanos.length, decisionNanos[(int) (decisionNanos.length * 0.99)]);
+    }
+
+    /**
+     * @return share of the free working minutes that are in gaps shorter than SMALL_GAP_MINUTES
+     */
+    private static double fragmentation(ProjectorScheduler scheduler, Instant firstDay) throws Exception {
+        long freeMinutes = 0;
+        long smallGapMinutes = 0;
+        for (int projectorID = 0; projectorID < PROJECTORS; projectorID++) {
+            for (int week = 0; week < WEEKS; week++) {
+                for (int weekDay = 0; weekDay < WORKING_DAYS; weekDay++) {
+                    Instant day = firstDay.plus(Duration.ofDays(7 * week + weekDay));
+                    Instant dayStart = day.plus(Duration.ofMinutes(DAY_START_MINUTES));
+                    Instant dayEnd = day.plus(Duration.ofMinutes(DAY_END_MINUTES));
+                    List<long[]> gaps = new ArrayList<>();
+                    long[] gapStart = {dayStart.getEpochSecond() / 60};
+                    scheduler.writeProjectorSchedule(projectorID, dayStart, dayEnd, Integer.MAX_VALUE, (start, duration) -> {
+                        gaps.add(new long[]{gapStart[0], start.getEpochSecond() / 60});
+                        gapStart[0] = start.plus(duration).getEpochSecond() / 60;
+                    });
+                    gaps.add(new long[]{gapStart[0], dayEnd.getEpochSecond() / 60});
+                    for (long[] gap : gaps) {
+                        long minutes = gap[1] - gap[0];
+                        freeMinutes += minutes;
+                        if (minutes > 0 && minutes < SMALL_GAP_MINUTES) smallGapMinutes += minutes;
+                    }
+                }
+            }
+        }
+        return freeMinutes == 0 ? 0 : (double) smallGapMinutes / freeMinutes;
+    }
+}
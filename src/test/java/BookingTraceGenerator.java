@@ -0,0 +1,161 @@
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static java.time.temporal.TemporalAdjusters.firstDayOfYear;
+
+// Builds a synthetic trace of operations on the /projector/* endpoints for RestLoadHarness:
+// one time and recurring bookings, updates, deletes and status reads, mixed by weight.
+// Bookings fall within working hours (8:00 to 18:00 on weekdays) with probability businessHoursShare,
+// anywhere in the day otherwise, on the days starting a week into the current year.
+// Updates and deletes name an earlier booking of the trace by its index, the allocation id is only known
+// once that booking has been answered.
+public class BookingTraceGenerator {
+
+    enum Kind {
+        REQUEST("request"),
+        RECURRING_REQUEST("request-recurring"),
+        UPDATE("update"),
+        DELETE("delete"),
+        STATUS("status");
+
+        final String endpoint;
+
+        Kind(String endpoint) {
+            this.endpoint = endpoint;
+        }
+    }
+
+    static class Operation {
+        final Kind kind;
+        // start of the time slot booked, moved to, or read
+        final Instant start;
+        final Duration duration;
+        // weekly recurrence of a recurring request, ZERO otherwise
+        final Duration recurInterval;
+        final Instant recurEnd;
+        // index of the booking updated or deleted, projector id of a status read, -1 otherwise
+        final int target;
+
+        Operation(Kind kind, Instant start, Duration duration, Duration recurInterval, Instant recurEnd, int target) {
+            this.kind = kind;
+            this.start = start;
+            this.duration = duration;
+            this.recurInterval = recurInterval;
+            this.recurEnd = recurEnd;
+            this.target = target;
+        }
+    }
+
+    private final Random random;
+    private final int[] weights = new int[Kind.values().length];
+    private final double businessHoursShare;
+    private final int days;
+    private final int projectors;
+    private final ZonedDateTime firstDay;
+
+    /**
+     * @param seed
+     * @param mix : weight of every kind of operation, e.g. "request=50,recurring=5,update=10,delete=10,status=25"
+     * @param businessHoursShare : share of the time slots within working hours
+     * @param days : number of days the time slots are spread over
+     * @param projectors : status reads are spread over projector ids 0 to projectors - 1
+     */
+    public BookingTraceGenerator(long seed, String mix, double businessHoursShare, int days, int projectors) {
+        this.random = new Random(seed);
+        this.businessHoursShare = businessHoursShare;
+        this.days = days;
+        this.projectors = projectors;
+        // a week into the year, bookings need to start after the start of the year
+        this.firstDay = LocalDate.now().with(firstDayOfYear()).plusDays(7).atStartOfDay(ZoneId.systemDefault());
+        for (String entry : mix.split(",")) {
+            String[] nameAndWeight = entry.trim().split("=");
+            weights[kindOf(nameAndWeight[0].trim()).ordinal()] = Integer.parseInt(nameAndWeight[1].trim());
+        }
+    }
+
+    private static Kind kindOf(String name) {
+        for (Kind kind : Kind.values()) {
+            if (kind.name().equalsIgnoreCase(name) || kind.endpoint.equalsIgnoreCase(name)
+                    || (kind == Kind.RECURRING_REQUEST && name.equalsIgnoreCase("recurring"))) {
+                return kind;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation " + name);
+    }
+
+    /**
+     * Function to generate a trace
+     * @param length : number of operations
+     * @return operations in the order they are to be sent
+     */
+    public List<Operation> generate(int length) {
+        int totalWeight = 0;
+        for (int weight : weights) totalWeight += weight;
+        List<Operation> trace = new ArrayList<>(length);
+        List<Integer> bookings = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            Kind kind = pick(random.nextInt(totalWeight));
+            // nothing to update or delete before the first booking
+            if ((kind == Kind.UPDATE || kind == Kind.DELETE) && bookings.isEmpty()) kind = Kind.REQUEST;
+            switch (kind) {
+                case REQUEST:
+                    bookings.add(i);
+                    trace.add(oneTime(Kind.REQUEST, -1));
+                    break;
+                case RECURRING_REQUEST: {
+                    bookings.add(i);
+                    Instant start = slotStart(Math.min(days, 7));
+                    Duration week = Duration.ofDays(7);
+                    trace.add(new Operation(kind, start, Duration.ofMinutes(30 * (1 + random.nextInt(4))), week,
+                            start.plus(week.multipliedBy(Math.max(1, days / 7) - 1)).plusSeconds(60), -1));
+                    break;
+                }
+                case UPDATE:
+                    trace.add(oneTime(Kind.UPDATE, bookings.get(random.nextInt(bookings.size()))));
+                    break;
+                case DELETE:
+                    trace.add(new Operation(kind, null, null, Duration.ZERO, null,
+                            bookings.remove(random.nextInt(bookings.size()))));
+                    break;
+                case STATUS: {
+                    Instant day = firstDay.plusDays(random.nextInt(days)).toInstant();
+                    trace.add(new Operation(kind, day, Duration.ofDays(1), Duration.ZERO, null, random.nextInt(projectors)));
+                    break;
+                }
+            }
+        }
+        return trace;
+    }
+
+    private Kind pick(int weight) {
+        for (Kind kind : Kind.values()) {
+            weight -= weights[kind.ordinal()];
+            if (weight < 0) return kind;
+        }
+        throw new IllegalStateException("Weights changed while picking");
+    }
+
+    private Operation oneTime(Kind kind, int target) {
+        Instant start = slotStart(days);
+        return new Operation(kind, start, Duration.ofMinutes(15 * (2 + random.nextInt(7))), Duration.ZERO, start, target);
+    }
+
+    /**
+     * @return start of a time slot on one of the first days, on a quarter hour
+     */
+    private Instant slotStart(int withinDays) {
+        ZonedDateTime day = firstDay.plusDays(random.nextInt(withinDays));
+        if (random.nextDouble() < businessHoursShare) {
+            // move weekends to the Monday after
+            while (day.getDayOfWeek().getValue() > 5) day = day.plusDays(1);
+            return day.plusMinutes(8 * 60 + 15 * random.nextInt(4 * 9)).toInstant();
+        }
+        return day.plusMinutes(15 * random.nextInt(4 * 24)).toInstant();
+    }
+}
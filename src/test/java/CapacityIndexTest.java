@@ -0,0 +1,81 @@
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+// Checks the capacity index against a plain count per minute
+public class CapacityIndexTest {
+
+    private void randomOperations(int axisLength, long seed) {
+        CapacityIndex capacityIndex = new CapacityIndex(axisLength);
+        int[] expected = new int[axisLength];
+        Random random = new Random(seed);
+        for (int i = 0; i < 5000; i++) {
+            // ranges may stick out of the time-axis on either side
+            int start = random.nextInt(axisLength + 20) - 10;
+            int end = start + random.nextInt(Math.max(1, axisLength / 3));
+            if (random.nextBoolean()) {
+                int delta = random.nextBoolean() ? 1 : -1;
+                capacityIndex.add(start, end, delta);
+                for (int minute = Math.max(0, start); minute < Math.min(axisLength, end); minute++) {
+                    expected[minute] += delta;
+                }
+            } else {
+                int max = Integer.MIN_VALUE;
+                for (int minute = Math.max(0, start); minute < Math.min(axisLength, end); minute++) {
+                    max = Math.max(max, expected[minute]);
+                }
+                assertEquals(max == Integer.MIN_VALUE ? 0 : max, capacityIndex.maxBooked(start, end));
+            }
+        }
+        capacityIndex.reset(expected);
+        for (int minute = 0; minute < axisLength; minute++) {
+            assertEquals(expected[minute], capacityIndex.maxBooked(minute, minute + 1));
+        }
+    }
+
+    @Test
+    public void matchesCountPerMinute() {
+        // lengths that are and aren't powers of two
+        for (int axisLength : new int[]{1, 2, 7, 64, 100, 1000, 1025}) {
+            randomOperations(axisLength, axisLength);
+        }
+    }
+
+    /**
+     * Queries run next to adds without a lock of their own, they must still only see counts that existed
+     */
+    @Test
+    public void queriesDuringAddsSeeConsistentCounts() throws Exception {
+        int axisLength = 1000;
+        int writerCount = 3;
+        CapacityIndex capacityIndex = new CapacityIndex(axisLength);
+        Thread[] writers = new Thread[writerCount];
+        for (int w = 0; w < writerCount; w++) {
+            int writer = w;
+            writers[w] = new Thread(() -> {
+                Random random = new Random(writer);
+                for (int i = 0; i < 20000; i++) {
+                    int start = random.nextInt(axisLength);
+                    int end = start + 1 + random.nextInt(200);
+                    // every writer has at most one booking at a time
+                    capacityIndex.add(start, end, 1);
+                    capacityIndex.add(start, end, -1);
+                }
+            });
+            writers[w].start();
+        }
+        Random random = new Random(42);
+        boolean writing = true;
+        while (writing) {
+            int start = random.nextInt(axisLength);
+            int booked = capacityIndex.maxBooked(start, start + 1 + random.nextInt(300));
+            assertTrue(booked >= 0 && booked <= writerCount);
+            writing = false;
+            for (Thread writer : writers) writing |= writer.isAlive();
+        }
+        for (Thread writer : writers) writer.join();
+        assertEquals(0, capacityIndex.maxBooked(0, axisLength));
+    }
+}
@@ -0,0 +1,104 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+// Checks the fleet tree against probing every projector one after another
+public class FleetIndexTest {
+    private static final int AXIS = 2000;
+
+    private static int expectedCandidate(List<IntervalIndex> leaves, int fromProjectorID, int start, int end) {
+        for (int i = fromProjectorID; i < leaves.size(); i++) {
+            if (!leaves.get(i).intersects(start, end)) return i;
+        }
+        return -1;
+    }
+
+    private void randomOperations(IntervalIndex.Type type, int projectorCount, long seed) {
+        List<IntervalIndex> leaves = new ArrayList<>();
+        for (int i = 0; i < projectorCount; i++) leaves.add(IntervalIndex.create(type, AXIS));
+        FleetIndex fleetIndex = new FleetIndex(leaves);
+        Random random = new Random(seed);
+        for (int i = 0; i < 20000; i++) {
+            int projectorID = random.nextInt(projectorCount);
+            int start = random.nextInt(AXIS);
+            int end = Math.min(AXIS, start + 1 + random.nextInt(120));
+            switch (random.nextInt(3)) {
+                case 0:
+                    fleetIndex.add(projectorID, start, end);
+                    break;
+                case 1:
+                    fleetIndex.remove(projectorID, start, end);
+                    break;
+                default:
+                    assertEquals(expectedCandidate(leaves, projectorID, start, end),
+                            fleetIndex.nextCandidate(projectorID, start, end));
+            }
+        }
+    }
+
+    @Test
+    public void matchesLinearScan() {
+        // fleets that fill the tree exactly and ones that leave padding
+        for (int projectorCount : new int[]{1, 3, 8, 37}) {
+            randomOperations(IntervalIndex.Type.SORTED_ARRAY, projectorCount, projectorCount);
+            randomOperations(IntervalIndex.Type.BITMAP, projectorCount, projectorCount);
+        }
+    }
+
+    @Test
+    public void rebuildPicksUpDirectChanges() {
+        List<IntervalIndex> leaves = new ArrayList<>();
+        for (int i = 0; i < 5; i++) leaves.add(IntervalIndex.create(IntervalIndex.Type.SORTED_ARRAY, AXIS));
+        FleetIndex fleetIndex = new FleetIndex(leaves);
+        for (IntervalIndex leaf : leaves) leaf.add(100, 200);
+        fleetIndex.rebuild();
+        assertEquals(-1, fleetIndex.nextCandidate(0, 150, 160));
+        fleetIndex.remove(3, 150, 160);
+        assertEquals(3, fleetIndex.nextCandidate(0, 150, 160));
+        assertEquals(-1, fleetIndex.nextCandidate(4, 150, 160));
+        assertEquals(0, fleetIndex.nextCandidate(0, 200, 300));
+    }
+
+    /**
+     * Writers on different projectors run at the same time, no node may keep minutes its projectors freed
+     */
+    @Test
+    public void concurrentChangesKeepTheTreeExact() throws Exception {
+        int projectorCount = 13;
+        int threadCount = 4;
+        List<IntervalIndex> leaves = new ArrayList<>();
+        for (int i = 0; i < projectorCount; i++) leaves.add(IntervalIndex.create(IntervalIndex.Type.SORTED_ARRAY, AXIS));
+        FleetIndex fleetIndex = new FleetIndex(leaves);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                Random random = new Random(thread);
+                for (int i = 0; i < 20000; i++) {
+                    // each projector has one writer, like under the scheduler's projector locks
+                    int projectorID = thread + threadCount * random.nextInt((projectorCount - thread + threadCount - 1) / threadCount);
+                    int start = random.nextInt(AXIS);
+                    int end = Math.min(AXIS, start + 1 + random.nextInt(120));
+                    if (random.nextBoolean()) {
+                        fleetIndex.add(projectorID, start, end);
+                    } else {
+                        fleetIndex.remove(projectorID, start, end);
+                    }
+                    fleetIndex.nextCandidate(0, start, end);
+                }
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+        for (int start = 0; start < AXIS; start += 7) {
+            for (int projectorID = 0; projectorID < projectorCount; projectorID++) {
+                assertEquals(expectedCandidate(leaves, projectorID, start, start + 15),
+                        fleetIndex.nextCandidate(projectorID, start, start + 15));
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.time.temporal.TemporalAdjusters.firstDayOfYear;
+
+// Measures how long finding a free projector for a one time booking takes as the fleet grows,
+// with the fleet index and with probing the projectors one after another.
+// Not a unit test, run it with:
+// mvn test-compile exec:java -Dexec.mainClass="FleetSearchBenchmark" -Dexec.classpathScope=test
+// Every hour of the benchmarked week has a single free projector, picked at random, so the search has to
+// get past the booked ones. No data base is used.
+// -Dbenchmark.fleets=n1,n2,... sets the fleet sizes (default 3,300,3000).
+// It then measures booking and freeing on the fleet index from several threads at once, each thread with its
+// own projectors as under the projector locks, against the same changes serialized on one fleet-wide lock
+// (what FleetIndex did before it locked node by node). -Dbenchmark.threads=t1,t2,... (default 1,2,4,8).
+public class FleetSearchBenchmark {
+    private static final int HOURS = 7 * 24;
+    private static final int SEARCHES = 20000;
+    private static final int ROUNDS = 5;
+    private static final int WRITE_PROJECTORS = 300;
+    private static final long WRITE_MILLIS = 2000;
+
+    public static void main(String[] args) throws InterruptedException {
+        Instant startOfYear = LocalDate.now().with(firstDayOfYear()).atStartOfDay(ZoneId.systemDefault()).toInstant();
+        // the week starts a day into the year, bookings need to start after the start of the year
+        int firstHour = 24;
+
+        for (String fleet : System.getProperty("benchmark.fleets", "3,300,3000").split(",")) {
+            int projectorCount = Integer.parseInt(fleet.trim());
+            ProjectorScheduler scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, projectorCount, false);
+            Random random = new Random(projectorCount);
+            int[] freeProjector = new int[HOURS];
+            for (int hour = 0; hour < HOURS; hour++) freeProjector[hour] = random.nextInt(projectorCount);
+
+            long before = System.nanoTime();
+            long bookings = 0;
+            for (int projectorID = 0; projectorID < projectorCount; projectorID++) {
+                for (int hour = 0; hour < HOURS; hour++) {
+                    if (freeProjector[hour] == projectorID) continue;
+                    int start = (firstHour + hour) * 60;
+                    scheduler.fleetIndex.add(projectorID, start, start + 60);
+                    bookings++;
+                }
+            }
+            long bookingNanos = System.nanoTime() - before;
+
+            TimeSlot[] requests = new TimeSlot[SEARCHES];
+            int[] expected = new int[SEARCHES];
+            for (int i = 0; i < SEARCHES; i++) {
+                int hour = random.nextInt(HOURS);
+                Instant start = startOfYear.plus(Duration.ofMinutes((firstHour + hour) * 60 + 10));
+                requests[i] = new TimeSlot(start, Duration.ofMinutes(30), Duration.ZERO, start, 1);
+                expected[i] = freeProjector[hour];
+            }
+
+            long indexed = Long.MAX_VALUE;
+            long linear = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                scheduler.setFleetIndexEnabled(true);
+                indexed = Math.min(indexed, search(scheduler, requests, expected));
+                scheduler.setFleetIndexEnabled(false);
+                linear = Math.min(linear, search(scheduler, requests, expected));
+            }
+            System.out.printf("%5d projectors: %7d bookings (%.0f ns each), search with fleet index %9.0f ns, linear %9.0f ns%n",
+                    projectorCount, bookings, (double) bookingNanos / Math.max(1, bookings),
+                    (double) indexed / SEARCHES, (double) linear / SEARCHES);
+        }
+
+        System.out.printf("Fleet index writes, %d projectors, %d cores%n", WRITE_PROJECTORS,
+                Runtime.getRuntime().availableProcessors());
+        for (String threads : System.getProperty("benchmark.threads", "1,2,4,8").split(",")) {
+            int threadCount = Integer.parseInt(threads.trim());
+            double perNode = writeThroughput(threadCount, null);
+            double fleetWide = writeThroughput(threadCount, new ReentrantLock());
+            System.out.printf("%3d threads: %10.0f changes/s locking node by node, %10.0f changes/s with one fleet lock%n",
+                    threadCount, perNode, fleetWide);
+        }
+    }
+
+    /**
+     * @param fleetLock : lock every change is made under, null for none
+     * @return bookings and frees per second over all threads
+     */
+    private static double writeThroughput(int threadCount, ReentrantLock fleetLock) throws InterruptedException {
+        ProjectorScheduler scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, WRITE_PROJECTORS, false);
+        FleetIndex fleetIndex = scheduler.fleetIndex;
+        long deadline = System.nanoTime() + WRITE_MILLIS * 1000000;
+        long[] changes = new long[threadCount];
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                Random random = new Random(thread);
+                while (System.nanoTime() < deadline) {
+                    // projectors are split between the threads, one writer per projector
+                    int projectorID = thread + threadCount * random.nextInt((WRITE_PROJECTORS - thread + threadCount - 1) / threadCount);
+                    int start = (24 + random.nextInt(HOURS)) * 60;
+                    if (fleetLock != null) fleetLock.lock();
+                    try {
+                        fleetIndex.add(projectorID, start, start + 60);
+                        fleetIndex.remove(projectorID, start, start + 60);
+                    } finally {
+                        if (fleetLock != null) fleetLock.unlock();
+                    }
+                    changes[thread] += 2;
+                }
+            }));
+        }
+        long before = System.nanoTime();
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+        long nanos = System.nanoTime() - before;
+        long total = 0;
+        for (long threadChanges : changes) total += threadChanges;
+        return total * 1e9 / nanos;
+    }
+
+    private static long search(ProjectorScheduler scheduler, TimeSlot[] requests, int[] expected) {
+        long before = System.nanoTime();
+        for (int i = 0; i < requests.length; i++) {
+            int projectorID = scheduler.getAvailableProjectorID(requests[i]);
+            if (projectorID != expected[i]) {
+                throw new IllegalStateException("Expected projector " + expected[i] + ", got " + projectorID);
+            }
+        }
+        return System.nanoTime() - before;
+    }
+}
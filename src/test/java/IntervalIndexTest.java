@@ -0,0 +1,144 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+// Checks every IntervalIndex implementation against the original RangeSet behaviour
+public class IntervalIndexTest {
+    private static final int AXIS = 2000;
+
+    private static List<int[]> ranges(IntervalIndex index) {
+        List<int[]> ranges = new ArrayList<>();
+        index.forEachRange((start, end) -> ranges.add(new int[]{start, end}));
+        return ranges;
+    }
+
+    private static void assertSameRanges(IntervalIndex expected, IntervalIndex actual) {
+        List<int[]> expectedRanges = ranges(expected);
+        List<int[]> actualRanges = ranges(actual);
+        assertEquals(expectedRanges.size(), actual.rangeCount());
+        assertEquals(expectedRanges.size(), actualRanges.size());
+        for (int i = 0; i < expectedRanges.size(); i++) {
+            assertArrayEquals(expectedRanges.get(i), actualRanges.get(i));
+        }
+    }
+
+    /**
+     * @param margin : minutes before and after the axis the intervals may reach into
+     */
+    private void randomOperations(IntervalIndex.Type type, long seed, int margin) {
+        int low = -margin;
+        int high = AXIS + margin;
+        IntervalIndex expected = IntervalIndex.create(IntervalIndex.Type.RANGE_SET, AXIS);
+        IntervalIndex actual = IntervalIndex.create(type, AXIS);
+        Random random = new Random(seed);
+        for (int i = 0; i < 5000; i++) {
+            int start = low + random.nextInt(high - low);
+            int end = Math.min(high, start + random.nextInt(60));
+            switch (random.nextInt(4)) {
+                case 0:
+                    expected.add(start, end);
+                    actual.add(start, end);
+                    break;
+                case 1:
+                    expected.remove(start, end);
+                    actual.remove(start, end);
+                    break;
+                case 2:
+                    assertEquals(expected.intersects(start, end), actual.intersects(start, end));
+                    break;
+                default:
+                    int length = end - start;
+                    int freeStart = start;
+                    while (expected.intersects(freeStart, freeStart + length)) freeStart++;
+                    assertEquals(freeStart, expected.nextFreeStart(start, length));
+                    assertEquals(freeStart, actual.nextFreeStart(start, length));
+                    int bookedStart = start;
+                    while (bookedStart < high && !expected.intersects(bookedStart, bookedStart + 1)) bookedStart++;
+                    if (bookedStart == high) bookedStart = Integer.MAX_VALUE;
+                    assertEquals(bookedStart, expected.nextBookedStart(start));
+                    assertEquals(bookedStart, actual.nextBookedStart(start));
+                    int bookedEnd = end;
+                    while (bookedEnd > low && !expected.intersects(bookedEnd - 1, bookedEnd)) bookedEnd--;
+                    if (bookedEnd == low) bookedEnd = Integer.MIN_VALUE;
+                    assertEquals(bookedEnd, expected.previousBookedEnd(end));
+                    assertEquals(bookedEnd, actual.previousBookedEnd(end));
+            }
+        }
+        assertSameRanges(expected, actual);
+    }
+
+    @Test
+    public void sortedArrayMatchesRangeSet() {
+        for (long seed = 0; seed < 20; seed++) {
+            randomOperations(IntervalIndex.Type.SORTED_ARRAY, seed, 0);
+        }
+    }
+
+    @Test
+    public void bitmapMatchesRangeSet() {
+        for (long seed = 0; seed < 20; seed++) {
+            randomOperations(IntervalIndex.Type.BITMAP, seed, 0);
+        }
+    }
+
+    /**
+     * Bookings before or after the year must be kept by the bitmap too, not cut off at the ends of the axis
+     */
+    @Test
+    public void bitmapMatchesRangeSetOutsideTheAxis() {
+        for (long seed = 0; seed < 20; seed++) {
+            randomOperations(IntervalIndex.Type.BITMAP, seed, 200);
+        }
+    }
+
+    @Test
+    public void bitmapFleetCheckClearsBusyProjectors() {
+        List<IntervalIndex> fleet = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            fleet.add(IntervalIndex.create(IntervalIndex.Type.BITMAP, AXIS));
+        }
+        fleet.get(0).add(100, 300);
+        fleet.get(2).add(1000, 1001);
+        BitSet candidates = new BitSet();
+        candidates.set(0, 3);
+        BitmapIntervalIndex.clearBusy(fleet, 200, 1200, candidates);
+        assertEquals(1, candidates.cardinality());
+        assertTrue(candidates.get(1));
+
+        candidates.set(0, 3);
+        BitmapIntervalIndex.clearBusy(fleet, 300, 1000, candidates);
+        assertEquals(3, candidates.cardinality());
+
+        fleet.get(1).add(AXIS - 10, AXIS + 50);
+        fleet.get(2).add(-30, -20);
+        BitmapIntervalIndex.clearBusy(fleet, AXIS + 40, AXIS + 60, candidates);
+        assertFalse(candidates.get(1));
+        BitmapIntervalIndex.clearBusy(fleet, -25, 10, candidates);
+        assertEquals(1, candidates.cardinality());
+        assertTrue(candidates.get(0));
+    }
+
+    @Test
+    public void adjacentIntervalsAreCoalesced() {
+        for (IntervalIndex.Type type : IntervalIndex.Type.values()) {
+            IntervalIndex index = IntervalIndex.create(type, AXIS);
+            index.add(10, 20);
+            index.add(20, 30);
+            index.add(0, 5);
+            assertEquals(2, index.rangeCount());
+            assertFalse(index.intersects(5, 10));
+            assertTrue(index.intersects(29, 31));
+            assertFalse(index.intersects(30, 30));
+
+            index.remove(12, 15);
+            assertEquals(3, index.rangeCount());
+            assertFalse(index.intersects(12, 15));
+            assertTrue(index.intersects(11, 13));
+        }
+    }
+}
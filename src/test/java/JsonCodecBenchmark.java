@@ -0,0 +1,117 @@
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// Compares the request and response handling of the booking routes with JsonCodec against the org.json code the
+// controller had before: bytes allocated and time taken per request, measured on the calling thread.
+// Not a unit test, run it with:
+// mvn test-compile exec:java -Dexec.mainClass="JsonCodecBenchmark" -Dexec.classpathScope=test
+// Each case goes from the request bytes to the response bytes, without the scheduler and without Spark:
+// org.json gets the body as a String (what Request.body() gives) and the response String is encoded the way
+// Spark's serializer does. Allocation is read with com.sun.management.ThreadMXBean, so it needs a HotSpot JVM.
+public class JsonCodecBenchmark {
+    private static final int WARMUP = 200000;
+    private static final int REQUESTS = 1000000;
+    private static final int ROUNDS = 3;
+
+    private static final byte[] BOOKING = ("{\"startDateTime\":\"2024-03-04T09:30:00Z\",\"duration\":3600000,"
+            + "\"recurInterval\":0,\"recurEndDateTime\":\"2024-03-04T09:30:00Z\",\"teamID\":7}").getBytes(StandardCharsets.UTF_8);
+    private static final AllocatedTimeSlot ALLOCATION = new AllocatedTimeSlot(4, 2, 4, 7,
+            Instant.parse("2024-03-04T09:30:00Z"), Duration.ofHours(1), Duration.ZERO, Instant.parse("2024-03-04T09:30:00Z"));
+    private static final List<AllocatedTimeSlot> SUGGESTIONS = new ArrayList<>();
+    static {
+        for (int i = 0; i < 5; i++) {
+            SUGGESTIONS.add(new AllocatedTimeSlot(-1, i, -1, -1, Instant.parse("2024-03-04T10:30:00Z").plusSeconds(1800 * i),
+                    Duration.ofHours(1), Duration.ZERO, Instant.parse("2024-03-04T10:30:00Z")));
+        }
+    }
+
+    private interface Case {
+        // returns something of the result, so the work can't be dropped
+        long run();
+    }
+
+    // sink for the results
+    private static long blackhole;
+
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        String[] names = {"POST /projector/request", "POST /projector/suggest response"};
+        Case[] orgJson = {JsonCodecBenchmark::bookingOrgJson, JsonCodecBenchmark::suggestionsOrgJson};
+        Case[] codec = {JsonCodecBenchmark::bookingCodec, JsonCodecBenchmark::suggestionsCodec};
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < names.length; i++) {
+                measure(threads, names[i], "org.json", orgJson[i], round == ROUNDS - 1);
+                measure(threads, names[i], "JsonCodec", codec[i], round == ROUNDS - 1);
+            }
+        }
+        if (blackhole == 42) System.out.println();
+    }
+
+    private static void measure(com.sun.management.ThreadMXBean threads, String name, String codec, Case benchmarkCase, boolean print) {
+        for (int i = 0; i < WARMUP; i++) blackhole += benchmarkCase.run();
+        long threadID = Thread.currentThread().getId();
+        long bytesBefore = threads.getThreadAllocatedBytes(threadID);
+        long before = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) blackhole += benchmarkCase.run();
+        long nanos = System.nanoTime() - before;
+        long bytes = threads.getThreadAllocatedBytes(threadID) - bytesBefore;
+        if (print) {
+            System.out.printf("%-34s %-9s %7.0f bytes/request %7.0f ns/request%n", name, codec,
+                    (double) bytes / REQUESTS, (double) nanos / REQUESTS);
+        }
+    }
+
+    private static long bookingOrgJson() {
+        JSONObject requestJSON = new JSONObject(new String(BOOKING, StandardCharsets.UTF_8));
+        String startDateTime = requestJSON.getString("startDateTime");
+        long duration = requestJSON.getLong("duration");
+        long recurInterval = requestJSON.getLong("recurInterval");
+        long teamID = requestJSON.getLong("teamID");
+        String recurEndDateTime = startDateTime;
+        if (recurInterval != 0) recurEndDateTime = requestJSON.getString("recurEndDateTime");
+        TimeSlot timeSlot = new TimeSlot(Instant.parse(startDateTime), Duration.ofMillis(duration),
+                Duration.ofMillis(recurInterval), Instant.parse(recurEndDateTime), teamID);
+        JSONObject responseJSON = new JSONObject();
+        responseJSON.put("projectorID", ALLOCATION.getProjectorID());
+        responseJSON.put("allocatedID", ALLOCATION.getAllocatedID());
+        byte[] response = responseJSON.toString().getBytes(StandardCharsets.UTF_8);
+        return timeSlot.getStartDateTime().getEpochSecond() + response.length;
+    }
+
+    private static long bookingCodec() {
+        TimeSlot timeSlot = ProjectorController.readTimeSlotRequest(ProjectorController.readBody(BOOKING));
+        JsonCodec.Writer writer = ProjectorController.writeAllocation(JsonCodec.Writer.get(), ALLOCATION);
+        return timeSlot.getStartDateTime().getEpochSecond() + writer.size();
+    }
+
+    private static long suggestionsOrgJson() {
+        JSONObject responseJSON = new JSONObject();
+        JSONArray suggestionsArray = new JSONArray();
+        for (AllocatedTimeSlot suggestion : SUGGESTIONS) {
+            JSONObject suggestionJSON = new JSONObject();
+            suggestionJSON.put("projectorID", suggestion.getProjectorID());
+            suggestionJSON.put("startDateTime", suggestion.getStartDateTime().toString());
+            suggestionsArray.put(suggestionJSON);
+        }
+        responseJSON.put("suggestions", suggestionsArray);
+        return responseJSON.toString().getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static long suggestionsCodec() {
+        JsonCodec.Writer writer = JsonCodec.Writer.get().beginObject().name("suggestions").beginArray();
+        for (AllocatedTimeSlot suggestion : SUGGESTIONS) {
+            writer.beginObject()
+                    .name("projectorID").value(suggestion.getProjectorID())
+                    .name("startDateTime").value(suggestion.getStartDateTime())
+                    .endObject();
+        }
+        return writer.endArray().endObject().size();
+    }
+}
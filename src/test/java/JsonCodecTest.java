@@ -0,0 +1,144 @@
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class JsonCodecTest {
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void readsBookingRequests() {
+        JsonCodec.Fields fields = ProjectorController.readBody(bytes(
+                "{ \"teamID\": 7, \"extra\": {\"nested\": [1, \"]\", {\"a\": null}]}, \"duration\": 3600000,\n"
+                + "\"recurInterval\": 604800000.0, \"startDateTime\": \"2024-03-04T09:30:00Z\","
+                + "\"recurEndDateTime\": \"2024-03-2\\u0035T09:30:00.5Z\" }"));
+        TimeSlot timeSlot = ProjectorController.readTimeSlotRequest(fields);
+        assertEquals(Instant.parse("2024-03-04T09:30:00Z"), timeSlot.getStartDateTime());
+        assertEquals(Duration.ofHours(1), timeSlot.getDuration());
+        assertEquals(Duration.ofDays(7), timeSlot.getRecurInterval());
+        // escaped, read through Instant.parse
+        assertEquals(Instant.parse("2024-03-25T09:30:00.5Z"), timeSlot.getRecurEndDateTime());
+        assertEquals(7, timeSlot.getTeamID());
+
+        // the end isn't needed, and isn't read, for one time bookings
+        timeSlot = ProjectorController.readTimeSlotRequest(ProjectorController.readBody(bytes(
+                "{\"startDateTime\":\"2024-03-04T09:30Z\",\"duration\":\"60000\",\"recurInterval\":0,\"teamID\":1,\"recurEndDateTime\":null}")));
+        assertEquals(Instant.parse("2024-03-04T09:30:00Z"), timeSlot.getRecurEndDateTime());
+        assertEquals(Duration.ofMinutes(1), timeSlot.getDuration());
+    }
+
+    @Test
+    public void rejectsWhatOrgJsonRejects() {
+        String[] malformed = {
+                "", "[]", "{", "{\"duration\":}", "{\"duration\" 1}", "{\"duration\":1,}", "{\"duration\":1} x",
+                "{\"duration\":tru}", "{\"startDateTime\":\"2024-03-04T09:30:00Z}",
+                // numbers have to be JSON numbers all the way to the end of the literal
+                "{\"duration\":12abc}", "{\"duration\":1-2}", "{\"duration\":-}", "{\"duration\":--1}",
+                "{\"duration\":1.}", "{\"duration\":1e}", "{\"duration\":1e+}", "{\"duration\":1.5.5}",
+                // a field given twice, known to the route or not
+                "{\"duration\":1,\"duration\":2}", "{\"note\":\"a\",\"duration\":1,\"note\":\"b\"}",
+        };
+        for (String body : malformed) {
+            try {
+                ProjectorController.readBody(bytes(body));
+                fail(body + " was accepted");
+            } catch (JSONException expected) {
+                // the routes answer 400
+            }
+        }
+        String prefix = "{\"startDateTime\":\"2024-03-04T09:30:00Z\",\"duration\":60000,\"recurInterval\":";
+        String[] invalid = {
+                prefix + "0}",                                    // no teamID
+                prefix + "true,\"teamID\":1}",                    // not a number
+                prefix + "60000,\"teamID\":1}",                   // no recurEndDateTime
+                prefix + "60000,\"teamID\":1,\"recurEndDateTime\":5}",
+        };
+        for (String body : invalid) {
+            try {
+                ProjectorController.readTimeSlotRequest(ProjectorController.readBody(bytes(body)));
+                fail(body + " was accepted");
+            } catch (JSONException expected) {
+                // the routes answer 400
+            }
+        }
+        try {
+            ProjectorController.readTimeSlotRequest(ProjectorController.readBody(bytes(
+                    "{\"startDateTime\":\"2023-02-29T09:30:00Z\",\"duration\":60000,\"recurInterval\":0,\"teamID\":1}")));
+            fail("2023-02-29 was accepted");
+        } catch (DateTimeParseException expected) {
+            // the routes answer 400
+        }
+    }
+
+    @Test
+    public void readsArrays() {
+        JsonCodec.Reader reader = new JsonCodec.Reader(bytes(" [ {\"allocationID\": 1} , {\"allocationID\": -2} ] "));
+        JsonCodec.Fields fields = new JsonCodec.Fields(JsonCodec.fieldNames("allocationID"));
+        reader.beginArray();
+        assertTrue(reader.hasNextElement());
+        assertEquals(1, reader.readObject(fields).getLong(0));
+        assertTrue(reader.hasNextElement());
+        assertEquals(-2, reader.readObject(fields).getLong(0));
+        assertFalse(reader.hasNextElement());
+        reader.end();
+
+        reader = new JsonCodec.Reader(bytes("[{} {}]"));
+        reader.beginArray();
+        assertTrue(reader.hasNextElement());
+        reader.readObject(fields);
+        try {
+            reader.hasNextElement();
+            fail("missing comma was accepted");
+        } catch (JSONException expected) {
+            // the batch route answers 400
+        }
+    }
+
+    @Test
+    public void writesWhatOrgJsonReads() {
+        JsonCodec.Writer writer = JsonCodec.Writer.get();
+        ProjectorController.writeAllocation(writer.beginObject().name("results").beginArray(),
+                new AllocatedTimeSlot(12, 3, 4, 1, Instant.parse("2024-03-04T09:30:00Z"),
+                        Duration.ofHours(1), Duration.ZERO, Instant.parse("2024-03-04T09:30:00Z")));
+        ProjectorController.writeAllocation(writer, null);
+        writer.value(Long.MIN_VALUE).value(0).endArray().endObject();
+        JSONArray results = new JSONObject(writer.toString()).getJSONArray("results");
+        assertEquals(3, results.getJSONObject(0).getLong("projectorID"));
+        assertEquals(12, results.getJSONObject(0).getLong("allocatedID"));
+        assertEquals(-1, results.getJSONObject(1).getLong("allocatedID"));
+        assertEquals(Long.MIN_VALUE, results.getLong(2));
+        assertEquals(0, results.getLong(3));
+    }
+
+    @Test
+    public void instantsMatchJavaTime() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            long epochSecond = random.nextLong() % 400000000000L;
+            int nano;
+            switch (random.nextInt(4)) {
+                case 0: nano = 0; break;
+                case 1: nano = random.nextInt(1000) * 1000000; break;
+                case 2: nano = random.nextInt(1000000) * 1000; break;
+                default: nano = random.nextInt(1000000000);
+            }
+            Instant instant = Instant.ofEpochSecond(epochSecond, nano);
+            String written = JsonCodec.Writer.get().value(instant).toString();
+            assertEquals('"' + instant.toString() + '"', written);
+            Instant parsed = JsonCodec.parseInstant(bytes(written), 1);
+            // other forms are left to Instant.parse
+            if (epochSecond >= -62167219200L && epochSecond < 253402300800L) assertEquals(instant, parsed);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Random;
+
+import static java.time.temporal.TemporalAdjusters.firstDayOfYear;
+
+// Measures what recording metrics costs on the scheduler's hot paths: the same lookups are timed with
+// recording on and off, alternately, and the cost of a single Timer.record and Counter.increment is measured
+// on its own. Not a unit test, run it with:
+// mvn test-compile exec:java -Dexec.mainClass="MetricsOverheadBenchmark" -Dexec.classpathScope=test
+// No data base is used. The JMH benchmarks (see README) can be compared with -jvmArgsAppend -Dmetrics.enabled=false.
+public class MetricsOverheadBenchmark {
+    private static final int PROJECTORS = 30;
+    private static final int LOOKUPS = 200000;
+    private static final int RECORDS = 10000000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        Instant startOfYear = LocalDate.now().with(firstDayOfYear()).atStartOfDay(ZoneId.systemDefault()).toInstant();
+        ProjectorScheduler scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, PROJECTORS, false);
+        Random random = new Random(1);
+        // a week a day into the year, most hours have a free projector
+        for (int projectorID = 0; projectorID < PROJECTORS; projectorID++) {
+            for (int hour = 24; hour < 8 * 24; hour++) {
+                if (random.nextInt(10) < 8) scheduler.fleetIndex.add(projectorID, hour * 60, hour * 60 + 60);
+            }
+        }
+        TimeSlot[] requests = new TimeSlot[1024];
+        TimeSlot[] recurringRequests = new TimeSlot[1024];
+        for (int i = 0; i < requests.length; i++) {
+            Instant start = startOfYear.plus(Duration.ofMinutes((24 + random.nextInt(7 * 24)) * 60));
+            requests[i] = new TimeSlot(start, Duration.ofMinutes(30), Duration.ZERO, start, 1);
+            recurringRequests[i] = new TimeSlot(start, Duration.ofMinutes(30), Duration.ofDays(1), start.plus(Duration.ofDays(5)), 1);
+        }
+
+        long[] enabledNanos = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+        long[] disabledNanos = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+        for (int round = 0; round < ROUNDS; round++) {
+            for (boolean enabled : new boolean[]{true, false}) {
+                MetricsRegistry.setEnabled(enabled);
+                long[] nanos = enabled ? enabledNanos : disabledNanos;
+                nanos[0] = Math.min(nanos[0], time(() -> {
+                    for (int i = 0; i < LOOKUPS; i++) scheduler.getAvailableProjectorID(requests[i & 1023]);
+                }));
+                nanos[1] = Math.min(nanos[1], time(() -> {
+                    for (int i = 0; i < LOOKUPS; i++) scheduler.getAvailableProjectorIDForRecurringMeeting(recurringRequests[i & 1023]);
+                }));
+                nanos[2] = Math.min(nanos[2], time(() -> {
+                    for (int i = 0; i < LOOKUPS / 10; i++) scheduler.getAlternativeTimeSlots(requests[i & 1023], 5, Duration.ofDays(1));
+                }));
+            }
+        }
+        MetricsRegistry.setEnabled(true);
+        String[] names = {"conflict check", "recurring conflict check", "5 suggestions"};
+        int[] counts = {LOOKUPS, LOOKUPS, LOOKUPS / 10};
+        for (int i = 0; i < names.length; i++) {
+            System.out.printf("%-26s metrics on %7.0f ns, off %7.0f ns%n", names[i],
+                    (double) enabledNanos[i] / counts[i], (double) disabledNanos[i] / counts[i]);
+        }
+
+        MetricsRegistry metrics = new MetricsRegistry();
+        MetricsRegistry.Timer timer = metrics.timer("benchmark_seconds", "Benchmark", "");
+        MetricsRegistry.Counter counter = metrics.counter("benchmark_total", "Benchmark", "");
+        long timerNanos = Long.MAX_VALUE;
+        long counterNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            timerNanos = Math.min(timerNanos, time(() -> {
+                for (int i = 0; i < RECORDS; i++) timer.record(System.nanoTime() & 0xfffff);
+            }));
+            counterNanos = Math.min(counterNanos, time(() -> {
+                for (int i = 0; i < RECORDS; i++) counter.increment();
+            }));
+        }
+        System.out.printf("Timer.record with System.nanoTime %.1f ns, Counter.increment %.1f ns (%d recorded)%n",
+                (double) timerNanos / RECORDS, (double) counterNanos / RECORDS, timer.count() + counter.get());
+    }
+
+    private static long time(Runnable work) {
+        long before = System.nanoTime();
+        work.run();
+        return System.nanoTime() - before;
+    }
+}
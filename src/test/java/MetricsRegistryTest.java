@@ -0,0 +1,45 @@
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void writesPrometheusTextFormat() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        MetricsRegistry.Counter counter = metrics.counter("requests_total", "Requests", "route=\"a\"");
+        counter.increment();
+        counter.increment();
+        assertSame(counter, metrics.counter("requests_total", "Requests", "route=\"a\""));
+        MetricsRegistry.Timer timer = metrics.timer("call_seconds", "Calls", "");
+        timer.record(30000);          // 30 us
+        timer.record(2000000);        // 2 ms
+        timer.record(60000000000L);   // a minute, above every bucket
+        metrics.gauge("size", "Sizes", samples -> {
+            samples.add("projector=\"0\"", 3);
+            samples.add("projector=\"1\"", 0.5);
+        });
+
+        StringBuilder out = new StringBuilder();
+        metrics.write(out);
+        String text = out.toString();
+        assertTrue(text.contains("# TYPE requests_total counter\nrequests_total{route=\"a\"} 2\n"));
+        assertTrue(text.contains("# TYPE call_seconds histogram\n"));
+        // buckets are cumulative
+        assertTrue(text.contains("call_seconds_bucket{le=\"2.5E-5\"} 0\n"));
+        assertTrue(text.contains("call_seconds_bucket{le=\"5.0E-5\"} 1\n"));
+        assertTrue(text.contains("call_seconds_bucket{le=\"0.0025\"} 2\n"));
+        assertTrue(text.contains("call_seconds_bucket{le=\"10.0\"} 2\n"));
+        assertTrue(text.contains("call_seconds_bucket{le=\"+Inf\"} 3\n"));
+        assertTrue(text.contains("call_seconds_sum 60.00203\n"));
+        assertTrue(text.contains("call_seconds_count 3\n"));
+        assertTrue(text.contains("# TYPE size gauge\nsize{projector=\"0\"} 3\nsize{projector=\"1\"} 0.5\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTypeChange() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        metrics.counter("calls", "Calls", "");
+        metrics.timer("calls", "Calls", "");
+    }
+}
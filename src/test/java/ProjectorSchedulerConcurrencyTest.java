@@ -0,0 +1,281 @@
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.time.temporal.TemporalAdjusters.firstDayOfYear;
+import static org.junit.Assert.*;
+
+// Multi-threaded stress tests for the scheduler, these go through the data base but not through HTTP
+public class ProjectorSchedulerConcurrencyTest {
+    private static final int PROJECTOR_COUNT = 3;
+
+    private final Logger appLogger = LoggerFactory.getLogger(ProjectorSchedulerConcurrencyTest.class);
+
+    private ProjectorScheduler scheduler;
+
+    @Before
+    public void setUp() throws ClassNotFoundException {
+        DataBase.getInstance().createSchema();
+        String[] clearDB = {
+                "DELETE FROM allocations;",
+                "DELETE FROM time_slots;",
+        };
+        DataBase.getInstance().update(clearDB);
+        scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, false);
+    }
+
+    private static Instant slotStart(int slot) {
+        // Starting on December 1st every slot is an hour apart, slots only last for half an hour
+        Instant december = LocalDate.now().with(firstDayOfYear()).withMonth(12)
+                .atStartOfDay(ZoneId.systemDefault()).toInstant();
+        return december.plus(Duration.ofHours(slot));
+    }
+
+    private static TimeSlot slotRequest(int slot, long teamID) {
+        return new TimeSlot(slotStart(slot), Duration.ofMinutes(30), Duration.ZERO, slotStart(slot), teamID);
+    }
+
+    private void runConcurrently(int threads, Callable task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                task.call(thread);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<Void> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+    }
+
+    private interface Callable {
+        void call(int thread) throws Exception;
+    }
+
+    /**
+     * Every thread asks for every slot, each slot must be given out exactly once per projector
+     */
+    @Test
+    public void concurrentRequestsNeverDoubleBook() throws Exception {
+        final int slots = 20;
+        final int threads = 8;
+        ConcurrentHashMap<Integer, AtomicInteger> grantedPerSlot = new ConcurrentHashMap<>();
+        runConcurrently(threads, thread -> {
+            for (int slot = 0; slot < slots; slot++) {
+                AllocatedTimeSlot allocated = scheduler.requestProjector(slotRequest(slot, thread + 1));
+                if (allocated != null && allocated.getAllocatedID() != -1) {
+                    grantedPerSlot.computeIfAbsent(slot, s -> new AtomicInteger()).incrementAndGet();
+                }
+            }
+        });
+        for (int slot = 0; slot < slots; slot++) {
+            assertEquals(PROJECTOR_COUNT, grantedPerSlot.get(slot).get());
+        }
+        for (int projectorID = 0; projectorID < PROJECTOR_COUNT; projectorID++) {
+            assertEquals(slots, scheduler.getProjectorSchedule(projectorID).size());
+        }
+    }
+
+    /**
+     * Same as above but through the single writer pipeline, batches must not give a slot out twice either
+     */
+    @Test
+    public void pipelinedRequestsNeverDoubleBook() throws Exception {
+        final int slots = 20;
+        final int threads = 8;
+        scheduler.startPipeline();
+        ConcurrentHashMap<Integer, AtomicInteger> grantedPerSlot = new ConcurrentHashMap<>();
+        try {
+            runConcurrently(threads, thread -> {
+                for (int slot = 0; slot < slots; slot++) {
+                    AllocatedTimeSlot allocated = scheduler.requestProjector(slotRequest(slot, thread + 1));
+                    if (allocated != null && allocated.getAllocatedID() != -1) {
+                        grantedPerSlot.computeIfAbsent(slot, s -> new AtomicInteger()).incrementAndGet();
+                    }
+                }
+            });
+        } finally {
+            scheduler.stopPipeline();
+        }
+        ProjectorScheduler reloaded = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, true);
+        for (int slot = 0; slot < slots; slot++) {
+            assertEquals(PROJECTOR_COUNT, grantedPerSlot.get(slot).get());
+        }
+        for (int projectorID = 0; projectorID < PROJECTOR_COUNT; projectorID++) {
+            assertEquals(slots, scheduler.getProjectorSchedule(projectorID).size());
+            assertEquals(slots, reloaded.getProjectorSchedule(projectorID).size());
+        }
+    }
+
+    /**
+     * Commands submitted once the pipeline is stopped must fail instead of waiting forever
+     */
+    @Test(timeout = 10000)
+    public void stoppedPipelineFailsCommands() throws Exception {
+        SchedulerCommandPipeline pipeline = new SchedulerCommandPipeline(scheduler, 1, 1);
+        pipeline.stop();
+        try {
+            pipeline.requestProjector(slotRequest(0, 1));
+            fail("Stopped pipeline accepted a command");
+        } catch (SQLException expected) {
+            assertEquals("Command pipeline is stopped", expected.getMessage());
+        }
+        assertTrue(scheduler.getProjectorSchedule(0).isEmpty());
+    }
+
+    /**
+     * Every thread books every slot in a single batch, batches must not give a slot out twice either
+     */
+    @Test
+    public void concurrentBatchesNeverDoubleBook() throws Exception {
+        final int slots = 20;
+        final int threads = 8;
+        ConcurrentHashMap<Integer, AtomicInteger> grantedPerSlot = new ConcurrentHashMap<>();
+        runConcurrently(threads, thread -> {
+            List<TimeSlot> requests = new ArrayList<>();
+            for (int slot = 0; slot < slots; slot++) requests.add(slotRequest(slot, thread + 1));
+            List<AllocatedTimeSlot> results = scheduler.requestProjectors(requests, thread % 2 == 0);
+            assertEquals(slots, results.size());
+            for (int slot = 0; slot < slots; slot++) {
+                AllocatedTimeSlot allocated = results.get(slot);
+                if (allocated != null && allocated.getAllocatedID() != -1) {
+                    assertEquals(slotStart(slot), allocated.getStartDateTime());
+                    grantedPerSlot.computeIfAbsent(slot, s -> new AtomicInteger()).incrementAndGet();
+                }
+            }
+        });
+        ProjectorScheduler reloaded = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, true);
+        for (int slot = 0; slot < slots; slot++) {
+            assertEquals(PROJECTOR_COUNT, grantedPerSlot.get(slot).get());
+        }
+        for (int projectorID = 0; projectorID < PROJECTOR_COUNT; projectorID++) {
+            assertEquals(slots, reloaded.getProjectorSchedule(projectorID).size());
+        }
+    }
+
+    /**
+     * A recurring meeting doesn't fit once one time bookings have taken every projector,
+     * placed first it does and only one of the one time bookings is turned away
+     */
+    @Test
+    public void tightestFirstBatchPlacesRecurringMeetingFirst() throws Exception {
+        List<TimeSlot> requests = new ArrayList<>();
+        for (int i = 0; i < PROJECTOR_COUNT; i++) requests.add(slotRequest(5, 1));
+        requests.add(new TimeSlot(slotStart(0), Duration.ofMinutes(30), Duration.ofHours(1), slotStart(10), 2));
+
+        List<AllocatedTimeSlot> inOrder = scheduler.requestProjectors(requests, false);
+        assertNull(inOrder.get(PROJECTOR_COUNT));
+        for (AllocatedTimeSlot allocated : inOrder.subList(0, PROJECTOR_COUNT)) {
+            assertNotEquals(-1, allocated.getAllocatedID());
+        }
+
+        setUp();
+        List<AllocatedTimeSlot> tightestFirst = scheduler.requestProjectors(requests, true);
+        assertEquals(0, tightestFirst.get(PROJECTOR_COUNT).getProjectorID());
+        assertNotEquals(-1, tightestFirst.get(0).getAllocatedID());
+        assertNotEquals(-1, tightestFirst.get(1).getAllocatedID());
+        assertEquals(-1, tightestFirst.get(2).getAllocatedID());
+    }
+
+    /**
+     * Mixed requests, deletes, updates and reads, at the end the in-memory schedule has to match the data base
+     */
+    @Test
+    public void concurrentMutationsKeepIndexesConsistentWithDataBase() throws Exception {
+        final int threads = 6;
+        final int operations = 40;
+        List<Long> allocationIDs = new ArrayList<>();
+        runConcurrently(threads, thread -> {
+            Random random = new Random(thread);
+            for (int i = 0; i < operations; i++) {
+                int slot = random.nextInt(30);
+                switch (random.nextInt(4)) {
+                    case 0:
+                    case 1:
+                        AllocatedTimeSlot allocated = scheduler.requestProjector(slotRequest(slot, thread + 1));
+                        if (allocated != null && allocated.getAllocatedID() != -1) {
+                            synchronized (allocationIDs) {
+                                allocationIDs.add(allocated.getAllocatedID());
+                            }
+                        }
+                        break;
+                    case 2:
+                        Long allocationID = null;
+                        synchronized (allocationIDs) {
+                            if (!allocationIDs.isEmpty()) allocationID = allocationIDs.get(random.nextInt(allocationIDs.size()));
+                        }
+                        if (allocationID != null) {
+                            if (random.nextBoolean()) scheduler.deleteProjector(allocationID);
+                            else scheduler.updateProjector(allocationID, slotRequest(slot, thread + 1));
+                        }
+                        break;
+                    default:
+                        assertNotNull(scheduler.getProjectorSchedule(random.nextInt(PROJECTOR_COUNT)));
+                }
+            }
+        });
+        ProjectorScheduler reloaded = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, true);
+        for (int projectorID = 0; projectorID < PROJECTOR_COUNT; projectorID++) {
+            List<TimeSlot> expected = reloaded.getProjectorSchedule(projectorID);
+            List<TimeSlot> actual = scheduler.getProjectorSchedule(projectorID);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getStartDateTime(), actual.get(i).getStartDateTime());
+                assertEquals(expected.get(i).getDuration(), actual.get(i).getDuration());
+            }
+        }
+        // the counts kept up to date booking by booking match the ones computed in one go by the load
+        for (int slot = 0; slot < 30; slot++) {
+            assertEquals(reloaded.getPeakUsage(slotStart(slot), slotStart(slot + 1)),
+                    scheduler.getPeakUsage(slotStart(slot), slotStart(slot + 1)));
+        }
+    }
+
+    /**
+     * Status reads only take read locks, so their throughput should grow with the number of threads (up to the
+     * number of cores). The numbers are logged for comparison, the test only checks that the reads succeed.
+     * Writes, where the shared fleet structures and the data base meet, are measured by ReservationWriteBenchmark
+     * with -Dbenchmark.threads=1,2,4,8.
+     */
+    @Test
+    public void readThroughputWithThreads() throws Exception {
+        for (int slot = 0; slot < 200; slot++) {
+            scheduler.requestProjector(slotRequest(slot, 1));
+        }
+        final int readsPerThread = 2000;
+        for (int threads = 1; threads <= 8; threads *= 2) {
+            long start = System.nanoTime();
+            runConcurrently(threads, thread -> {
+                for (int i = 0; i < readsPerThread; i++) {
+                    // first fit puts every slot on projector 0
+                    assertEquals(200, scheduler.getProjectorSchedule(0).size());
+                }
+            });
+            double seconds = (System.nanoTime() - start) / 1e9;
+            appLogger.info(threads + " threads: " + (long) (threads * readsPerThread / seconds) + " status reads/s");
+        }
+    }
+}
@@ -0,0 +1,297 @@
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static java.time.temporal.TemporalAdjusters.firstDayOfYear;
+import static org.junit.Assert.*;
+
+// Scheduler tests that work on the in-memory indexes only, no HTTP server and no data base writes
+public class ProjectorSchedulerTest {
+
+    private static Instant startOfYear() {
+        return LocalDate.now().with(firstDayOfYear()).atStartOfDay(ZoneId.systemDefault()).toInstant();
+    }
+
+    private static Instant minuteOfYear(int minute) {
+        return startOfYear().plus(Duration.ofMinutes(minute));
+    }
+
+    private static ProjectorScheduler randomlyBookedScheduler(Random random) {
+        ProjectorScheduler scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, false);
+        for (IntervalIndex index : scheduler.projectorAvailableTimeSlots) {
+            for (int i = 0; i < 20; i++) {
+                int start = random.nextInt(60 * 24 * 60);
+                index.add(start, start + 30 + random.nextInt(120));
+            }
+        }
+        for (SeriesIndex seriesIndex : scheduler.projectorRecurringSeries) {
+            if (random.nextBoolean()) {
+                seriesIndex.add(new RecurringSeries(1, 60 + random.nextInt(1440), 60, 1440 * (1 + random.nextInt(7)), 50));
+            }
+        }
+        return scheduler;
+    }
+
+    @Test
+    public void parallelRecurringSearchMatchesSequentialSearch() {
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            ProjectorScheduler scheduler = randomlyBookedScheduler(random);
+            TimeSlot request = new TimeSlot(minuteOfYear(60 + random.nextInt(1440)),
+                    Duration.ofMinutes(15 + random.nextInt(90)),
+                    Duration.ofMinutes(60 * (1 + random.nextInt(48))),
+                    minuteOfYear(60 * 24 * 60));
+
+            scheduler.setRecurringParallelThreshold(Integer.MAX_VALUE);
+            int sequentialProjectorID = scheduler.getAvailableProjectorIDForRecurringMeeting(request);
+            scheduler.setRecurringParallelThreshold(0);
+            int parallelProjectorID = scheduler.getAvailableProjectorIDForRecurringMeeting(request);
+            assertEquals(sequentialProjectorID, parallelProjectorID);
+        }
+    }
+
+    /**
+     * Reading the schedule page by page, resuming at each cursor, gives the same time slots as reading it at once
+     */
+    @Test
+    public void pagedScheduleMatchesWholeSchedule() throws Exception {
+        Random random = new Random(7);
+        for (int i = 0; i < 20; i++) {
+            ProjectorScheduler scheduler = randomlyBookedScheduler(random);
+            for (int projectorID = 0; projectorID < scheduler.getProjectorCount(); projectorID++) {
+                List<TimeSlot> expected = scheduler.getProjectorSchedule(projectorID);
+                List<TimeSlot> paged = new ArrayList<>();
+                Instant cursor = null;
+                int pages = 0;
+                do {
+                    cursor = scheduler.writeProjectorSchedule(projectorID, cursor, null, 7,
+                            (start, duration) -> paged.add(new TimeSlot(start, duration, Duration.ZERO, start)));
+                    pages++;
+                } while (cursor != null);
+                assertEquals(expected.size(), paged.size());
+                assertEquals(Math.max(1, (expected.size() + 6) / 7), pages);
+                for (int k = 0; k < expected.size(); k++) {
+                    assertEquals(expected.get(k).getStartDateTime(), paged.get(k).getStartDateTime());
+                    assertEquals(expected.get(k).getDuration(), paged.get(k).getDuration());
+                }
+            }
+        }
+    }
+
+    /**
+     * A range only returns what is booked inside it, time slots crossing its ends are cut
+     */
+    @Test
+    public void scheduleRangeCutsTimeSlots() throws Exception {
+        ProjectorScheduler scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, false);
+        scheduler.projectorAvailableTimeSlots.get(0).add(100, 200);
+        scheduler.projectorAvailableTimeSlots.get(0).add(300, 400);
+        // occurrences at 390-410 (touching the one time booking) and 1830-1850
+        scheduler.projectorRecurringSeries.get(0).add(new RecurringSeries(1, 390, 20, 1440, 2));
+        List<TimeSlot> slots = new ArrayList<>();
+        assertNull(scheduler.writeProjectorSchedule(0, minuteOfYear(150), minuteOfYear(1840), 10,
+                (start, duration) -> slots.add(new TimeSlot(start, duration, Duration.ZERO, start))));
+        assertEquals(3, slots.size());
+        assertEquals(minuteOfYear(150), slots.get(0).getStartDateTime());
+        assertEquals(Duration.ofMinutes(50), slots.get(0).getDuration());
+        assertEquals(minuteOfYear(300), slots.get(1).getStartDateTime());
+        assertEquals(Duration.ofMinutes(110), slots.get(1).getDuration());
+        assertEquals(minuteOfYear(1830), slots.get(2).getStartDateTime());
+        assertEquals(Duration.ofMinutes(10), slots.get(2).getDuration());
+    }
+
+    /**
+     * Free windows match the free minutes of every projector probed one minute at a time
+     */
+    @Test
+    public void freeWindowsMatchMinuteByMinuteCheck() {
+        Random random = new Random(11);
+        for (int i = 0; i < 20; i++) {
+            ProjectorScheduler scheduler = randomlyBookedScheduler(random);
+            int from = random.nextInt(60 * 24 * 30);
+            int to = from + 1 + random.nextInt(60 * 24 * 7);
+            int minDuration = 1 + random.nextInt(240);
+            int projectorCount = scheduler.getProjectorCount();
+
+            // qualifying runs of free minutes of every projector, marked minute by minute
+            boolean[][] qualifying = new boolean[projectorCount][to - from];
+            for (int p = 0; p < projectorCount; p++) {
+                int runStart = from;
+                for (int minute = from; minute <= to; minute++) {
+                    if (minute < to && scheduler.getFreeProjectors(minute, minute + 1).get(p)) continue;
+                    if (minute - runStart >= minDuration) {
+                        for (int m = runStart; m < minute; m++) qualifying[p][m - from] = true;
+                    }
+                    runStart = minute + 1;
+                }
+            }
+            List<ProjectorScheduler.FreeWindow> expected = new ArrayList<>();
+            int minute = from;
+            while (minute < to) {
+                BitSet projectors = new BitSet();
+                int windowStart = minute;
+                while (minute < to) {
+                    boolean anyFree = false;
+                    for (int p = 0; p < projectorCount; p++) {
+                        if (qualifying[p][minute - from]) {
+                            projectors.set(p);
+                            anyFree = true;
+                        }
+                    }
+                    if (!anyFree) break;
+                    minute++;
+                }
+                if (minute > windowStart) {
+                    expected.add(new ProjectorScheduler.FreeWindow(minuteOfYear(windowStart), minuteOfYear(minute), projectors));
+                } else {
+                    minute++;
+                }
+            }
+
+            List<ProjectorScheduler.FreeWindow> windows = scheduler.getFreeWindows(minuteOfYear(from), minuteOfYear(to),
+                    Duration.ofMinutes(minDuration));
+            assertEquals(expected.size(), windows.size());
+            for (int k = 0; k < expected.size(); k++) {
+                assertEquals(expected.get(k).getStart(), windows.get(k).getStart());
+                assertEquals(expected.get(k).getEnd(), windows.get(k).getEnd());
+                assertEquals(expected.get(k).getProjectorIDs(), windows.get(k).getProjectorIDs());
+            }
+        }
+    }
+
+    /**
+     * With a larger fleet the fleet index picks the same projector as probing them one after another,
+     * recurring bookings (which only the projectors' own indexes know about) included
+     */
+    @Test
+    public void fleetIndexMatchesLinearSearch() {
+        Random random = new Random(13);
+        ProjectorScheduler scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, 50, false);
+        for (int projectorID = 0; projectorID < 50; projectorID++) {
+            for (int i = 0; i < 40; i++) {
+                int start = 60 + random.nextInt(60 * 24 * 7);
+                scheduler.fleetIndex.add(projectorID, start, start + 30 + random.nextInt(300));
+            }
+            if (random.nextInt(4) == 0) {
+                scheduler.projectorRecurringSeries.get(projectorID).add(
+                        new RecurringSeries(projectorID, 60 + random.nextInt(1440), 120, 1440, 7));
+            }
+        }
+        for (int i = 0; i < 2000; i++) {
+            Instant start = minuteOfYear(60 + random.nextInt(60 * 24 * 7));
+            TimeSlot request = new TimeSlot(start, Duration.ofMinutes(15 + random.nextInt(120)), Duration.ZERO, start);
+            scheduler.setFleetIndexEnabled(false);
+            int linearProjectorID = scheduler.getAvailableProjectorID(request);
+            scheduler.setFleetIndexEnabled(true);
+            assertEquals(linearProjectorID, scheduler.getAvailableProjectorID(request));
+        }
+    }
+
+    @Test
+    public void bestFitPicksTightestGap() {
+        Random random = new Random(17);
+        int weekEnd = 60 + 60 * 24 * 7;
+        ProjectorScheduler scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, 20, false);
+        scheduler.setAllocationStrategy(AllocationStrategy.create(AllocationStrategy.Type.BEST_FIT));
+        for (int projectorID = 0; projectorID < 20; projectorID++) {
+            // bookings on both sides of the week keep every gap inside it
+            scheduler.fleetIndex.add(projectorID, 0, 60);
+            scheduler.fleetIndex.add(projectorID, weekEnd, weekEnd + 60);
+            for (int i = 0; i < 30; i++) {
+                int start = 60 + random.nextInt(60 * 24 * 7 - 400);
+                scheduler.fleetIndex.add(projectorID, start, start + 30 + random.nextInt(300));
+            }
+            if (random.nextInt(4) == 0) {
+                scheduler.projectorRecurringSeries.get(projectorID).add(
+                        new RecurringSeries(projectorID, 60 + random.nextInt(1440), 120, 1440, 6));
+            }
+        }
+        for (int i = 0; i < 500; i++) {
+            int start = 60 + random.nextInt(60 * 24 * 7 - 200);
+            int end = start + 15 + random.nextInt(120);
+            int expected = -1;
+            long tightestSlack = Long.MAX_VALUE;
+            for (int projectorID = 0; projectorID < 20; projectorID++) {
+                if (isBooked(scheduler, projectorID, start, end)) continue;
+                int gapStart = start;
+                while (!isBooked(scheduler, projectorID, gapStart - 1, gapStart)) gapStart--;
+                int gapEnd = end;
+                while (!isBooked(scheduler, projectorID, gapEnd, gapEnd + 1)) gapEnd++;
+                if (gapEnd - gapStart - (end - start) < tightestSlack) {
+                    tightestSlack = gapEnd - gapStart - (end - start);
+                    expected = projectorID;
+                }
+            }
+            TimeSlot request = new TimeSlot(minuteOfYear(start), Duration.ofMinutes(end - start), Duration.ZERO, minuteOfYear(start));
+            assertEquals(expected, scheduler.getAvailableProjectorID(request));
+        }
+
+        // the recurring search scores the same in parallel
+        for (int i = 0; i < 50; i++) {
+            Instant start = minuteOfYear(60 + random.nextInt(1440));
+            TimeSlot request = new TimeSlot(start, Duration.ofMinutes(30 + random.nextInt(60)),
+                    Duration.ofDays(1), start.plus(Duration.ofDays(5)));
+            scheduler.setRecurringParallelThreshold(Integer.MAX_VALUE);
+            int sequentialProjectorID = scheduler.getAvailableProjectorIDForRecurringMeeting(request);
+            scheduler.setRecurringParallelThreshold(0);
+            assertEquals(sequentialProjectorID, scheduler.getAvailableProjectorIDForRecurringMeeting(request));
+        }
+    }
+
+    @Test
+    public void scheduleVersionChangesWithBookings() {
+        ProjectorScheduler scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, 3, false);
+        long[] versions = new long[3];
+        for (int i = 0; i < 3; i++) versions[i] = scheduler.getScheduleVersion(i);
+        scheduler.restoreInMemory(new AllocatedTimeSlot(1, 1, 1, 1, minuteOfYear(600), Duration.ofHours(1),
+                Duration.ZERO, minuteOfYear(600)));
+        assertNotEquals(versions[1], scheduler.getScheduleVersion(1));
+        versions[1] = scheduler.getScheduleVersion(1);
+        scheduler.restoreInMemory(new AllocatedTimeSlot(2, 2, 2, 1, minuteOfYear(600), Duration.ofHours(1),
+                Duration.ofDays(1), minuteOfYear(600 + 3 * 1440)));
+        assertEquals(versions[0], scheduler.getScheduleVersion(0));
+        assertEquals(versions[1], scheduler.getScheduleVersion(1));
+        assertNotEquals(versions[2], scheduler.getScheduleVersion(2));
+    }
+
+    @Test
+    public void overlappingOccurrencesCountOnce() {
+        ProjectorScheduler scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, 3, false);
+        // 90 minutes every hour, each occurrence runs half an hour into the next one
+        AllocatedTimeSlot series = new AllocatedTimeSlot(1, 0, 1, 1, minuteOfYear(600), Duration.ofMinutes(90),
+                Duration.ofHours(1), minuteOfYear(600 + 4 * 60));
+        scheduler.restoreInMemory(series);
+        assertEquals(1, scheduler.getPeakUsage(minuteOfYear(0), minuteOfYear(1440)));
+        scheduler.restoreInMemory(new AllocatedTimeSlot(2, 1, 2, 1, minuteOfYear(630), Duration.ofMinutes(30),
+                Duration.ZERO, minuteOfYear(630)));
+        assertEquals(2, scheduler.getPeakUsage(minuteOfYear(0), minuteOfYear(1440)));
+    }
+
+    @Test
+    public void bitmapKeepsBookingsOutsideTheYear() {
+        ProjectorScheduler scheduler = new ProjectorScheduler(IntervalIndex.Type.BITMAP, 3, false);
+        int nextYear = 525600 + 600;
+        scheduler.restoreInMemory(new AllocatedTimeSlot(1, 0, 1, 1, minuteOfYear(nextYear), Duration.ofHours(1),
+                Duration.ZERO, minuteOfYear(nextYear)));
+        scheduler.restoreInMemory(new AllocatedTimeSlot(2, 2, 2, 1, minuteOfYear(-120), Duration.ofHours(3),
+                Duration.ZERO, minuteOfYear(-120)));
+        BitSet free = scheduler.getFreeProjectors(nextYear + 30, nextYear + 90);
+        assertFalse(free.get(0));
+        assertTrue(free.get(1));
+        free = scheduler.getFreeProjectors(-60, 30);
+        assertFalse(free.get(2));
+        assertEquals(2, free.cardinality());
+    }
+
+    private static boolean isBooked(ProjectorScheduler scheduler, int projectorID, int start, int end) {
+        return scheduler.projectorAvailableTimeSlots.get(projectorID).intersects(start, end)
+                || scheduler.projectorRecurringSeries.get(projectorID).intersects(start, end);
+    }
+}
@@ -0,0 +1,104 @@
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+// Checks the arithmetic conflict checks of RecurringSeries against expanding every occurrence
+public class RecurringSeriesTest {
+
+    private static RecurringSeries randomSeries(Random random) {
+        return new RecurringSeries(-1, random.nextInt(500), 1 + random.nextInt(40),
+                1 + random.nextInt(120), random.nextInt(30));
+    }
+
+    private static boolean bruteForceIntersects(RecurringSeries series, int from, int to) {
+        for (int k = 0; k < series.getCount(); k++) {
+            int start = series.getOccurrenceStart(k);
+            if (start < to && start + series.getDuration() > from) return true;
+        }
+        return false;
+    }
+
+    private static boolean bruteForceIntersects(RecurringSeries a, RecurringSeries b) {
+        for (int k = 0; k < a.getCount(); k++) {
+            int start = a.getOccurrenceStart(k);
+            if (start < start + a.getDuration() && bruteForceIntersects(b, start, start + a.getDuration())) return true;
+        }
+        return false;
+    }
+
+    @Test
+    public void intervalConflictsMatchExpansion() {
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            RecurringSeries series = randomSeries(random);
+            int from = random.nextInt(4000) - 100;
+            int to = from + 1 + random.nextInt(200);
+            assertEquals(bruteForceIntersects(series, from, to), series.intersects(from, to));
+        }
+    }
+
+    @Test
+    public void seriesConflictsMatchExpansion() {
+        Random random = new Random(2);
+        for (int i = 0; i < 20000; i++) {
+            RecurringSeries a = randomSeries(random);
+            RecurringSeries b = randomSeries(random);
+            assertEquals(bruteForceIntersects(a, b), a.intersects(b));
+            assertEquals(a.intersects(b), b.intersects(a));
+        }
+    }
+
+    @Test
+    public void interleavedSeriesNeverConflict() {
+        // a daily hour at 9:00 and a daily hour at 10:00, for a whole year
+        RecurringSeries nineOClock = new RecurringSeries(1, 540, 60, 1440, 365);
+        RecurringSeries tenOClock = new RecurringSeries(2, 600, 60, 1440, 365);
+        RecurringSeries nineThirty = new RecurringSeries(3, 570, 60, 2880, 180);
+        assertFalse(nineOClock.intersects(tenOClock));
+        assertTrue(nineOClock.intersects(nineThirty));
+        assertTrue(tenOClock.intersects(nineThirty));
+    }
+
+    @Test
+    public void nextFreeStartSkipsOccurrences() {
+        SeriesIndex seriesIndex = new SeriesIndex();
+        seriesIndex.add(new RecurringSeries(1, 0, 30, 60, 10));
+        seriesIndex.add(new RecurringSeries(2, 30, 20, 120, 5));
+        // [0,30) [30,50) [60,90) [120,150) [150,170) ...
+        assertEquals(50, seriesIndex.nextFreeStart(0, 10));
+        assertEquals(90, seriesIndex.nextFreeStart(0, 30));
+        assertEquals(60, seriesIndex.nextBookedStart(50));
+        assertEquals(570, seriesIndex.nextFreeStart(0, 31));
+        assertEquals(50, seriesIndex.previousBookedEnd(55));
+        assertEquals(65, seriesIndex.previousBookedEnd(65));
+        assertEquals(Integer.MIN_VALUE, seriesIndex.previousBookedEnd(0));
+        assertTrue(seriesIndex.remove(2));
+        assertFalse(seriesIndex.remove(2));
+        assertEquals(30, seriesIndex.nextFreeStart(0, 30));
+    }
+
+    @Test
+    public void coveredRangesCountEveryMinuteOnce() {
+        Random random = new Random(5);
+        for (int i = 0; i < 5000; i++) {
+            RecurringSeries series = randomSeries(random);
+            BitSet expanded = new BitSet();
+            for (int k = 0; k < series.getCount(); k++) {
+                int start = series.getOccurrenceStart(k);
+                expanded.set(start, start + series.getDuration());
+            }
+            BitSet covered = new BitSet();
+            int[] minutes = new int[1];
+            series.forEachCoveredRange((start, end) -> {
+                covered.set(start, end);
+                minutes[0] += end - start;
+            });
+            assertEquals(expanded, covered);
+            // no minute counted twice
+            assertEquals(expanded.cardinality(), minutes[0]);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.time.temporal.TemporalAdjusters.firstDayOfYear;
+
+// Measures the data base write latency of single bookings and deletes, one at a time on one thread.
+// Not a unit test, run it with:
+// mvn test-compile exec:java -Dexec.mainClass="ReservationWriteBenchmark" -Dexec.classpathScope=test
+// Uses its own data base file (-Ddb.url, default jdbc:sqlite:benchmark.db) which is emptied first.
+// -Dbenchmark.threads=n books from n threads at once (default 1), -Dbenchmark.threads=1,2,4,8 runs once per
+// thread count on a fresh schedule and ends with a table of bookings/s by thread count, to see how the write
+// path scales with cores.
+// -Dscheduler.persistence=write-behind measures the journaled write path instead (journal in benchmark.journal).
+// -Dbenchmark.batchSize=n books n at a time through the batch path (default 1, one request per booking),
+// every booking of a batch is counted with the latency of the whole batch.
+public class ReservationWriteBenchmark {
+    private static final int WARM_UP_BOOKINGS = 200;
+    private static final int BOOKINGS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("db.url") == null) System.setProperty("db.url", "jdbc:sqlite:benchmark.db");
+        DataBase.getInstance().createSchema();
+        WriteBehindJournal journal = null;
+        if ("write-behind".equalsIgnoreCase(System.getProperty("scheduler.persistence"))) {
+            journal = new WriteBehindJournal(Paths.get("benchmark.journal"));
+        }
+        List<String> scaling = new ArrayList<>();
+        for (String threads : System.getProperty("benchmark.threads", "1").split(",")) {
+            double bookingsPerSecond = run(Integer.parseInt(threads.trim()), journal);
+            scaling.add(String.format("%3s thread(s) %8.0f bookings/s", threads.trim(), bookingsPerSecond));
+        }
+        if (scaling.size() > 1) {
+            System.out.println("Write throughput by thread count, " + Runtime.getRuntime().availableProcessors() + " cores");
+            scaling.forEach(System.out::println);
+        }
+        if (journal != null) journal.close();
+        DataBase.getInstance().close();
+    }
+
+    /**
+     * Function to book and delete BOOKINGS time slots from the given number of threads, on an empty schedule
+     * @return bookings per second
+     */
+    private static double run(int threads, WriteBehindJournal journal) throws Exception {
+        if (journal != null) journal.syncAll();
+        String[] clearDB = {
+                "DELETE FROM allocations;",
+                "DELETE FROM time_slots;",
+        };
+        DataBase.getInstance().update(clearDB);
+
+        ProjectorScheduler scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, false);
+        if (journal != null) scheduler.setWriteBehindJournal(journal);
+        Instant startOfYear = LocalDate.now().with(firstDayOfYear()).atStartOfDay(ZoneId.systemDefault()).toInstant();
+
+        int batchSize = Integer.getInteger("benchmark.batchSize", 1);
+        int perThread = BOOKINGS / threads;
+        long[] bookingNanos = new long[perThread * threads];
+        long[] deleteNanos = new long[perThread * threads];
+        long[] allocationIDs = new long[perThread * threads];
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        long bookingStart = 0;
+        for (int warmUp = 1; warmUp >= 0; warmUp--) {
+            // the warm up books the slots before the measured ones
+            final int first = warmUp == 1 ? -WARM_UP_BOOKINGS / threads : 0;
+            final int last = warmUp == 1 ? 0 : perThread;
+            bookingStart = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = first; i < last; i += batchSize) {
+                        List<TimeSlot> requests = new ArrayList<>();
+                        for (int k = i; k < Math.min(i + batchSize, last); k++) {
+                            // every booking gets a slot of its own, an hour apart
+                            Instant start = startOfYear.plus(Duration.ofHours(WARM_UP_BOOKINGS + (long) k * threads + thread));
+                            requests.add(new TimeSlot(start, Duration.ofMinutes(30), Duration.ZERO, start, 1));
+                        }
+                        long before = System.nanoTime();
+                        List<AllocatedTimeSlot> allocated = batchSize == 1
+                                ? Collections.singletonList(scheduler.requestProjector(requests.get(0)))
+                                : scheduler.requestProjectors(requests, false);
+                        long elapsed = System.nanoTime() - before;
+                        for (int k = 0; k < allocated.size(); k++) {
+                            if (i + k < 0) continue;
+                            bookingNanos[thread * perThread + i + k] = elapsed;
+                            allocationIDs[thread * perThread + i + k] = allocated.get(k).getAllocatedID();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) future.get();
+            futures.clear();
+        }
+        long bookingNanosTotal = System.nanoTime() - bookingStart;
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = thread * perThread; i < (thread + 1) * perThread; i++) {
+                    long before = System.nanoTime();
+                    scheduler.deleteProjector(allocationIDs[i]);
+                    deleteNanos[i] = System.nanoTime() - before;
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) future.get();
+        executor.shutdown();
+
+        System.out.println(threads + " thread(s), " + (journal != null ? "write-behind" : "direct") + " persistence, "
+                + batchSize + " booking(s) per request");
+        report("booking", bookingNanos);
+        double bookingsPerSecond = bookingNanos.length / (bookingNanosTotal / 1e9);
+        System.out.printf("%-8s %.0f bookings/s%n", "", bookingsPerSecond);
+        report("delete", deleteNanos);
+        return bookingsPerSecond;
+    }
+
+    private static void report(String operation, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-8s n=%d mean=%.3f ms p50=%.3f ms p90=%.3f ms p99=%.3f ms max=%.3f ms%n",
+                operation, sorted.length,
+                Arrays.stream(sorted).average().orElse(0) / 1e6,
+                sorted[sorted.length / 2] / 1e6,
+                sorted[(int) (sorted.length * 0.9)] / 1e6,
+                sorted[(int) (sorted.length * 0.99)] / 1e6,
+                sorted[sorted.length - 1] / 1e6);
+    }
+}
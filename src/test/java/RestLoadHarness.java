@@ -0,0 +1,220 @@
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.json.JSONObject;
+import spark.Spark;
+import spark.utils.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Replays a synthetic booking trace (see BookingTraceGenerator) against the REST API at a fixed rate and
+// reports throughput and latency percentiles per endpoint.
+// Not a unit test, run it with:
+// mvn test-compile exec:java -Dexec.mainClass="RestLoadHarness" -Dexec.classpathScope=test
+// Starts App in-process on its own data base (-Ddb.url, default jdbc:sqlite:loadtest.db, emptied first),
+// unless -Dloadtest.url=http://host:port points at a running one. -Dscheduler.* properties apply as usual.
+// Pacing is open loop: operation i is due at start + i / rate whatever happened to the operations before it,
+// and its latency is measured from when it was due, not from when it was sent. A stall therefore shows up in
+// the latency of every operation that should have been sent during it (no coordinated omission).
+// Every endpoint's histogram is written in HdrHistogram percentile format (milliseconds) to
+// -Dloadtest.output (default target/loadtest)/<endpoint>.hgrm, to be compared between releases.
+// -Dloadtest.rate=n operations per second (default 200), -Dloadtest.seconds=n (default 30),
+// -Dloadtest.threads=n concurrent connections (default 32), -Dloadtest.seed=n (default 1),
+// -Dloadtest.mix=request=50,recurring=5,update=10,delete=10,status=25 (weights, the default),
+// -Dloadtest.businessHours=0.8 share of time slots within working hours (default),
+// -Dloadtest.days=28 days the time slots are spread over (default), -Dloadtest.projectors=n status reads (default 3).
+public class RestLoadHarness {
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    private final String baseUrl;
+    private final List<BookingTraceGenerator.Operation> trace;
+    // allocation id of every booking of the trace once it is answered, 0 before, -1 if rejected or gone
+    private final AtomicLongArray allocationIDs;
+    private final Map<BookingTraceGenerator.Kind, Histogram> latencies = new EnumMap<>(BookingTraceGenerator.Kind.class);
+    private final Map<BookingTraceGenerator.Kind, AtomicLong> failures = new EnumMap<>(BookingTraceGenerator.Kind.class);
+    // updates and deletes whose booking wasn't answered yet, was rejected, or was already deleted
+    private final AtomicLong skipped = new AtomicLong();
+
+    RestLoadHarness(String baseUrl, List<BookingTraceGenerator.Operation> trace) {
+        this.baseUrl = baseUrl;
+        this.trace = trace;
+        this.allocationIDs = new AtomicLongArray(trace.size());
+        for (BookingTraceGenerator.Kind kind : BookingTraceGenerator.Kind.values()) {
+            latencies.put(kind, new ConcurrentHistogram(HIGHEST_TRACKABLE_NANOS, 3));
+            failures.put(kind, new AtomicLong());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        double rate = Double.parseDouble(System.getProperty("loadtest.rate", "200"));
+        int seconds = Integer.getInteger("loadtest.seconds", 30);
+        int threads = Integer.getInteger("loadtest.threads", 32);
+        String baseUrl = System.getProperty("loadtest.url");
+        if (baseUrl == null) {
+            if (System.getProperty("db.url") == null) System.setProperty("db.url", "jdbc:sqlite:loadtest.db");
+            DataBase.getInstance().createSchema();
+            String[] clearDB = {
+                    "DELETE FROM allocations;",
+                    "DELETE FROM time_slots;",
+            };
+            DataBase.getInstance().update(clearDB);
+            App.main(null);
+            Spark.awaitInitialization();
+            baseUrl = "http://localhost:" + Spark.port();
+        }
+
+        BookingTraceGenerator generator = new BookingTraceGenerator(Long.getLong("loadtest.seed", 1L),
+                System.getProperty("loadtest.mix", "request=50,recurring=5,update=10,delete=10,status=25"),
+                Double.parseDouble(System.getProperty("loadtest.businessHours", "0.8")),
+                Integer.getInteger("loadtest.days", 28), Integer.getInteger("loadtest.projectors", 3));
+        RestLoadHarness harness = new RestLoadHarness(baseUrl, generator.generate((int) (rate * seconds)));
+        long elapsedNanos = harness.run(rate, threads);
+        harness.report(elapsedNanos, new File(System.getProperty("loadtest.output", "target/loadtest")));
+        if (System.getProperty("loadtest.url") == null) Spark.stop();
+        System.exit(0);
+    }
+
+    /**
+     * Function to send every operation of the trace when it is due
+     * @param rate : operations per second
+     * @param threads : operations in flight at most, later ones wait for a connection but keep their due time
+     * @return nanoseconds from the first operation being due to the last one being answered
+     */
+    long run(double rate, int threads) throws InterruptedException {
+        ExecutorService senders = Executors.newFixedThreadPool(threads);
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < trace.size(); i++) {
+            long dueNanos = startNanos + i * intervalNanos;
+            for (long wait = dueNanos - System.nanoTime(); wait > 0; wait = dueNanos - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            final int index = i;
+            senders.execute(() -> send(index, dueNanos));
+        }
+        senders.shutdown();
+        senders.awaitTermination(1, TimeUnit.HOURS);
+        return System.nanoTime() - startNanos;
+    }
+
+    private void send(int index, long dueNanos) {
+        BookingTraceGenerator.Operation operation = trace.get(index);
+        try {
+            switch (operation.kind) {
+                case REQUEST:
+                case RECURRING_REQUEST: {
+                    JSONObject response = call("POST", "/projector/request", bookingJSON(operation).put("teamID", 1));
+                    allocationIDs.set(index, response == null ? -1 : response.optLong("allocatedID", -1));
+                    break;
+                }
+                case UPDATE: {
+                    // taken while the update is in flight, so a delete doesn't race it
+                    long allocationID = claim(operation.target);
+                    if (allocationID <= 0) return;
+                    JSONObject response = call("PUT", "/projector/update",
+                            bookingJSON(operation).put("allocationID", allocationID));
+                    long updatedID = response == null ? -1 : response.optLong("allocatedID", -1);
+                    allocationIDs.set(operation.target, updatedID != -1 ? updatedID : allocationID);
+                    break;
+                }
+                case DELETE: {
+                    long allocationID = claim(operation.target);
+                    if (allocationID <= 0) return;
+                    call("DELETE", "/projector/delete", new JSONObject().put("allocationID", allocationID));
+                    break;
+                }
+                case STATUS:
+                    call("GET", "/projector/status/" + operation.target + "?from=" + operation.start
+                            + "&to=" + operation.start.plus(operation.duration), null);
+                    break;
+            }
+            latencies.get(operation.kind).recordValue(Math.min(System.nanoTime() - dueNanos, HIGHEST_TRACKABLE_NANOS));
+        } catch (IOException | RuntimeException e) {
+            failures.get(operation.kind).incrementAndGet();
+        }
+    }
+
+    /**
+     * @return allocation id of a booking of the trace, taken out of the trace, 0 or -1 if there is none to take
+     */
+    private long claim(int bookingIndex) {
+        long allocationID = allocationIDs.getAndSet(bookingIndex, -1);
+        if (allocationID <= 0) {
+            // not answered yet stays not answered
+            if (allocationID == 0) allocationIDs.compareAndSet(bookingIndex, -1, 0);
+            skipped.incrementAndGet();
+        }
+        return allocationID;
+    }
+
+    private static JSONObject bookingJSON(BookingTraceGenerator.Operation operation) {
+        JSONObject json = new JSONObject();
+        json.put("startDateTime", operation.start.toString());
+        json.put("duration", operation.duration.toMillis());
+        json.put("recurInterval", operation.recurInterval.toMillis());
+        json.put("recurEndDateTime", (operation.recurEnd != null ? operation.recurEnd : operation.start).toString());
+        return json;
+    }
+
+    /**
+     * @return the response body as JSON, null if it has none
+     * @throws IOException if the request fails or isn't answered with 200 or 404 (delete of a gone booking)
+     */
+    private JSONObject call(String method, String path, JSONObject body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStreamWriter writer = new OutputStreamWriter(connection.getOutputStream(), "UTF-8")) {
+                writer.write(body.toString());
+            }
+        }
+        int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            if (connection.getErrorStream() != null) connection.getErrorStream().close();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) return null;
+            throw new IOException(method + " " + path + " answered " + status);
+        }
+        String response = IOUtils.toString(connection.getInputStream());
+        return response.startsWith("{") ? new JSONObject(response) : null;
+    }
+
+    private void report(long elapsedNanos, File outputDirectory) throws IOException {
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Can't create " + outputDirectory);
+        }
+        double seconds = elapsedNanos / 1e9;
+        long total = 0;
+        System.out.printf("%-18s %8s %8s %9s %9s %9s %9s%n", "endpoint", "ops/s", "failed", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (BookingTraceGenerator.Kind kind : BookingTraceGenerator.Kind.values()) {
+            Histogram histogram = latencies.get(kind);
+            total += histogram.getTotalCount();
+            System.out.printf("%-18s %8.1f %8d %9.2f %9.2f %9.2f %9.2f%n", kind.endpoint,
+                    histogram.getTotalCount() / seconds, failures.get(kind).get(),
+                    histogram.getValueAtPercentile(50) / NANOS_PER_MILLI,
+                    histogram.getValueAtPercentile(99) / NANOS_PER_MILLI,
+                    histogram.getValueAtPercentile(99.9) / NANOS_PER_MILLI,
+                    histogram.getMaxValue() / NANOS_PER_MILLI);
+            try (PrintStream out = new PrintStream(new File(outputDirectory, kind.endpoint + ".hgrm"), "UTF-8")) {
+                histogram.outputPercentileDistribution(out, NANOS_PER_MILLI);
+            }
+        }
+        System.out.printf("%d operations answered in %.1f s (%.1f/s), %d updates and deletes skipped, histograms in %s%n",
+                total, seconds, total / seconds, skipped.get(), outputDirectory);
+    }
+}
@@ -0,0 +1,150 @@
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.time.temporal.TemporalAdjusters.firstDayOfYear;
+import static org.junit.Assert.*;
+
+// Startup, from the data base or from a snapshot plus the change log, has to give the same schedule as the
+// scheduler that saved it
+public class SchedulerSnapshotTest {
+    private static final int PROJECTOR_COUNT = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        DataBase.getInstance().createSchema();
+        SchedulerSnapshot.installChangeLog();
+        String[] clearDB = {
+                "DELETE FROM allocations;",
+                "DELETE FROM time_slots;",
+        };
+        DataBase.getInstance().update(clearDB);
+    }
+
+    private static Instant hour(int hour) {
+        return LocalDate.now().with(firstDayOfYear()).withMonth(10)
+                .atStartOfDay(ZoneId.systemDefault()).toInstant().plus(Duration.ofHours(hour));
+    }
+
+    private static TimeSlot oneOff(int hour) {
+        return new TimeSlot(hour(hour), Duration.ofMinutes(45), Duration.ZERO, hour(hour), 1);
+    }
+
+    private static TimeSlot daily(int hour) {
+        return new TimeSlot(hour(hour), Duration.ofMinutes(30), Duration.ofDays(1), hour(hour + 24 * 10), 2);
+    }
+
+    private static void assertSameSchedule(ProjectorScheduler expected, ProjectorScheduler actual) {
+        for (int projectorID = 0; projectorID < PROJECTOR_COUNT; projectorID++) {
+            List<TimeSlot> expectedSlots = expected.getProjectorSchedule(projectorID);
+            List<TimeSlot> actualSlots = actual.getProjectorSchedule(projectorID);
+            assertEquals(expectedSlots.size(), actualSlots.size());
+            for (int i = 0; i < expectedSlots.size(); i++) {
+                assertEquals(expectedSlots.get(i).getStartDateTime(), actualSlots.get(i).getStartDateTime());
+                assertEquals(expectedSlots.get(i).getDuration(), actualSlots.get(i).getDuration());
+            }
+        }
+    }
+
+    @Test
+    public void snapshotPlusChangesMatchesLiveSchedule() throws Exception {
+        ProjectorScheduler scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, false);
+        List<Long> allocationIDs = new ArrayList<>();
+        for (int hour = 0; hour < 20; hour++) {
+            allocationIDs.add(scheduler.requestProjector(oneOff(hour)).getAllocatedID());
+        }
+        allocationIDs.add(scheduler.requestProjector(daily(3)).getAllocatedID());
+        allocationIDs.add(scheduler.requestProjector(daily(5)).getAllocatedID());
+
+        SchedulerSnapshot snapshot = new SchedulerSnapshot(folder.getRoot().toPath().resolve("scheduler.snapshot"));
+        snapshot.write(scheduler.captureSnapshot());
+
+        // changes after the snapshot: bookings, deletes of one-offs and of a series, updates
+        for (int hour = 30; hour < 40; hour++) {
+            scheduler.requestProjector(oneOff(hour));
+        }
+        assertTrue(scheduler.deleteProjector(allocationIDs.get(2)));
+        assertTrue(scheduler.deleteProjector(allocationIDs.get(7)));
+        assertTrue(scheduler.deleteProjector(allocationIDs.get(20)));
+        assertNotNull(scheduler.updateProjector(allocationIDs.get(4), oneOff(50)));
+        assertNotNull(scheduler.updateProjector(allocationIDs.get(21), daily(8)));
+
+        ProjectorScheduler restarted = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, false);
+        assertTrue(restarted.loadSnapshot(snapshot));
+        assertSameSchedule(scheduler, restarted);
+        assertSameSchedule(scheduler, new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, true));
+
+        // a new snapshot replaces the old one and the replayed changes are pruned
+        snapshot.write(scheduler.captureSnapshot());
+        assertEquals(0L, (long) DataBase.getInstance().query("SELECT count(*) AS n FROM allocation_changes",
+                rs -> rs.getLong("n")));
+        ProjectorScheduler restartedAgain = new ProjectorScheduler(IntervalIndex.Type.BITMAP, false);
+        assertTrue(restartedAgain.loadSnapshot(snapshot));
+        assertSameSchedule(scheduler, restartedAgain);
+    }
+
+    @Test
+    public void fullLoadSkipsBookingsOutsideTheYear() throws Exception {
+        ProjectorScheduler scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, false);
+        for (int hour = 0; hour < 10; hour++) {
+            scheduler.requestProjector(hour % 2 == 0 ? oneOff(hour) : daily(hour));
+        }
+        // last year's bookings, every projector at the same time as this year's
+        long lastYear = hour(0).minus(Duration.ofDays(400)).toEpochMilli();
+        DataBase dataBase = DataBase.getInstance();
+        for (int projectorID = 0; projectorID < PROJECTOR_COUNT; projectorID++) {
+            long oneOffSlot = dataBase.insert("INSERT INTO time_slots values(NULL, ?, ?, ?, ?)",
+                    lastYear, Duration.ofHours(1).toMillis(), 0L, lastYear);
+            dataBase.insert("INSERT INTO allocations values(NULL, ?, ?, ?)", projectorID, oneOffSlot, 1L);
+            long recurringSlot = dataBase.insert("INSERT INTO time_slots values(NULL, ?, ?, ?, ?)",
+                    lastYear, Duration.ofHours(1).toMillis(), Duration.ofDays(1).toMillis(), lastYear);
+            dataBase.insert("INSERT INTO allocations values(NULL, ?, ?, ?)", projectorID, recurringSlot, 1L);
+        }
+
+        ProjectorScheduler loaded = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, true);
+        assertSameSchedule(scheduler, loaded);
+        for (int projectorID = 0; projectorID < PROJECTOR_COUNT; projectorID++) {
+            assertEquals(scheduler.projectorRecurringSeries.get(projectorID).size(),
+                    loaded.projectorRecurringSeries.get(projectorID).size());
+        }
+    }
+
+    @Test
+    public void snapshotIsRejectedWhenChangesWerePrunedPastIt() throws Exception {
+        ProjectorScheduler scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, false);
+        scheduler.requestProjector(oneOff(0));
+        SchedulerSnapshot older = new SchedulerSnapshot(folder.getRoot().toPath().resolve("older.snapshot"));
+        older.write(scheduler.captureSnapshot());
+        scheduler.requestProjector(oneOff(1));
+        SchedulerSnapshot newer = new SchedulerSnapshot(folder.getRoot().toPath().resolve("newer.snapshot"));
+        newer.write(scheduler.captureSnapshot());
+
+        assertFalse(new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, false).loadSnapshot(older));
+        assertTrue(new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, false).loadSnapshot(newer));
+    }
+
+    @Test
+    public void snapshotIsRejectedWhenADeleteLostItsTime() throws Exception {
+        ProjectorScheduler scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, false);
+        scheduler.requestProjector(oneOff(0));
+        SchedulerSnapshot snapshot = new SchedulerSnapshot(folder.getRoot().toPath().resolve("scheduler.snapshot"));
+        snapshot.write(scheduler.captureSnapshot());
+        // time slots deleted before their allocations, the change log can't tell which minutes were freed
+        DataBase.getInstance().update(new String[] {"DELETE FROM allocations;", "DELETE FROM time_slots;"});
+
+        assertFalse(new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, false).loadSnapshot(snapshot));
+        assertFalse(new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, false)
+                .loadSnapshot(new SchedulerSnapshot(folder.getRoot().toPath().resolve("missing.snapshot"))));
+    }
+}
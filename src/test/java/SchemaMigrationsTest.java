@@ -0,0 +1,51 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+// The schema is versioned, and the scheduler's queries are answered from indexes instead of table scans
+public class SchemaMigrationsTest {
+
+    @Before
+    public void setUp() {
+        DataBase.getInstance().createSchema();
+    }
+
+    private static List<String> queryPlan(String sql, Object... params) throws Exception {
+        return DataBase.getInstance().query("EXPLAIN QUERY PLAN " + sql, queryResult -> {
+            List<String> steps = new ArrayList<>();
+            while (queryResult.next()) steps.add(queryResult.getString("detail"));
+            return steps;
+        }, params);
+    }
+
+    private static void assertNoScan(String sql, Object... params) throws Exception {
+        List<String> plan = queryPlan(sql, params);
+        assertFalse(plan.isEmpty());
+        for (String step : plan) {
+            assertFalse(sql + " scans: " + plan, step.startsWith("SCAN"));
+        }
+    }
+
+    @Test
+    public void migrationsAreAppliedOnce() throws Exception {
+        assertEquals(SchemaMigrations.latestVersion(), SchemaMigrations.currentVersion());
+        assertEquals(0, SchemaMigrations.migrate());
+        DataBase dataBase = DataBase.getInstance();
+        assertEquals(SchemaMigrations.MIGRATIONS.size(), (int) dataBase.query(
+                "SELECT count(*) AS n FROM schema_version", queryResult -> queryResult.getInt("n")));
+        assertEquals(3, (int) dataBase.query("SELECT count(*) AS n FROM projectors", queryResult -> queryResult.getInt("n")));
+        assertEquals(5, (int) dataBase.query("SELECT count(*) AS n FROM teams", queryResult -> queryResult.getInt("n")));
+    }
+
+    @Test
+    public void schedulerQueriesUseIndexes() throws Exception {
+        assertNoScan(ProjectorScheduler.LOAD_QUERY, 0L, 1L);
+        assertNoScan(ProjectorScheduler.ALLOCATION_QUERY, 1L);
+        assertNoScan(ProjectorScheduler.DELETE_ALLOCATION, 1L, 0L, 1L);
+        assertNoScan("DELETE FROM time_slots WHERE id = ?", 1L);
+    }
+}
@@ -0,0 +1,67 @@
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.temporal.TemporalAdjusters.firstDayOfYear;
+import static org.junit.Assert.*;
+
+public class SlowRequestRecorderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void dumpsSchedulerEventsOfSlowRequests() throws Exception {
+        SlowRequestRecorder recorder = new SlowRequestRecorder(Duration.ofMillis(100), Duration.ofSeconds(30), folder.getRoot().toPath());
+        try {
+            ProjectorScheduler scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, 3, false);
+            Instant start = LocalDate.now().with(firstDayOfYear()).atStartOfDay(ZoneId.systemDefault()).toInstant()
+                    .plus(Duration.ofDays(7));
+            TimeSlot oneTime = new TimeSlot(start, Duration.ofHours(1), Duration.ZERO, start, 1);
+            TimeSlot weekly = new TimeSlot(start, Duration.ofHours(1), Duration.ofDays(7), start.plus(Duration.ofDays(28)).plusSeconds(60), 1);
+            assertEquals(0, scheduler.getAvailableProjectorID(oneTime));
+            assertEquals(0, scheduler.getAvailableProjectorIDForRecurringMeeting(weekly));
+            // nothing is booked, the whole horizon is one gap
+            assertEquals(1, scheduler.getAlternativeTimeSlots(oneTime, 3, Duration.ofDays(1)).size());
+
+            assertNull(recorder.observe("GET /fast", TimeUnit.MILLISECONDS.toNanos(99)));
+            Future<Path> dump = recorder.observe("GET /slow", TimeUnit.MILLISECONDS.toNanos(100));
+            assertNotNull(dump);
+            // one dump per window
+            assertNull(recorder.observe("GET /slow", TimeUnit.SECONDS.toNanos(1)));
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(dump.get(1, TimeUnit.MINUTES));
+            Set<String> names = new HashSet<>();
+            for (RecordedEvent event : events) {
+                String name = event.getEventType().getName();
+                names.add(name);
+                if (name.equals("projector.ConflictCheck") && event.getLong("recurInterval") != 0) {
+                    assertEquals(5, event.getInt("occurrences"));
+                    assertEquals(0, event.getInt("projectorID"));
+                }
+                if (name.equals("projector.SuggestionSearch")) {
+                    assertEquals(1, event.getInt("suggestions"));
+                    assertEquals(Duration.ofHours(1), event.getDuration("requestedDuration"));
+                }
+            }
+            assertTrue(names.contains("projector.ConflictCheck"));
+            assertTrue(names.contains("projector.RecurringExpansion"));
+            assertTrue(names.contains("projector.SuggestionSearch"));
+        } finally {
+            recorder.close();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+import static java.time.temporal.TemporalAdjusters.firstDayOfYear;
+
+// Measures the time from scheduler start to the first answered request, with a full load from the data base
+// and with a snapshot plus a few changes logged after it.
+// Not a unit test, run it with:
+// mvn test-compile exec:java -Dexec.mainClass="StartupBenchmark" -Dexec.classpathScope=test
+// Uses its own data base file (-Ddb.url, default jdbc:sqlite:benchmark.db) which is emptied first.
+// -Dbenchmark.bookings=n1,n2,... sets the numbers of stored bookings (default 1000,10000,100000).
+public class StartupBenchmark {
+    private static final int PROJECTOR_COUNT = 3;
+    private static final int CHANGES_AFTER_SNAPSHOT = 100;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("db.url") == null) System.setProperty("db.url", "jdbc:sqlite:benchmark.db");
+        DataBase.getInstance().createSchema();
+        SchedulerSnapshot.installChangeLog();
+        Path snapshotPath = Paths.get("benchmark.snapshot");
+        Instant startOfYear = LocalDate.now().with(firstDayOfYear()).atStartOfDay(ZoneId.systemDefault()).toInstant();
+
+        for (String bookingCount : System.getProperty("benchmark.bookings", "1000,10000,100000").split(",")) {
+            int bookings = Integer.parseInt(bookingCount.trim());
+            populate(bookings, startOfYear);
+            SchedulerSnapshot snapshot = new SchedulerSnapshot(snapshotPath);
+            snapshot.write(new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, true).captureSnapshot());
+            // bookings made after the snapshot, these are replayed from the change log
+            ProjectorScheduler live = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, false);
+            for (int i = 0; i < CHANGES_AFTER_SNAPSHOT; i++) {
+                Instant start = startOfYear.plus(Duration.ofDays(360)).plus(Duration.ofHours(i));
+                live.requestProjector(new TimeSlot(start, Duration.ofMinutes(10), Duration.ZERO, start, 1));
+            }
+
+            TimeSlot firstRequest = new TimeSlot(startOfYear.plus(Duration.ofDays(100)), Duration.ofMinutes(30),
+                    Duration.ZERO, startOfYear.plus(Duration.ofDays(100)), 1);
+            long fullLoad = Long.MAX_VALUE;
+            long snapshotLoad = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long before = System.nanoTime();
+                ProjectorScheduler scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, true);
+                scheduler.getAlternativeTimeSlots(firstRequest, 1, Duration.ofHours(2));
+                fullLoad = Math.min(fullLoad, System.nanoTime() - before);
+
+                before = System.nanoTime();
+                scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, false);
+                if (!scheduler.loadSnapshot(snapshot)) throw new IllegalStateException("snapshot not loaded");
+                scheduler.getAlternativeTimeSlots(firstRequest, 1, Duration.ofHours(2));
+                snapshotLoad = Math.min(snapshotLoad, System.nanoTime() - before);
+            }
+            System.out.printf("%7d bookings: full load %8.1f ms, snapshot + %d changes %8.1f ms (%d KB)%n",
+                    bookings, fullLoad / 1e6, CHANGES_AFTER_SNAPSHOT, snapshotLoad / 1e6,
+                    Files.size(snapshotPath) / 1024);
+        }
+        Files.deleteIfExists(snapshotPath);
+        DataBase.getInstance().close();
+    }
+
+    /**
+     * Function to store the given number of ten minute bookings, spread over the year and the projectors
+     */
+    private static void populate(int bookings, Instant startOfYear) throws Exception {
+        DataBase dataBase = DataBase.getInstance();
+        dataBase.update(new String[] {"DELETE FROM allocations;", "DELETE FROM time_slots;"});
+        long spacingMinutes = Math.max(11, 355L * 24 * 60 * PROJECTOR_COUNT / bookings);
+        dataBase.inTransaction(() -> {
+            for (int i = 0; i < bookings; i++) {
+                long start = startOfYear.plus(Duration.ofMinutes(i / PROJECTOR_COUNT * spacingMinutes)).toEpochMilli();
+                long timeSlotID = dataBase.insert("INSERT INTO time_slots values(NULL, ?, ?, ?, ?)",
+                        start, Duration.ofMinutes(10).toMillis(), 0L, start);
+                dataBase.insert("INSERT INTO allocations values(NULL, ?, ?, ?)", i % PROJECTOR_COUNT, timeSlotID, 1L);
+            }
+            return null;
+        });
+    }
+}
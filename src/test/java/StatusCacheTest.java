@@ -0,0 +1,67 @@
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class StatusCacheTest {
+
+    private static StatusCache.CapturingOutputStream written(StatusCache cache, String body) throws Exception {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        StatusCache.CapturingOutputStream out = cache.capture(response);
+        out.write(body.getBytes(StandardCharsets.UTF_8));
+        assertEquals(body, response.toString("UTF-8"));
+        return out;
+    }
+
+    @Test
+    public void servesResponsesOfTheCurrentVersionOnly() throws Exception {
+        MetricsRegistry metrics = new MetricsRegistry();
+        StatusCache cache = new StatusCache(16 * 1024, metrics);
+        assertNull(cache.get("0?null", 1));
+        cache.put("0?null", 1, written(cache, "{\"schedule\":[]}"));
+        assertEquals("{\"schedule\":[]}", new String(cache.get("0?null", 1), StandardCharsets.UTF_8));
+        // the projector was booked since
+        assertNull(cache.get("0?null", 2));
+        assertNull(cache.get("1?null", 1));
+
+        String etag = cache.etag(0, 1);
+        assertNotEquals(etag, cache.etag(0, 2));
+        assertNotEquals(etag, cache.etag(1, 1));
+        assertTrue(cache.notModified(etag, etag));
+        assertTrue(cache.notModified("\"other\", W/" + etag, etag));
+        assertTrue(cache.notModified("*", etag));
+        assertFalse(cache.notModified(null, etag));
+        assertFalse(cache.notModified(cache.etag(0, 2), etag));
+
+        StringBuilder out = new StringBuilder();
+        metrics.write(out);
+        String text = out.toString();
+        assertTrue(text.contains("status_cache_requests_total{result=\"hit\"} 1\n"));
+        assertTrue(text.contains("status_cache_requests_total{result=\"miss\"} 3\n"));
+        assertTrue(text.contains("status_cache_requests_total{result=\"not_modified\"} 3\n"));
+        assertTrue(text.contains("status_cache_hit_ratio 0.5714285714285714\n"));
+    }
+
+    @Test
+    public void staysWithinItsSize() throws Exception {
+        MetricsRegistry metrics = new MetricsRegistry();
+        // responses of up to 1 KB are kept, 16 KB in all
+        StatusCache cache = new StatusCache(16 * 1024, metrics);
+        StringBuilder big = new StringBuilder();
+        while (big.length() <= 1024) big.append("{\"startDate\":\"2024-01-01T00:00:00Z\",\"durationInMinutes\":60},");
+        cache.put("0?big", 1, written(cache, big.toString()));
+        assertNull(cache.get("0?big", 1));
+
+        String body = big.substring(0, 900);
+        for (int i = 0; i < 100; i++) cache.put(i + "?", 1, written(cache, body));
+        int cached = 0;
+        for (int i = 0; i < 100; i++) if (cache.get(i + "?", 1) != null) cached++;
+        assertTrue(cached > 0 && cached <= 16 * 1024 / 900);
+
+        StringBuilder out = new StringBuilder();
+        metrics.write(out);
+        assertFalse(out.toString().contains("status_cache_evictions_total 0\n"));
+    }
+}
@@ -0,0 +1,177 @@
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.time.temporal.TemporalAdjusters.firstDayOfYear;
+import static org.junit.Assert.*;
+
+// Write-behind mode: bookings only reach the data base through the journal
+public class WriteBehindJournalTest {
+    private static final int PROJECTOR_COUNT = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path journalPath;
+
+    // forces that fail before the disk recovers, static as the applier starts in the constructor
+    private static final AtomicInteger applierForceFailures = new AtomicInteger();
+    private static final AtomicInteger requestForceFailures = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        DataBase.getInstance().createSchema();
+        String[] clearDB = {
+                "DELETE FROM allocations;",
+                "DELETE FROM time_slots;",
+        };
+        DataBase.getInstance().update(clearDB);
+        journalPath = folder.getRoot().toPath().resolve("scheduler.journal");
+    }
+
+    private static TimeSlot slotRequest(int slot) {
+        Instant start = LocalDate.now().with(firstDayOfYear()).withMonth(11)
+                .atStartOfDay(ZoneId.systemDefault()).toInstant().plus(Duration.ofHours(slot));
+        return new TimeSlot(start, Duration.ofMinutes(30), Duration.ZERO, start, 1);
+    }
+
+    private static int allocationsInDataBase() throws Exception {
+        return DataBase.getInstance().query("SELECT count(*) AS n FROM allocations", rs -> rs.getInt("n"));
+    }
+
+    private static void assertSameSchedule(ProjectorScheduler expected, ProjectorScheduler actual) {
+        for (int projectorID = 0; projectorID < PROJECTOR_COUNT; projectorID++) {
+            List<TimeSlot> expectedSlots = expected.getProjectorSchedule(projectorID);
+            List<TimeSlot> actualSlots = actual.getProjectorSchedule(projectorID);
+            assertEquals(expectedSlots.size(), actualSlots.size());
+            for (int i = 0; i < expectedSlots.size(); i++) {
+                assertEquals(expectedSlots.get(i).getStartDateTime(), actualSlots.get(i).getStartDateTime());
+            }
+        }
+    }
+
+    /**
+     * Nothing is applied before the "crash", opening the journal again has to bring the data base up to date
+     */
+    @Test
+    public void replayRecoversJournaledBookingsAfterCrash() throws Exception {
+        WriteBehindJournal journal = new WriteBehindJournal(journalPath, 512, false);
+        ProjectorScheduler scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, false);
+        scheduler.setWriteBehindJournal(journal);
+        List<Long> allocationIDs = new ArrayList<>();
+        for (int slot = 0; slot < 10; slot++) {
+            allocationIDs.add(scheduler.requestProjector(slotRequest(slot)).getAllocatedID());
+        }
+        assertTrue(scheduler.deleteProjector(allocationIDs.get(3)));
+        assertFalse(scheduler.deleteProjector(allocationIDs.get(3)));
+        assertNotNull(scheduler.updateProjector(allocationIDs.get(4), slotRequest(40)));
+        assertEquals(0, allocationsInDataBase());
+
+        // a torn record at the end of the journal, as left by a crash in the middle of an append
+        try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0, 1, 0, 42, 42}));
+        }
+
+        WriteBehindJournal recovered = new WriteBehindJournal(journalPath, 512, false);
+        assertEquals(9, allocationsInDataBase());
+        assertEquals(0, Files.size(journalPath));
+        assertSameSchedule(scheduler, new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, true));
+        // new ids continue after the replayed ones
+        assertTrue(recovered.nextAllocationID() > allocationIDs.get(9));
+        journal.close();
+        recovered.close();
+    }
+
+    /**
+     * With the background applier running the data base catches up and the journal is emptied
+     */
+    @Test
+    public void backgroundApplierCatchesUp() throws Exception {
+        WriteBehindJournal journal = new WriteBehindJournal(journalPath, 16, true);
+        ProjectorScheduler scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, false);
+        scheduler.setWriteBehindJournal(journal);
+        for (int slot = 0; slot < 100; slot++) {
+            assertNotEquals(-1, scheduler.requestProjector(slotRequest(slot)).getAllocatedID());
+        }
+        journal.close();
+        assertEquals(100, allocationsInDataBase());
+        assertEquals(0, Files.size(journalPath));
+        assertSameSchedule(scheduler, new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, true));
+    }
+
+    /**
+     * A failed fsync on the applier's side must not lose the batch, it is applied once the journal can be synced
+     */
+    @Test
+    public void applierRetriesBatchAfterSyncFailure() throws Exception {
+        applierForceFailures.set(1);
+        WriteBehindJournal journal = new WriteBehindJournal(journalPath, 16, true) {
+            @Override
+            void force() throws IOException {
+                if (Thread.currentThread().getName().equals("journal-applier")
+                        && applierForceFailures.getAndDecrement() > 0) {
+                    throw new IOException("No space left on device");
+                }
+                super.force();
+            }
+        };
+        TimeSlot request = slotRequest(0);
+        long allocationID = journal.nextAllocationID();
+        // appended without waiting for the fsync, so that the applier is the one to sync it
+        journal.inGroup(() -> {
+            journal.recordInsert(new AllocatedTimeSlot(allocationID, 0, journal.nextTimeSlotID(), request.getTeamID(),
+                    request.getStartDateTime(), request.getDuration(), request.getRecurInterval(), request.getRecurEndDateTime()));
+            return null;
+        });
+        journal.close();
+        assertTrue(applierForceFailures.get() < 0);
+        assertEquals(1, allocationsInDataBase());
+        assertNull(journal.getPendingInsert(allocationID));
+        assertEquals(0, Files.size(journalPath));
+    }
+
+    /**
+     * A failed fsync on the request's side must not fail a booking the journal keeps, the request waits for the retry
+     */
+    @Test
+    public void requestRetriesSyncFailure() throws Exception {
+        requestForceFailures.set(1);
+        // no applier, the request is the only one to sync
+        WriteBehindJournal journal = new WriteBehindJournal(journalPath, 16, false) {
+            @Override
+            void force() throws IOException {
+                if (requestForceFailures.getAndDecrement() > 0) {
+                    throw new IOException("Input/output error");
+                }
+                super.force();
+            }
+        };
+        ProjectorScheduler scheduler = new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, false);
+        scheduler.setWriteBehindJournal(journal);
+        AllocatedTimeSlot allocation = scheduler.requestProjector(slotRequest(0));
+        assertTrue(requestForceFailures.get() < 0);
+        assertNotEquals(-1, allocation.getAllocatedID());
+        assertNotNull(journal.getPendingInsert(allocation.getAllocatedID()));
+        journal.close();
+
+        // acknowledged, so it has to be on disk: the replay puts it in the data base
+        new WriteBehindJournal(journalPath, 16, false).close();
+        assertEquals(1, allocationsInDataBase());
+        assertSameSchedule(scheduler, new ProjectorScheduler(IntervalIndex.Type.SORTED_ARRAY, true));
+    }
+}